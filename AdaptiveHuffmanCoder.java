@@ -0,0 +1,319 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * One-pass adaptive Huffman coder using the FGK algorithm. Unlike the two
+ * pass blankCodeBook()/buildHuffmanCode() path, the tree is updated after
+ * every symbol, so symbols can be emitted as soon as they arrive. The
+ * encoder and the decoder each keep their own instance and perform the same
+ * updates, so no code book ever has to be transmitted.
+ *
+ * The tree is stored in parallel int arrays sized for the alphabet up front,
+ * so memory use is fixed at construction time. Node indices double as the
+ * FGK node numbers: the root has the highest index and new nodes are carved
+ * off below the NYT (not yet transmitted) node.
+ *
+ * The zero padding written by BitWriter.finish() cannot be told apart from
+ * code bits, so a stream of symbols has to carry its own length or framing
+ * (compress() writes the symbol count up front).
+ */
+public class AdaptiveHuffmanCoder {
+
+	/**
+	 * Default weight of the root at which the model is reset. This keeps the
+	 * weights from overflowing and lets the codes follow drifting input.
+	 */
+	public static final int DEFAULT_RESCALE_LIMIT = 1 << 24;
+
+	private static final int INTERNAL = -1;
+	private static final int NYT = -2;
+
+	private int _alphabetSize;
+	private int _symbolBits;
+	private int _rescaleLimit;
+	private int _capacity;
+	private int _root;
+	private int _nyt;
+
+	private int[] _weight;
+	private int[] _parent;
+	private int[] _left;
+	private int[] _right;
+	private int[] _symbol;
+	private int[] _leaf; //symbol -> leaf node, or -1 if not seen yet
+	private int[] _path; //scratch space for encoding paths
+
+	/**
+	 * Constructs a coder for symbols in the range [0, alphabetSize) using the
+	 * default rescale limit.
+	 * @param alphabetSize - number of distinct symbols that may be coded
+	 */
+	public AdaptiveHuffmanCoder(int alphabetSize) {
+		this(alphabetSize, DEFAULT_RESCALE_LIMIT);
+	}
+
+	/**
+	 * Constructs a coder for symbols in the range [0, alphabetSize).
+	 * @param alphabetSize - number of distinct symbols that may be coded
+	 * @param rescaleLimit - root weight at which the model is reset
+	 */
+	public AdaptiveHuffmanCoder(int alphabetSize, int rescaleLimit) {
+		if (alphabetSize < 1) {
+			throw new IllegalArgumentException("Alphabet size must be positive.");
+		}
+		if (rescaleLimit < 2) {
+			throw new IllegalArgumentException("Rescale limit is too small.");
+		}
+		_alphabetSize = alphabetSize;
+		_rescaleLimit = rescaleLimit;
+		_symbolBits = 32 - Integer.numberOfLeadingZeros(Math.max(alphabetSize - 1, 1));
+		_capacity = 2 * alphabetSize + 1;
+		_weight = new int[_capacity];
+		_parent = new int[_capacity];
+		_left = new int[_capacity];
+		_right = new int[_capacity];
+		_symbol = new int[_capacity];
+		_leaf = new int[alphabetSize];
+		_path = new int[_capacity];
+		reset();
+	}
+
+	/**
+	 * Resets the model to the empty tree holding only the NYT node.
+	 */
+	public void reset() {
+		_root = _capacity - 1;
+		_nyt = _root;
+		_weight[_root] = 0;
+		_parent[_root] = -1;
+		_left[_root] = -1;
+		_right[_root] = -1;
+		_symbol[_root] = NYT;
+		for (int i = 0; i < _alphabetSize; i++) {
+			_leaf[i] = -1;
+		}
+	}
+
+	/**
+	 * Encodes a single symbol and updates the model.
+	 * @param symbol - symbol in the range [0, alphabetSize)
+	 * @param out - destination of the code bits
+	 * @throws IOException
+	 */
+	public void encode(int symbol, BitWriter out) throws IOException {
+		if (symbol < 0 || symbol >= _alphabetSize) {
+			throw new IllegalArgumentException("Symbol is outside the alphabet.");
+		}
+		int node = _leaf[symbol];
+		if (node < 0) {
+			//unseen symbol: escape through the NYT node and send it raw
+			writePath(_nyt, out);
+			out.writeBits(symbol, _symbolBits);
+		}
+		else {
+			writePath(node, out);
+		}
+		update(symbol);
+	}
+
+	/**
+	 * Decodes a single symbol and updates the model.
+	 * @param in - source of the code bits
+	 * @return the decoded symbol, or -1 if the stream ended cleanly before
+	 * the first bit of a new symbol
+	 * @throws IOException if the stream ends in the middle of a symbol
+	 */
+	public int decode(BitReader in) throws IOException {
+		int node = _root;
+		boolean started = false;
+		while (_symbol[node] == INTERNAL) {
+			int bit = in.readBit();
+			if (bit < 0) {
+				if (!started) {
+					return -1;
+				}
+				throw new IOException("Unexpected end of bit stream.");
+			}
+			started = true;
+			node = (bit == 0) ? _left[node] : _right[node];
+		}
+		int symbol;
+		if (_symbol[node] == NYT) {
+			if (!started && _symbolBits > 0) {
+				//empty tree: peek for end of stream before reading a raw symbol
+				int bit = in.readBit();
+				if (bit < 0) {
+					return -1;
+				}
+				symbol = (int) ((((long) bit) << (_symbolBits - 1))
+						| in.readBits(_symbolBits - 1));
+			}
+			else {
+				symbol = (int) in.readBits(_symbolBits);
+			}
+			if (symbol >= _alphabetSize) {
+				throw new IOException("Decoded symbol is outside the alphabet.");
+			}
+		}
+		else {
+			symbol = _symbol[node];
+		}
+		update(symbol);
+		return symbol;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of bits used to send a symbol the first time it is seen
+	 */
+	public int symbolBits() {
+		return _symbolBits;
+	}
+
+	/**
+	 * Compresses a string in a single pass. The output starts with the
+	 * number of chars as a 32 bit header followed by the adaptive codes.
+	 * @param text - input to compress
+	 * @return compressed bytes
+	 */
+	public static byte[] compress(String text) {
+		if (text == null) {
+			throw new IllegalArgumentException("Input text is null.");
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 2 + 16);
+		BitWriter out = new BitWriter(bytes);
+		AdaptiveHuffmanCoder coder = new AdaptiveHuffmanCoder(Character.MAX_VALUE + 1);
+		try {
+			out.writeBits(text.length(), 32);
+			for (int i = 0; i < text.length(); i++) {
+				coder.encode(text.charAt(i), out);
+			}
+			out.finish();
+		} catch (IOException e) {
+			//cannot happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decompresses the output of compress(String).
+	 * @param data - compressed bytes
+	 * @return the original string
+	 * @throws IOException if the data is truncated or corrupt
+	 */
+	public static String decompress(byte[] data) throws IOException {
+		if (data == null) {
+			throw new IllegalArgumentException("Input data is null.");
+		}
+		BitReader in = new BitReader(new ByteArrayInputStream(data));
+		AdaptiveHuffmanCoder coder = new AdaptiveHuffmanCoder(Character.MAX_VALUE + 1);
+		int length = (int) in.readBits(32);
+		if (length < 0) {
+			throw new IOException("Invalid length header.");
+		}
+		StringBuilder text = new StringBuilder(length);
+		for (int i = 0; i < length; i++) {
+			int symbol = coder.decode(in);
+			if (symbol < 0) {
+				throw new IOException("Unexpected end of bit stream.");
+			}
+			text.append((char) symbol);
+		}
+		return text.toString();
+	}
+
+	//writes the path from the root to node
+	private void writePath(int node, BitWriter out) throws IOException {
+		int depth = 0;
+		while (node != _root) {
+			int parent = _parent[node];
+			_path[depth++] = (_right[parent] == node) ? 1 : 0;
+			node = parent;
+		}
+		for (int i = depth - 1; i >= 0; i--) {
+			out.writeBit(_path[i]);
+		}
+	}
+
+	//FGK update: walk from the leaf to the root, swapping each node with the
+	//highest numbered node of equal weight before incrementing it
+	private void update(int symbol) {
+		int node = _leaf[symbol];
+		if (node < 0) {
+			//split the NYT node into a new NYT (left) and the new leaf (right)
+			int old = _nyt;
+			int leafNode = old - 1;
+			int newNyt = old - 2;
+			_symbol[old] = INTERNAL;
+			_left[old] = newNyt;
+			_right[old] = leafNode;
+			initLeaf(leafNode, old, symbol);
+			initLeaf(newNyt, old, NYT);
+			_leaf[symbol] = leafNode;
+			_nyt = newNyt;
+			node = leafNode;
+		}
+
+		while (node >= 0) {
+			int leader = node;
+			while (leader + 1 < _capacity && _weight[leader + 1] == _weight[node]) {
+				leader++;
+			}
+			if (leader != node && leader != _parent[node]) {
+				swap(node, leader);
+				node = leader;
+			}
+			_weight[node]++;
+			node = _parent[node];
+		}
+
+		if (_weight[_root] >= _rescaleLimit) {
+			reset();
+		}
+	}
+
+	private void initLeaf(int node, int parent, int symbol) {
+		_weight[node] = 0;
+		_parent[node] = parent;
+		_left[node] = -1;
+		_right[node] = -1;
+		_symbol[node] = symbol;
+	}
+
+	//exchanges the subtrees rooted at a and b; the node numbers (indices)
+	//and the parents stay where they are
+	private void swap(int a, int b) {
+		int temp = _weight[a];
+		_weight[a] = _weight[b];
+		_weight[b] = temp;
+		temp = _symbol[a];
+		_symbol[a] = _symbol[b];
+		_symbol[b] = temp;
+		temp = _left[a];
+		_left[a] = _left[b];
+		_left[b] = temp;
+		temp = _right[a];
+		_right[a] = _right[b];
+		_right[b] = temp;
+		relink(a);
+		relink(b);
+	}
+
+	private void relink(int node) {
+		int symbol = _symbol[node];
+		if (symbol == INTERNAL) {
+			_parent[_left[node]] = node;
+			_parent[_right[node]] = node;
+		}
+		else if (symbol == NYT) {
+			_nyt = node;
+		}
+		else {
+			_leaf[symbol] = node;
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Immutable result of MovieFinder.aggregate(): count, sum, average, min and
+ * max of the aggregated field, over all matching rows and per non-empty
+ * group in ascending order of their buckets. An ungrouped Aggregation has
+ * no groups, only the totals.
+ */
+public class AggregateResult {
+
+	private final double _width;
+	private final long[] _buckets;
+	private final long[] _count;
+	private final double[] _sum;
+	private final double[] _min;
+	private final double[] _max;
+	private final long _totalCount;
+	private final double _totalSum;
+	private final double _totalMin;
+	private final double _totalMax;
+
+	/**
+	 * Constructor
+	 * @param partial - the merged accumulators
+	 * @param grouped - true to report the buckets as groups
+	 * @param width - bucket width
+	 */
+	AggregateResult(PartialAggregate partial, boolean grouped, double width) {
+		int groups = 0;
+		for (int i = 0; i < partial.slots(); i++) {
+			if (partial.count(i) > 0) {
+				groups++;
+			}
+		}
+		_width = width;
+		_buckets = new long[grouped ? groups : 0];
+		_count = new long[_buckets.length];
+		_sum = new double[_buckets.length];
+		_min = new double[_buckets.length];
+		_max = new double[_buckets.length];
+		long totalCount = 0;
+		double totalSum = 0.0;
+		double totalMin = Double.NaN;
+		double totalMax = Double.NaN;
+		int g = 0;
+		for (int i = 0; i < partial.slots(); i++) {
+			long count = partial.count(i);
+			if (count == 0) {
+				continue;
+			}
+			if (totalCount == 0) {
+				totalMin = partial.min(i);
+				totalMax = partial.max(i);
+			}
+			else {
+				totalMin = Math.min(totalMin, partial.min(i));
+				totalMax = Math.max(totalMax, partial.max(i));
+			}
+			totalCount += count;
+			totalSum += partial.sum(i);
+			if (grouped) {
+				_buckets[g] = partial.base() + i;
+				_count[g] = count;
+				_sum[g] = partial.sum(i);
+				_min[g] = partial.min(i);
+				_max[g] = partial.max(i);
+				g++;
+			}
+		}
+		_totalCount = totalCount;
+		_totalSum = totalSum;
+		_totalMin = totalMin;
+		_totalMax = totalMax;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of non-empty groups
+	 */
+	public int groups() {
+		return _buckets.length;
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group, 0 to groups() - 1
+	 * @return lowest group field value of the group's bucket
+	 */
+	public double groupStart(int group) {
+		return _buckets[group] * _width;
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group
+	 * @return first group field value past the group's bucket
+	 */
+	public double groupEnd(int group) {
+		return (_buckets[group] + 1) * _width;
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group
+	 * @return number of rows in the group
+	 */
+	public long count(int group) {
+		return _count[group];
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group
+	 * @return sum of the field over the group
+	 */
+	public double sum(int group) {
+		return _sum[group];
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group
+	 * @return average of the field over the group
+	 */
+	public double average(int group) {
+		return _sum[group] / _count[group];
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group
+	 * @return smallest value of the field in the group
+	 */
+	public double min(int group) {
+		return _min[group];
+	}
+
+	/**
+	 * Accessor.
+	 * @param group - index of a group
+	 * @return largest value of the field in the group
+	 */
+	public double max(int group) {
+		return _max[group];
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of rows aggregated
+	 */
+	public long count() {
+		return _totalCount;
+	}
+
+	/**
+	 * Accessor.
+	 * @return sum of the field over all rows
+	 */
+	public double sum() {
+		return _totalSum;
+	}
+
+	/**
+	 * Accessor.
+	 * @return average of the field over all rows, NaN if there are none
+	 */
+	public double average() {
+		return _totalSum / _totalCount;
+	}
+
+	/**
+	 * Accessor.
+	 * @return smallest value of the field, NaN if there are no rows
+	 */
+	public double min() {
+		return _totalMin;
+	}
+
+	/**
+	 * Accessor.
+	 * @return largest value of the field, NaN if there are no rows
+	 */
+	public double max() {
+		return _totalMax;
+	}
+
+	/**
+	 * Accessor.
+	 * @return the totals and one line per group
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("count=").append(_totalCount).append(" sum=").append(_totalSum)
+				.append(" avg=").append(average()).append(" min=").append(_totalMin)
+				.append(" max=").append(_totalMax);
+		for (int g = 0; g < _buckets.length; g++) {
+			sb.append("\n[").append(groupStart(g)).append(", ").append(groupEnd(g))
+					.append(") count=").append(_count[g]).append(" sum=").append(_sum[g])
+					.append(" avg=").append(average(g)).append(" min=").append(_min[g])
+					.append(" max=").append(_max[g]);
+		}
+		return sb.toString();
+	}
+}
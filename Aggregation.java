@@ -0,0 +1,181 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Describes an aggregation for MovieFinder.aggregate(): count, sum,
+ * average, min and max of one numeric field (RATING, VOTES or AWARDS of
+ * MovieQuery) over the rows matching a query, optionally grouped into
+ * buckets of equal width of another (or the same) field. A row whose group
+ * field has value v falls into bucket floor(v / width), so
+ * <pre>
+ * new Aggregation(MovieQuery.RATING, MovieQuery.AWARDS, 1)
+ * </pre>
+ * gives the average rating per number of awards, and grouping a field by
+ * itself gives its histogram. Rows whose value or group field is NaN are
+ * left out.
+ *
+ * The rows are aggregated in one pass in store order, without sorting them
+ * or creating Movie objects: a scan filters blocks of rows into a small
+ * buffer and folds each block into per-bucket accumulators. Large stores
+ * are split into partitions that run on the WorkerPool, each with its own
+ * accumulators, which are merged at the end.
+ */
+public final class Aggregation {
+
+	//rows filtered into the buffer and folded in at a time
+	private static final int BLOCK_SIZE = 4096;
+
+	private final int _field;
+	//group field, or -1 for a single group
+	private final int _groupField;
+	private final double _width;
+
+	/**
+	 * Aggregates a field over all matching rows as one group.
+	 * @param field - RATING, VOTES or AWARDS
+	 */
+	public Aggregation(String field) {
+		_field = checkField(field);
+		_groupField = -1;
+		_width = 1;
+	}
+
+	/**
+	 * Aggregates a field per bucket of a group field.
+	 * @param field - field to aggregate: RATING, VOTES or AWARDS
+	 * @param groupField - field to group by: RATING, VOTES or AWARDS
+	 * @param width - width of the buckets, e.g. 1 for one group per number of
+	 * awards or 0.5 for rating buckets [0, 0.5), [0.5, 1) and so on
+	 */
+	public Aggregation(String field, String groupField, double width) {
+		_field = checkField(field);
+		_groupField = checkField(groupField);
+		if (!(width > 0) || Double.isInfinite(width)) {
+			throw new IllegalArgumentException("Bucket width must be positive.");
+		}
+		_width = width;
+	}
+
+	private static int checkField(String field) {
+		int code = MovieSorter.fieldOf(field);
+		if (code < 0) {
+			throw new IllegalArgumentException("Invalid aggregation field: " + field);
+		}
+		return code;
+	}
+
+	/**
+	 * Aggregates a list of row ids, e.g. the result of an index lookup.
+	 * @param store - the store the rows belong to
+	 * @param rows - row ids
+	 * @param numRows - number of row ids
+	 * @return the result
+	 */
+	AggregateResult aggregate(MovieStore store, int[] rows, int numRows) {
+		PartialAggregate partial = new PartialAggregate();
+		double[] values = new double[BLOCK_SIZE];
+		double[] groups = new double[BLOCK_SIZE];
+		for (int from = 0; from < numRows; from += BLOCK_SIZE) {
+			int n = Math.min(BLOCK_SIZE, numRows - from);
+			fold(store, rows, from, n, values, groups, partial);
+		}
+		return result(partial);
+	}
+
+	/**
+	 * Aggregates the rows of a store that pass a filter.
+	 * @param store - the store to scan
+	 * @param filter - the search parameters
+	 * @return the result
+	 */
+	AggregateResult aggregate(final MovieStore store, final RowFilter filter) {
+		final int n = store.size();
+		if (filter.isEmpty()) {
+			return result(new PartialAggregate());
+		}
+		int partitions = Math.min(WorkerPool.parallelism(), n / (RowFilter.PARALLEL_THRESHOLD / 2));
+		if (n < RowFilter.PARALLEL_THRESHOLD || partitions < 2) {
+			return result(scan(store, filter, 0, n));
+		}
+		List<Callable<PartialAggregate>> tasks = new ArrayList<Callable<PartialAggregate>>(partitions);
+		for (int p = 0; p < partitions; p++) {
+			final int from = (int) ((long) n * p / partitions);
+			final int to = (int) ((long) n * (p + 1) / partitions);
+			tasks.add(new Callable<PartialAggregate>() {
+				public PartialAggregate call() {
+					return scan(store, filter, from, to);
+				}
+			});
+		}
+		List<PartialAggregate> partials = WorkerPool.invokeAll(tasks);
+		PartialAggregate total = partials.get(0);
+		for (int p = 1; p < partitions; p++) {
+			total.merge(partials.get(p));
+		}
+		return result(total);
+	}
+
+	//aggregates the matching rows of [from, to) a block at a time
+	private PartialAggregate scan(MovieStore store, RowFilter filter, int from, int to) {
+		PartialAggregate partial = new PartialAggregate();
+		int[] rows = new int[BLOCK_SIZE];
+		double[] values = new double[BLOCK_SIZE];
+		double[] groups = new double[BLOCK_SIZE];
+		for (int start = from; start < to; start += BLOCK_SIZE) {
+			int n = filter.scan(store, start, Math.min(to, start + BLOCK_SIZE), rows, 0);
+			fold(store, rows, 0, n, values, groups, partial);
+		}
+		return partial;
+	}
+
+	//gathers the fields of rows[from, from + n) into values and groups, then
+	//adds them to partial
+	private void fold(MovieStore store, int[] rows, int from, int n, double[] values, 
+			double[] groups, PartialAggregate partial) {
+		gather(store, _field, rows, from, n, values);
+		if (_groupField < 0) {
+			for (int i = 0; i < n; i++) {
+				partial.add(0, values[i]);
+			}
+			return;
+		}
+		gather(store, _groupField, rows, from, n, groups);
+		double width = _width;
+		for (int i = 0; i < n; i++) {
+			double group = groups[i];
+			if (group == group) {
+				partial.add((long) Math.floor(group / width), values[i]);
+			}
+		}
+	}
+
+	private static void gather(MovieStore store, int field, int[] rows, int from, int n, 
+			double[] out) {
+		if (store.isEncoded()) {
+			for (int i = 0; i < n; i++) {
+				int row = rows[from + i];
+				out[i] = (field == MovieSorter.RATING) ? store.rating(row)
+						: (field == MovieSorter.VOTES) ? store.votes(row) : store.awards(row);
+			}
+		}
+		else if (field == MovieSorter.RATING) {
+			double[] column = store.ratingColumn();
+			for (int i = 0; i < n; i++) {
+				out[i] = column[rows[from + i]];
+			}
+		}
+		else {
+			int[] column = (field == MovieSorter.VOTES) ? store.votesColumn() : store.awardsColumn();
+			for (int i = 0; i < n; i++) {
+				out[i] = column[rows[from + i]];
+			}
+		}
+	}
+
+	private AggregateResult result(PartialAggregate partial) {
+		return new AggregateResult(partial, _groupField >= 0, _width);
+	}
+}
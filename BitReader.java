@@ -0,0 +1,84 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a stream of bits from an underlying InputStream, most significant
+ * bit first. This is the counterpart of BitWriter.
+ */
+public class BitReader {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private InputStream _in;
+	private byte[] _buffer;
+	private int _bufferPos;
+	private int _bufferLen;
+	private int _current;
+	private int _bitsLeft;
+
+	/**
+	 * Constructs a BitReader on top of the given stream.
+	 * @param in - stream to read packed bytes from
+	 */
+	public BitReader(InputStream in) {
+		if (in == null) {
+			throw new IllegalArgumentException("Input stream is null.");
+		}
+		_in = in;
+		_buffer = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Reads a single bit.
+	 * @return 0 or 1, or -1 if the end of the stream has been reached
+	 * @throws IOException
+	 */
+	public int readBit() throws IOException {
+		if (_bitsLeft == 0 && !fill()) {
+			return -1;
+		}
+		_bitsLeft--;
+		return (_current >>> _bitsLeft) & 1;
+	}
+
+	/**
+	 * Reads numBits bits and returns them as the lowest bits of a long.
+	 * @param numBits - number of bits to read (0 to 64)
+	 * @return the bits read
+	 * @throws IOException if the stream ends before numBits bits were read
+	 */
+	public long readBits(int numBits) throws IOException {
+		if (numBits < 0 || numBits > 64) {
+			throw new IllegalArgumentException("Invalid number of bits.");
+		}
+		long value = 0;
+		//drain the current byte, then consume whole bytes at a time
+		while (numBits > 0) {
+			if (_bitsLeft == 0 && !fill()) {
+				throw new IOException("Unexpected end of bit stream.");
+			}
+			int take = Math.min(_bitsLeft, numBits);
+			_bitsLeft -= take;
+			numBits -= take;
+			value = (value << take) | ((_current >>> _bitsLeft) & ((1 << take) - 1));
+		}
+		return value;
+	}
+
+	//loads the next byte into _current, returns false at end of stream
+	private boolean fill() throws IOException {
+		if (_bufferPos == _bufferLen) {
+			_bufferLen = _in.read(_buffer, 0, _buffer.length);
+			_bufferPos = 0;
+			if (_bufferLen <= 0) {
+				_bufferLen = 0;
+				return false;
+			}
+		}
+		_current = _buffer[_bufferPos++] & 0xFF;
+		_bitsLeft = 8;
+		return true;
+	}
+}
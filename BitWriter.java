@@ -0,0 +1,119 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes a stream of bits to an underlying OutputStream, most significant
+ * bit first. Bits are packed into an internal byte buffer which is handed to
+ * the stream whenever it fills up or flush() is called.
+ */
+public class BitWriter {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private OutputStream _out;
+	private byte[] _buffer;
+	private int _bufferPos;
+	private int _current;
+	private int _bitCount;
+	private long _bitsWritten;
+
+	/**
+	 * Constructs a BitWriter on top of the given stream.
+	 * @param out - stream that receives the packed bytes
+	 */
+	public BitWriter(OutputStream out) {
+		if (out == null) {
+			throw new IllegalArgumentException("Output stream is null.");
+		}
+		_out = out;
+		_buffer = new byte[BUFFER_SIZE];
+	}
+
+	/**
+	 * Writes a single bit.
+	 * @param bit - 0 or 1
+	 * @throws IOException
+	 */
+	public void writeBit(int bit) throws IOException {
+		_current = (_current << 1) | (bit & 1);
+		_bitCount++;
+		_bitsWritten++;
+		if (_bitCount == 8) {
+			putByte(_current);
+			_current = 0;
+			_bitCount = 0;
+		}
+	}
+
+	/**
+	 * Writes the lowest numBits bits of value, most significant bit first.
+	 * @param value - bits to write
+	 * @param numBits - number of bits to write (0 to 64)
+	 * @throws IOException
+	 */
+	public void writeBits(long value, int numBits) throws IOException {
+		if (numBits < 0 || numBits > 64) {
+			throw new IllegalArgumentException("Invalid number of bits.");
+		}
+		_bitsWritten += numBits;
+		//fill the current byte, then emit whole bytes at a time
+		while (numBits > 0) {
+			int take = Math.min(8 - _bitCount, numBits);
+			numBits -= take;
+			int bits = (int) (value >>> numBits) & ((1 << take) - 1);
+			_current = (_current << take) | bits;
+			_bitCount += take;
+			if (_bitCount == 8) {
+				putByte(_current);
+				_current = 0;
+				_bitCount = 0;
+			}
+		}
+	}
+
+	/**
+	 * Writes every byte that has been completely filled so far. The partially
+	 * filled last byte (at most 7 bits) is kept back until more bits arrive
+	 * or the writer is closed.
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		if (_bufferPos > 0) {
+			_out.write(_buffer, 0, _bufferPos);
+			_bufferPos = 0;
+		}
+		_out.flush();
+	}
+
+	/**
+	 * Pads the last byte with zero bits and flushes everything to the
+	 * underlying stream. The stream itself is not closed.
+	 * @throws IOException
+	 */
+	public void finish() throws IOException {
+		if (_bitCount > 0) {
+			putByte(_current << (8 - _bitCount));
+			_current = 0;
+			_bitCount = 0;
+		}
+		flush();
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of bits written so far (not counting padding)
+	 */
+	public long bitsWritten() {
+		return _bitsWritten;
+	}
+
+	private void putByte(int b) throws IOException {
+		if (_bufferPos == _buffer.length) {
+			_out.write(_buffer, 0, _bufferPos);
+			_bufferPos = 0;
+		}
+		_buffer[_bufferPos++] = (byte) b;
+	}
+}
@@ -0,0 +1,26 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Immutable state that a query runs against: a read-only snapshot of the
+ * store, the indexes built for exactly that snapshot, and the cache
+ * generation its results belong to. MovieFinder publishes a new Catalog
+ * after every change, and each query reads the current one once, so it
+ * sees consistent data from start to end however many reloads happen
+ * meanwhile.
+ */
+final class Catalog {
+
+	final MovieStore _store;
+	//sorted indexes by field, or null if indexing is disabled
+	final ColumnIndex[] _indexes;
+	//title index, or null if indexing is disabled
+	final TitleIndex _titleIndex;
+	final long _generation;
+
+	Catalog(MovieStore store, ColumnIndex[] indexes, TitleIndex titleIndex, long generation) {
+		_store = store;
+		_indexes = indexes;
+		_titleIndex = titleIndex;
+		_generation = generation;
+	}
+}
@@ -0,0 +1,322 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Caches Huffman code books for short, similar messages. A message is
+ * reduced to a frequency profile: its set of symbols together with each
+ * symbol's information content (-log2 p) rounded to a fixed number of steps
+ * per bit. Messages with the same profile share a prebuilt code book, as long
+ * as the expected size penalty of reusing it stays below a threshold.
+ *
+ * Checking the penalty doesn't build a code: a message with the histogram
+ * the code book was built from has none, and otherwise the entropy of the
+ * message bounds its optimal size from below. Only messages the bound can't
+ * accept get the optimal code lengths computed, and the verdict is kept
+ * with the code book for later messages with the same histogram.
+ *
+ * Like blankCodeBook(), messages are lowercased before they are counted.
+ * The cache holds a bounded number of code books and evicts the least
+ * recently used one. Returned code books are shared and must not be modified.
+ */
+public class CodeBookCache {
+
+	/**
+	 * Default number of quantization steps per bit of information content.
+	 */
+	public static final int DEFAULT_STEPS_PER_BIT = 2;
+
+	//histograms whose verdict is kept per code book
+	private static final int MAX_VERDICTS = 32;
+
+	private int _maxEntries;
+	private double _maxPenalty;
+	private int _stepsPerBit;
+	private boolean _canonical;
+	private LinkedHashMap<String, Entry> _entries;
+
+	//scratch histogram, only touched while holding the lock
+	private int[] _counts;
+	private char[] _seen;
+
+	private long _hits;
+	private long _misses;
+	private long _rejects;
+	private long _evictions;
+
+	/**
+	 * Constructs a cache with the default quantization that builds ordinary
+	 * (non-canonical) code books.
+	 * @param maxEntries - maximum number of cached code books
+	 * @param maxPenalty - largest accepted relative size penalty, e.g. 0.05
+	 * for at most 5% more bits than the optimal Huffman code of the message
+	 */
+	public CodeBookCache(int maxEntries, double maxPenalty) {
+		this(maxEntries, maxPenalty, DEFAULT_STEPS_PER_BIT, false);
+	}
+
+	/**
+	 * Constructs a cache.
+	 * @param maxEntries - maximum number of cached code books
+	 * @param maxPenalty - largest accepted relative size penalty
+	 * @param stepsPerBit - quantization steps per bit of information content;
+	 * more steps give fewer hits but closer matches
+	 * @param canonical - whether to cache canonical code books
+	 */
+	public CodeBookCache(int maxEntries, double maxPenalty, int stepsPerBit,
+			boolean canonical) {
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("Cache must hold at least one entry.");
+		}
+		if (maxPenalty < 0 || stepsPerBit < 1) {
+			throw new IllegalArgumentException("Invalid quantization parameters.");
+		}
+		_maxEntries = maxEntries;
+		_maxPenalty = maxPenalty;
+		_stepsPerBit = stepsPerBit;
+		_canonical = canonical;
+		_entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+		_counts = new int[Character.MAX_VALUE + 1];
+		_seen = new char[16];
+	}
+
+	/**
+	 * Returns a code book with Huffman encodings for every symbol of text,
+	 * either from the cache or freshly built.
+	 * @param text - message to be encoded
+	 * @return code book covering all the symbols of text
+	 */
+	public synchronized CodeBookI codeBookFor(String text) {
+		if (text == null) {
+			throw new IllegalArgumentException("Input text is null.");
+		}
+		text = text.toLowerCase();
+		if (text.length() == 0) {
+			return new CodeBook();
+		}
+
+		//count the symbols, remembering which counters need clearing
+		int distinct = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char curr = text.charAt(i);
+			if (_counts[curr]++ == 0) {
+				if (distinct == _seen.length) {
+					char[] grown = new char[distinct * 2];
+					System.arraycopy(_seen, 0, grown, 0, distinct);
+					_seen = grown;
+				}
+				_seen[distinct++] = curr;
+			}
+		}
+		Arrays.sort(_seen, 0, distinct);
+
+		try {
+			String key = profileKey(text.length(), distinct);
+			Entry entry = _entries.get(key);
+			if (entry != null && accepts(entry, distinct)) {
+				_hits++;
+				return entry._codebook;
+			}
+			if (entry != null) {
+				_rejects++;
+			}
+			_misses++;
+			entry = build(distinct);
+			_entries.put(key, entry);
+			if (_entries.size() > _maxEntries) {
+				Iterator<String> eldest = _entries.keySet().iterator();
+				eldest.next();
+				eldest.remove();
+				_evictions++;
+			}
+			return entry._codebook;
+		} finally {
+			for (int i = 0; i < distinct; i++) {
+				_counts[_seen[i]] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of lookups answered from the cache
+	 */
+	public synchronized long hits() {
+		return _hits;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of lookups that had to build a code book
+	 */
+	public synchronized long misses() {
+		return _misses;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of misses caused by a cached code book whose penalty
+	 * was above the threshold
+	 */
+	public synchronized long rejects() {
+		return _rejects;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of code books evicted to stay within the size bound
+	 */
+	public synchronized long evictions() {
+		return _evictions;
+	}
+
+	/**
+	 * Accessor.
+	 * @return fraction of lookups answered from the cache
+	 */
+	public synchronized double hitRate() {
+		long total = _hits + _misses;
+		return (total == 0) ? 0.0 : _hits / (double) total;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of cached code books
+	 */
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Removes every cached code book. Statistics are kept.
+	 */
+	public synchronized void clear() {
+		_entries.clear();
+	}
+
+	//symbols in order, each followed by its quantized information content
+	private String profileKey(int total, int distinct) {
+		StringBuilder key = new StringBuilder(distinct * 2);
+		for (int i = 0; i < distinct; i++) {
+			double bits = log2(total / (double) _counts[_seen[i]]);
+			key.append(_seen[i]);
+			key.append((char) Math.round(bits * _stepsPerBit));
+		}
+		return key.toString();
+	}
+
+	//whether the penalty of using entry's code on the current histogram is
+	//at most _maxPenalty, building the optimal code only if the entropy
+	//bound can't tell and no verdict for the histogram is kept
+	private boolean accepts(Entry entry, int distinct) {
+		if (distinct == 1) {
+			return true;
+		}
+		long total = 0;
+		long codeBits = 0;
+		boolean same = true;
+		for (int i = 0; i < distinct; i++) {
+			int count = _counts[_seen[i]];
+			total += count;
+			codeBits += (long) count * entry._lengths[i];
+			same &= count == entry._counts[i];
+		}
+		if (same) {
+			return true;
+		}
+
+		//no code beats the entropy, so if the code is close enough to it,
+		//it is close enough to the optimal code
+		double entropyBits = 0;
+		for (int i = 0; i < distinct; i++) {
+			int count = _counts[_seen[i]];
+			entropyBits += count * log2(total / (double) count);
+		}
+		if (codeBits <= (1 + _maxPenalty) * entropyBits) {
+			return true;
+		}
+
+		StringBuilder histogram = new StringBuilder(distinct * 2);
+		for (int i = 0; i < distinct; i++) {
+			int count = _counts[_seen[i]];
+			histogram.append((char) (count >>> 16));
+			histogram.append((char) count);
+		}
+		String key = histogram.toString();
+		Boolean verdict = entry._verdicts.get(key);
+		if (verdict == null) {
+			verdict = penalty(codeBits, distinct) <= _maxPenalty;
+			if (entry._verdicts.size() < MAX_VERDICTS) {
+				entry._verdicts.put(key, verdict);
+			}
+		}
+		return verdict;
+	}
+
+	//relative number of extra bits spent by a code of codeBits on the
+	//current histogram instead of the Huffman code built for it; measured
+	//against entropy instead, skewed histograms would never hit
+	private double penalty(long codeBits, int distinct) {
+		long[] counts = new long[distinct];
+		for (int i = 0; i < distinct; i++) {
+			counts[i] = _counts[_seen[i]];
+		}
+		int[] optimal = HuffmanBuilder.codeLengths(counts);
+		long optimalBits = 0;
+		for (int i = 0; i < distinct; i++) {
+			optimalBits += counts[i] * optimal[i];
+		}
+		return codeBits / (double) optimalBits - 1.0;
+	}
+
+	private Entry build(int distinct) {
+		CodeBook blank = new CodeBook();
+		for (int i = 0; i < distinct; i++) {
+			blank.putSymbol(_seen[i], _counts[_seen[i]], "");
+		}
+		CodeBookI codebook = HuffmanBuilder.buildHuffmanCode(blank);
+		if (_canonical) {
+			codebook = HuffmanBuilder.canonicalCode(codebook);
+		}
+		Entry entry = new Entry();
+		entry._codebook = codebook;
+		entry._lengths = new int[distinct];
+		entry._counts = new int[distinct];
+		Set<Character> alphaSet = codebook.getAlphabet();
+		for (int i = 0; i < distinct; i++) {
+			entry._counts[i] = _counts[_seen[i]];
+			if (alphaSet.contains(_seen[i])) {
+				entry._lengths[i] = codebook.getEncoding(_seen[i]).length();
+			}
+		}
+		return entry;
+	}
+
+	private static double log2(double x) {
+		return Math.log(x) / Math.log(2);
+	}
+
+	//a cached code book with its code lengths and the histogram it was
+	//built from, in the order of the profile, and the verdicts on other
+	//histograms that needed the optimal code
+	private static class Entry {
+		private CodeBookI _codebook;
+		private int[] _lengths;
+		private int[] _counts;
+		private HashMap<String, Boolean> _verdicts = new HashMap<String, Boolean>();
+	}
+
+	/**
+	 * Accessor for debugging.
+	 * @return a short summary of the cache statistics
+	 */
+	public synchronized String toString() {
+		return "CodeBookCache[size=" + _entries.size() + ", hits=" + _hits
+				+ ", misses=" + _misses + ", rejects=" + _rejects
+				+ ", evictions=" + _evictions + "]";
+	}
+}
@@ -0,0 +1,216 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.Arrays;
+
+/**
+ * Sorted secondary index over one numeric column of a MovieStore. The keys
+ * are kept in ascending order next to their row ids, so the rows matching
+ * an AT_LEAST, AT_MOST or EQUAL_TO predicate form one contiguous range that
+ * is found with two binary searches. The size of that range is also an
+ * exact selectivity estimate for the planner.
+ *
+ * An index describes the store at the time it was built. append() extends
+ * it to rows added since by sorting only the new keys and merging them into
+ * a small delta index, which lookups search next to the main one. Once the
+ * delta holds more than MAX_DELTA_FRACTION as many rows as the main index,
+ * the two are merged, so appending costs time proportional to the new rows
+ * plus the delta, and a merge of everything only every so often.
+ */
+final class ColumnIndex {
+
+	//largest size of the delta index relative to the main one
+	private static final double MAX_DELTA_FRACTION = 0.125;
+
+	private final int _field;
+	private final double[] _keys;
+	private final int[] _rows;
+	//the delta index, over rows added after the main one was merged
+	private final double[] _deltaKeys;
+	private final int[] _deltaRows;
+
+	private ColumnIndex(int field, double[] keys, int[] rows, double[] deltaKeys, int[] deltaRows) {
+		_field = field;
+		_keys = keys;
+		_rows = rows;
+		_deltaKeys = deltaKeys;
+		_deltaRows = deltaRows;
+	}
+
+	/**
+	 * Builds the index of one column of a store.
+	 * @param store - the store
+	 * @param field - MovieSorter.RATING, VOTES or AWARDS
+	 * @return the index, or null if the column holds NaN ratings, which have
+	 * no place in a sorted order
+	 */
+	static ColumnIndex build(MovieStore store, int field) {
+		return new ColumnIndex(field, new double[0], new int[0], new double[0], new int[0])
+				.append(store);
+	}
+
+	/**
+	 * Extends the index to the rows added to its store since it was built.
+	 * @param store - the store the index was built from, or a later snapshot
+	 * of it
+	 * @return index of all rows of store, or null if a new rating is NaN
+	 */
+	ColumnIndex append(MovieStore store) {
+		int old = size();
+		int n = store.size() - old;
+		if (n == 0) {
+			return this;
+		}
+		double[] newKeys = new double[n];
+		int[] newRows = new int[n];
+		if (store.isEncoded()) {
+			for (int i = 0; i < n; i++) {
+				int row = old + i;
+				newKeys[i] = (_field == MovieSorter.RATING) ? store.rating(row)
+						: (_field == MovieSorter.VOTES) ? store.votes(row) : store.awards(row);
+				if (Double.isNaN(newKeys[i])) {
+					return null;
+				}
+				newRows[i] = row;
+			}
+		}
+		else if (_field == MovieSorter.RATING) {
+			double[] column = store.ratingColumn();
+			for (int i = 0; i < n; i++) {
+				if (Double.isNaN(column[old + i])) {
+					return null;
+				}
+				newKeys[i] = column[old + i];
+				newRows[i] = old + i;
+			}
+		}
+		else {
+			int[] column = (_field == MovieSorter.VOTES) ? store.votesColumn() : store.awardsColumn();
+			for (int i = 0; i < n; i++) {
+				newKeys[i] = column[old + i];
+				newRows[i] = old + i;
+			}
+		}
+		MovieSorter.sortByKey(newKeys, newRows, n);
+
+		double[] deltaKeys = new double[_deltaKeys.length + n];
+		int[] deltaRows = new int[deltaKeys.length];
+		merge(_deltaKeys, _deltaRows, newKeys, newRows, deltaKeys, deltaRows);
+		if (deltaKeys.length <= MAX_DELTA_FRACTION * _keys.length) {
+			return new ColumnIndex(_field, _keys, _rows, deltaKeys, deltaRows);
+		}
+		double[] keys = new double[_keys.length + deltaKeys.length];
+		int[] rows = new int[keys.length];
+		merge(_keys, _rows, deltaKeys, deltaRows, keys, rows);
+		return new ColumnIndex(_field, keys, rows, new double[0], new int[0]);
+	}
+
+	//merges two runs sorted by key into keys and rows, the entries of a
+	//first among equal keys since their row ids are smaller
+	private static void merge(double[] aKeys, int[] aRows, double[] bKeys, int[] bRows, 
+			double[] keys, int[] rows) {
+		int i = 0;
+		int j = 0;
+		for (int k = 0; k < keys.length; k++) {
+			if (j >= bKeys.length || (i < aKeys.length && aKeys[i] <= bKeys[j])) {
+				keys[k] = aKeys[i];
+				rows[k] = aRows[i++];
+			}
+			else {
+				keys[k] = bKeys[j];
+				rows[k] = bRows[j++];
+			}
+		}
+	}
+
+	/**
+	 * Accessor.
+	 * @return the indexed field
+	 */
+	int field() {
+		return _field;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of indexed rows
+	 */
+	int size() {
+		return _keys.length + _deltaKeys.length;
+	}
+
+	/**
+	 * Counts the rows matching a predicate on the indexed field.
+	 * @param predicate - predicate on field()
+	 * @return number of matching rows
+	 */
+	int count(Predicate predicate) {
+		return end(_keys, predicate) - start(_keys, predicate)
+				+ end(_deltaKeys, predicate) - start(_deltaKeys, predicate);
+	}
+
+	/**
+	 * Looks up the rows matching a predicate on the indexed field.
+	 * @param predicate - predicate on field()
+	 * @return ids of the matching rows in ascending order, i.e. store order
+	 */
+	int[] rows(Predicate predicate) {
+		int start = start(_keys, predicate);
+		int length = Math.max(0, end(_keys, predicate) - start);
+		int deltaStart = start(_deltaKeys, predicate);
+		int deltaLength = Math.max(0, end(_deltaKeys, predicate) - deltaStart);
+		int[] rows = new int[length + deltaLength];
+		System.arraycopy(_rows, start, rows, 0, length);
+		System.arraycopy(_deltaRows, deltaStart, rows, length, deltaLength);
+		Arrays.sort(rows);
+		return rows;
+	}
+
+	//first position of the matching range in keys; nothing matches NaN
+	private static int start(double[] keys, Predicate predicate) {
+		if (Double.isNaN(predicate._value)) {
+			return 0;
+		}
+		return (predicate._operator == Predicate.AT_MOST) ? 0 : lowerBound(keys, predicate._value);
+	}
+
+	//position after the matching range in keys
+	private static int end(double[] keys, Predicate predicate) {
+		if (Double.isNaN(predicate._value)) {
+			return 0;
+		}
+		return (predicate._operator == Predicate.AT_LEAST) ? keys.length 
+				: upperBound(keys, predicate._value);
+	}
+
+	//first position whose key is >= value
+	private static int lowerBound(double[] keys, double value) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] < value) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	//first position whose key is > value
+	private static int upperBound(double[] keys, double value) {
+		int lo = 0;
+		int hi = keys.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (keys[mid] <= value) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
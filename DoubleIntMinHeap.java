@@ -0,0 +1,173 @@
+package edu.upenn.cis.cis121.hw6;
+
+/**
+ * A min heap of double keys with int payloads, stored in two parallel
+ * primitive arrays so no objects are allocated or compared through
+ * compareTo(). The heap is 4-ary: with four children per node it is half as
+ * deep as a binary heap, and the children of a node sit next to each other
+ * in memory.
+ */
+public class DoubleIntMinHeap {
+
+	private static final int ARITY = 4;
+
+	private double[] _keys;
+	private int[] _values;
+	private int _size;
+
+	/**
+	 * Constructs an empty heap.
+	 * @param capacity - initial capacity, the heap grows as needed
+	 */
+	public DoubleIntMinHeap(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity is negative.");
+		}
+		_keys = new double[Math.max(capacity, 1)];
+		_values = new int[_keys.length];
+	}
+
+	/**
+	 * Builds a heap from the first size entries of the given arrays in O(n).
+	 * The arrays are copied.
+	 * @param keys - keys of the entries
+	 * @param values - payloads of the entries
+	 * @param size - number of entries to use
+	 * @return heap holding the entries
+	 */
+	public static DoubleIntMinHeap heapify(double[] keys, int[] values, int size) {
+		if (size < 0 || size > keys.length || size > values.length) {
+			throw new IllegalArgumentException("Invalid heap size.");
+		}
+		DoubleIntMinHeap heap = new DoubleIntMinHeap(size);
+		System.arraycopy(keys, 0, heap._keys, 0, size);
+		System.arraycopy(values, 0, heap._values, 0, size);
+		heap._size = size;
+		//sift down every internal node, starting with the last one
+		for (int i = (size - 2) / ARITY; i >= 0; i--) {
+			heap.siftDown(i, heap._keys[i], heap._values[i]);
+		}
+		return heap;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of entries in the heap
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if the heap has no entries
+	 */
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	/**
+	 * Adds an entry.
+	 * @param key
+	 * @param value
+	 */
+	public void insert(double key, int value) {
+		if (_size == _keys.length) {
+			int capacity = _keys.length * 2;
+			double[] keys = new double[capacity];
+			int[] values = new int[capacity];
+			System.arraycopy(_keys, 0, keys, 0, _size);
+			System.arraycopy(_values, 0, values, 0, _size);
+			_keys = keys;
+			_values = values;
+		}
+		//move parents down into the hole until the key fits
+		int hole = _size++;
+		while (hole > 0) {
+			int parent = (hole - 1) / ARITY;
+			if (_keys[parent] <= key) {
+				break;
+			}
+			_keys[hole] = _keys[parent];
+			_values[hole] = _values[parent];
+			hole = parent;
+		}
+		_keys[hole] = key;
+		_values[hole] = value;
+	}
+
+	/**
+	 * Accessor.
+	 * @return the smallest key
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public double minKey() {
+		checkNotEmpty();
+		return _keys[0];
+	}
+
+	/**
+	 * Accessor.
+	 * @return the payload of the entry with the smallest key
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public int minValue() {
+		checkNotEmpty();
+		return _values[0];
+	}
+
+	/**
+	 * Removes the entry with the smallest key.
+	 * @return the payload of the removed entry
+	 * @throws IllegalStateException if the heap is empty
+	 */
+	public int removeMin() {
+		checkNotEmpty();
+		int min = _values[0];
+		_size--;
+		if (_size > 0) {
+			siftDown(0, _keys[_size], _values[_size]);
+		}
+		return min;
+	}
+
+	/**
+	 * Removes every entry.
+	 */
+	public void clear() {
+		_size = 0;
+	}
+
+	//places (key, value) at hole or below it, moving smaller children up
+	private void siftDown(int hole, double key, int value) {
+		while (true) {
+			int first = hole * ARITY + 1;
+			if (first >= _size) {
+				break;
+			}
+			int last = Math.min(first + ARITY, _size);
+			int min = first;
+			double minKey = _keys[first];
+			for (int c = first + 1; c < last; c++) {
+				if (_keys[c] < minKey) {
+					min = c;
+					minKey = _keys[c];
+				}
+			}
+			if (key <= minKey) {
+				break;
+			}
+			_keys[hole] = minKey;
+			_values[hole] = _values[min];
+			hole = min;
+		}
+		_keys[hole] = key;
+		_values[hole] = value;
+	}
+
+	private void checkNotEmpty() {
+		if (_size == 0) {
+			throw new IllegalStateException("Heap is empty.");
+		}
+	}
+}
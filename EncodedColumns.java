@@ -0,0 +1,400 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compressed, read-only copy of the rows of a MovieStore:
+ * - votes and awards are frame-of-reference encoded: each value is stored
+ *   as its distance from the column minimum in just enough bits for the
+ *   largest distance,
+ * - ratings are dictionary encoded: the distinct ratings are kept sorted
+ *   (NaN last) and each row stores the bit-packed position of its rating,
+ * - titles are deduplicated into a sorted dictionary, which is front-coded
+ *   in blocks of TITLE_BLOCK titles, and each row stores the bit-packed
+ *   position of its title.
+ *
+ * Both encodings keep the order of the values, so a range of values is a
+ * range of codes (see codeRange()), and RowFilter tests predicates on the
+ * packed codes without decoding the rows.
+ */
+final class EncodedColumns {
+
+	/**
+	 * Titles per front-coded block. Decoding a title reads up to this many
+	 * entries of its block.
+	 */
+	static final int TITLE_BLOCK = 16;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final int _size;
+
+	//distinct ratings in Arrays.sort() order; the first _numericRatings
+	//aren't NaN
+	private final double[] _ratings;
+	private final int _numericRatings;
+	private final PackedInts _ratingCodes;
+
+	private final int _votesMin;
+	private final PackedInts _votes;
+	private final int _awardsMin;
+	private final PackedInts _awards;
+
+	//the distinct titles are front-coded in _titleBytes, block b starting at
+	//_titleBlocks[b]; a title is decoded in a buffer of _maxTitleBytes. Code
+	//_numTitles stands for a null title
+	private final byte[] _titleBytes;
+	private final int[] _titleBlocks;
+	private final int _numTitles;
+	private final int _maxTitleBytes;
+	private final PackedInts _titleCodes;
+
+	private EncodedColumns(int size, double[] ratings, int numericRatings, PackedInts ratingCodes,
+			int votesMin, PackedInts votes, int awardsMin, PackedInts awards,
+			byte[] titleBytes, int[] titleBlocks, int numTitles, int maxTitleBytes,
+			PackedInts titleCodes) {
+		_size = size;
+		_ratings = ratings;
+		_numericRatings = numericRatings;
+		_ratingCodes = ratingCodes;
+		_votesMin = votesMin;
+		_votes = votes;
+		_awardsMin = awardsMin;
+		_awards = awards;
+		_titleBytes = titleBytes;
+		_titleBlocks = titleBlocks;
+		_numTitles = numTitles;
+		_maxTitleBytes = maxTitleBytes;
+		_titleCodes = titleCodes;
+	}
+
+	/**
+	 * Encodes all rows of a store.
+	 * @param store - the store
+	 * @return the encoded rows
+	 */
+	static EncodedColumns encode(MovieStore store) {
+		int n = store.size();
+
+		//ratings: sort a copy, drop duplicates, then look each row up
+		double[] sorted = new double[n];
+		for (int row = 0; row < n; row++) {
+			sorted[row] = store.rating(row);
+		}
+		Arrays.sort(sorted);
+		int numRatings = 0;
+		for (int i = 0; i < n; i++) {
+			if (numRatings == 0 || Double.compare(sorted[numRatings - 1], sorted[i]) != 0) {
+				sorted[numRatings++] = sorted[i];
+			}
+		}
+		double[] ratings = Arrays.copyOf(sorted, numRatings);
+		sorted = null;
+		int numericRatings = numRatings;
+		while (numericRatings > 0 && Double.isNaN(ratings[numericRatings - 1])) {
+			numericRatings--;
+		}
+		PackedInts ratingCodes = new PackedInts(n, PackedInts.bitsFor(Math.max(0, numRatings - 1)));
+		for (int row = 0; row < n; row++) {
+			ratingCodes.set(row, Arrays.binarySearch(ratings, store.rating(row)));
+		}
+
+		//votes and awards
+		int votesMin = Integer.MAX_VALUE;
+		int votesMax = Integer.MIN_VALUE;
+		int awardsMin = Integer.MAX_VALUE;
+		int awardsMax = Integer.MIN_VALUE;
+		for (int row = 0; row < n; row++) {
+			votesMin = Math.min(votesMin, store.votes(row));
+			votesMax = Math.max(votesMax, store.votes(row));
+			awardsMin = Math.min(awardsMin, store.awards(row));
+			awardsMax = Math.max(awardsMax, store.awards(row));
+		}
+		PackedInts votes = new PackedInts(n, PackedInts.bitsFor(Math.max(0L, (long) votesMax - votesMin)));
+		PackedInts awards = new PackedInts(n, PackedInts.bitsFor(Math.max(0L, (long) awardsMax - awardsMin)));
+		for (int row = 0; row < n; row++) {
+			votes.set(row, (long) store.votes(row) - votesMin);
+			awards.set(row, (long) store.awards(row) - awardsMin);
+		}
+
+		//titles: deduplicate, sort, number, front-code
+		Map<String, Integer> codes = new HashMap<String, Integer>();
+		for (int row = 0; row < n; row++) {
+			String title = store.title(row);
+			if (title != null) {
+				codes.put(title, null);
+			}
+		}
+		String[] titles = codes.keySet().toArray(new String[codes.size()]);
+		Arrays.sort(titles);
+		for (int i = 0; i < titles.length; i++) {
+			codes.put(titles[i], i);
+		}
+		PackedInts titleCodes = new PackedInts(n, PackedInts.bitsFor(titles.length));
+		for (int row = 0; row < n; row++) {
+			String title = store.title(row);
+			titleCodes.set(row, (title == null) ? titles.length : codes.get(title));
+		}
+		codes = null;
+		int[] titleBlocks = new int[(titles.length + TITLE_BLOCK - 1) / TITLE_BLOCK];
+		ByteArrayBuilder bytes = new ByteArrayBuilder();
+		byte[] previous = new byte[0];
+		int maxTitleBytes = 0;
+		for (int i = 0; i < titles.length; i++) {
+			byte[] utf8 = titles[i].getBytes(UTF8);
+			int shared = 0;
+			if (i % TITLE_BLOCK == 0) {
+				titleBlocks[i / TITLE_BLOCK] = bytes.size();
+			}
+			else {
+				int max = Math.min(previous.length, utf8.length);
+				while (shared < max && previous[shared] == utf8[shared]) {
+					shared++;
+				}
+				bytes.putVarint(shared);
+			}
+			bytes.putVarint(utf8.length - shared);
+			bytes.put(utf8, shared, utf8.length - shared);
+			maxTitleBytes = Math.max(maxTitleBytes, utf8.length);
+			previous = utf8;
+		}
+		return new EncodedColumns(n, ratings, numericRatings, ratingCodes, votesMin, votes,
+				awardsMin, awards, bytes.toArray(), titleBlocks, titles.length, maxTitleBytes,
+				titleCodes);
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of rows
+	 */
+	int size() {
+		return _size;
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return rating of the movie in row
+	 */
+	double rating(int row) {
+		return _ratings[(int) _ratingCodes.get(row)];
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return votes of the movie in row
+	 */
+	int votes(int row) {
+		return (int) (_votesMin + _votes.get(row));
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return awards of the movie in row
+	 */
+	int awards(int row) {
+		return (int) (_awardsMin + _awards.get(row));
+	}
+
+	/**
+	 * Decodes the title of a row.
+	 * @param row - row id
+	 * @return title of the movie in row
+	 */
+	String title(int row) {
+		int code = (int) _titleCodes.get(row);
+		return (code == _numTitles) ? null : titleOf(code);
+	}
+
+	/**
+	 * Decodes a title of the dictionary.
+	 * @param code - title code, below distinctTitles()
+	 * @return the title
+	 */
+	String titleOf(int code) {
+		byte[] buf = new byte[_maxTitleBytes];
+		int[] pos = {_titleBlocks[code / TITLE_BLOCK]};
+		int length = 0;
+		for (int i = 0; i <= code % TITLE_BLOCK; i++) {
+			length = decodeNext(buf, pos, i == 0);
+		}
+		return new String(buf, 0, length, UTF8);
+	}
+
+	/**
+	 * Decodes the whole title dictionary.
+	 * @return the distinct titles, indexed by code
+	 */
+	String[] titles() {
+		String[] titles = new String[_numTitles];
+		byte[] buf = new byte[_maxTitleBytes];
+		int[] pos = {0};
+		for (int code = 0; code < _numTitles; code++) {
+			int length = decodeNext(buf, pos, code % TITLE_BLOCK == 0);
+			titles[code] = new String(buf, 0, length, UTF8);
+		}
+		return titles;
+	}
+
+	/**
+	 * Evaluates a title predicate once per distinct title, so that it can
+	 * be applied to rows by their title code.
+	 * @param title - the predicate
+	 * @return whether each title code matches; the code of null titles
+	 * never does
+	 */
+	boolean[] matchTitles(TitlePredicate title) {
+		boolean[] matches = new boolean[_numTitles + 1];
+		byte[] buf = new byte[_maxTitleBytes];
+		int[] pos = {0};
+		for (int code = 0; code < _numTitles; code++) {
+			int length = decodeNext(buf, pos, code % TITLE_BLOCK == 0);
+			matches[code] = title.matches(new String(buf, 0, length, UTF8));
+		}
+		return matches;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of distinct titles, not counting null
+	 */
+	int distinctTitles() {
+		return _numTitles;
+	}
+
+	//packed codes, for scans
+
+	PackedInts ratingCodes() {
+		return _ratingCodes;
+	}
+
+	PackedInts votesCodes() {
+		return _votes;
+	}
+
+	PackedInts awardsCodes() {
+		return _awards;
+	}
+
+	PackedInts titleCodes() {
+		return _titleCodes;
+	}
+
+	/**
+	 * Translates a closed interval of values of a field into the interval of
+	 * codes of those values. The interval is empty (lo > hi) if no value of
+	 * the column is in it.
+	 * @param field - MovieSorter.RATING, VOTES or AWARDS
+	 * @param lo - smallest value, may be -Infinity
+	 * @param hi - largest value, may be Infinity
+	 * @return the smallest and largest code
+	 */
+	long[] codeRange(int field, double lo, double hi) {
+		if (field == MovieSorter.RATING) {
+			//first rating >= lo, last rating <= hi; NaN is never in range
+			int from = 0;
+			int to = _numericRatings;
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (_ratings[mid] < lo) {
+					from = mid + 1;
+				}
+				else {
+					to = mid;
+				}
+			}
+			int first = from;
+			from = 0;
+			to = _numericRatings;
+			while (from < to) {
+				int mid = (from + to) >>> 1;
+				if (_ratings[mid] <= hi) {
+					from = mid + 1;
+				}
+				else {
+					to = mid;
+				}
+			}
+			return new long[] {first, from - 1};
+		}
+		int min = (field == MovieSorter.VOTES) ? _votesMin : _awardsMin;
+		PackedInts codes = (field == MovieSorter.VOTES) ? _votes : _awards;
+		long max = min + ((1L << codes.bits()) - 1);
+		long first = (lo <= min) ? 0 : (lo > max) ? max - min + 1 : (long) Math.ceil(lo) - min;
+		long last = (hi >= max) ? max - min : (hi < min) ? -1 : (long) Math.floor(hi) - min;
+		return new long[] {first, last};
+	}
+
+	/**
+	 * Accessor.
+	 * @return approximate heap size of the encoded rows in bytes
+	 */
+	long memoryBytes() {
+		return 16 + 8L * _ratings.length + _ratingCodes.memoryBytes() + _votes.memoryBytes()
+				+ _awards.memoryBytes() + 16 + _titleBytes.length + 16 + 4L * _titleBlocks.length
+				+ _titleCodes.memoryBytes() + 64;
+	}
+
+	//decodes the next front-coded title into buf, which holds the previous
+	//one; pos[0] is the read position and is advanced
+	private int decodeNext(byte[] buf, int[] pos, boolean blockStart) {
+		int shared = blockStart ? 0 : readVarint(pos);
+		int suffix = readVarint(pos);
+		System.arraycopy(_titleBytes, pos[0], buf, shared, suffix);
+		pos[0] += suffix;
+		return shared + suffix;
+	}
+
+	private int readVarint(int[] pos) {
+		int value = 0;
+		int shift = 0;
+		while (true) {
+			byte b = _titleBytes[pos[0]++];
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+			shift += 7;
+		}
+	}
+
+	//growable byte array for the front-coded titles
+	private static final class ByteArrayBuilder {
+		private byte[] _bytes = new byte[1024];
+		private int _size;
+
+		int size() {
+			return _size;
+		}
+
+		void put(byte[] src, int offset, int length) {
+			ensure(length);
+			System.arraycopy(src, offset, _bytes, _size, length);
+			_size += length;
+		}
+
+		void putVarint(int value) {
+			ensure(5);
+			while ((value & ~0x7f) != 0) {
+				_bytes[_size++] = (byte) ((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			_bytes[_size++] = (byte) value;
+		}
+
+		byte[] toArray() {
+			return Arrays.copyOf(_bytes, _size);
+		}
+
+		private void ensure(int length) {
+			if (_size + length > _bytes.length) {
+				_bytes = Arrays.copyOf(_bytes, Math.max(_size + length, _bytes.length * 2));
+			}
+		}
+	}
+}
@@ -0,0 +1,39 @@
+package edu.upenn.cis.cis121.hw6;
+
+/**
+ * The kinds of symbols a HuffmanTable can be built over.
+ */
+public enum HuffmanAlphabet {
+
+	/**
+	 * Raw bytes (0 to 255). Lossless for arbitrary binary data and the fastest
+	 * mode, since every table is a 256 entry array.
+	 */
+	BYTES(256),
+
+	/**
+	 * Full Unicode code points, so supplementary characters are coded as a
+	 * single symbol instead of two surrogate chars. Case is preserved.
+	 */
+	CODE_POINTS(Character.MAX_CODE_POINT + 1),
+
+	/**
+	 * UTF-16 chars exactly as they appear in the input, without the
+	 * lowercasing done by HuffmanBuilder.blankCodeBook().
+	 */
+	CASE_PRESERVING(Character.MAX_VALUE + 1);
+
+	private final int _size;
+
+	private HuffmanAlphabet(int size) {
+		_size = size;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of possible symbols in this alphabet
+	 */
+	public int size() {
+		return _size;
+	}
+}
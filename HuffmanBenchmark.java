@@ -0,0 +1,310 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+/**
+ * Benchmark harness for the Huffman build, encode and decode paths. Every
+ * case is run on seeded corpora from HuffmanCorpus, warmed up, then timed
+ * over a number of iterations. For each case it prints throughput in MB/s of
+ * input, ns per input symbol, the allocation rate of the benchmark thread
+ * and, for encoders, the compression ratio (output bytes / input bytes).
+ * Text corpora are ASCII, so one char counts as one byte of input.
+ *
+ * Usage: java edu.upenn.cis.cis121.hw6.HuffmanBenchmark [size] [iterations]
+ */
+public class HuffmanBenchmark {
+
+	private static final long SEED = 121L;
+
+	//results are folded into this field so the JIT cannot drop the work
+	private static volatile long _sink;
+
+	/**
+	 * Runs every benchmark case and prints one line per case.
+	 * @param args - optional corpus size in symbols and number of timed
+	 * iterations
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 20;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 5;
+
+		System.out.printf("%-28s %-14s %10s %12s %12s %8s%n", "case", "corpus",
+				"MB/s", "ns/symbol", "alloc MB/s", "ratio");
+
+		textCases("english", HuffmanCorpus.englishLike(size, SEED), iterations);
+		textCases("skewed", HuffmanCorpus.skewed(size, 1.5, SEED), iterations);
+		byteCases("skewed-bytes", HuffmanCorpus.skewedBytes(size, 1.2, SEED), iterations);
+		byteCases("uniform-bytes", HuffmanCorpus.uniformBytes(size, SEED), iterations);
+		tinyCases("tiny", HuffmanCorpus.tinyMessages(Math.max(size / 64, 1), 64, SEED),
+				iterations);
+		heapCases("merge-" + (size / 16), size / 16, iterations);
+	}
+
+	//static and adaptive paths over a single large text
+	private static void textCases(String corpus, final String text, int iterations)
+			throws IOException {
+		final int n = text.length();
+		final CodeBookI blank = HuffmanBuilder.blankCodeBook(text);
+		final CodeBookI codebook = HuffmanBuilder.buildHuffmanCode(HuffmanBuilder.blankCodeBook(text));
+		final HuffmanTable table = HuffmanBuilder.buildTable(text, HuffmanAlphabet.CASE_PRESERVING);
+		final byte[] tableEncoded = encode(table, text);
+		final byte[] adaptiveEncoded = AdaptiveHuffmanCoder.compress(text);
+
+		measure(new Case("blankCodeBook", corpus, n, n) {
+			long run() {
+				return HuffmanBuilder.blankCodeBook(text).getAlphabet().size();
+			}
+		}, iterations);
+		measure(new Case("buildHuffmanCode", corpus, n, n) {
+			long run() {
+				return HuffmanBuilder.buildHuffmanCode(blank).getAlphabet().size();
+			}
+		}, iterations);
+		measure(new Case("codebook encode", corpus, n, n, true) {
+			long run() throws IOException {
+				return staticEncode(codebook, text);
+			}
+		}, iterations);
+		measure(new Case("table build (chars)", corpus, n, n) {
+			long run() {
+				return HuffmanBuilder.buildTable(text, HuffmanAlphabet.CASE_PRESERVING).size();
+			}
+		}, iterations);
+		measure(new Case("table encode (chars)", corpus, n, n, true) {
+			long run() throws IOException {
+				return encode(table, text).length;
+			}
+		}, iterations);
+		measure(new Case("table decode (chars)", corpus, n, n) {
+			long run() throws IOException {
+				BitReader in = new BitReader(new ByteArrayInputStream(tableEncoded));
+				long sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += table.decodeSymbol(in);
+				}
+				return sum;
+			}
+		}, iterations);
+		measure(new Case("adaptive compress", corpus, n, n, true) {
+			long run() {
+				return AdaptiveHuffmanCoder.compress(text).length;
+			}
+		}, iterations);
+		measure(new Case("adaptive decompress", corpus, n, n) {
+			long run() throws IOException {
+				return AdaptiveHuffmanCoder.decompress(adaptiveEncoded).length();
+			}
+		}, iterations);
+	}
+
+	//byte table paths over binary data
+	private static void byteCases(String corpus, final byte[] data, int iterations)
+			throws IOException {
+		final int n = data.length;
+		final byte[] compressed = HuffmanBuilder.compress(data);
+
+		measure(new Case("table build (bytes)", corpus, n, n) {
+			long run() {
+				return HuffmanBuilder.buildTable(data).size();
+			}
+		}, iterations);
+		measure(new Case("compress (bytes)", corpus, n, n, true) {
+			long run() {
+				return HuffmanBuilder.compress(data).length;
+			}
+		}, iterations);
+		measure(new Case("decompress (bytes)", corpus, n, n) {
+			long run() throws IOException {
+				return HuffmanBuilder.decompress(compressed).length;
+			}
+		}, iterations);
+	}
+
+	//per-message build and encode cost for many short messages
+	private static void tinyCases(String corpus, final String[] messages, int iterations)
+			throws IOException {
+		int total = 0;
+		for (int i = 0; i < messages.length; i++) {
+			total += messages[i].length();
+		}
+
+		measure(new Case("codebook build+encode", corpus, total, total, true) {
+			long run() throws IOException {
+				long bytes = 0;
+				for (int i = 0; i < messages.length; i++) {
+					CodeBookI codebook = HuffmanBuilder.buildHuffmanCode(
+							HuffmanBuilder.blankCodeBook(messages[i]));
+					bytes += staticEncode(codebook, messages[i]);
+				}
+				return bytes;
+			}
+		}, iterations);
+		measure(new Case("cached codebook+encode", corpus, total, total, true) {
+			long run() throws IOException {
+				CodeBookCache cache = new CodeBookCache(256, 0.1);
+				long bytes = 0;
+				for (int i = 0; i < messages.length; i++) {
+					bytes += staticEncode(cache.codeBookFor(messages[i]), messages[i]);
+				}
+				return bytes;
+			}
+		}, iterations);
+		measure(new Case("table build+encode (bytes)", corpus, total, total, true) {
+			long run() throws IOException {
+				long bytes = 0;
+				for (int i = 0; i < messages.length; i++) {
+					bytes += HuffmanBuilder.compress(messages[i].getBytes("UTF-8")).length;
+				}
+				return bytes;
+			}
+		}, iterations);
+		measure(new Case("adaptive compress", corpus, total, total, true) {
+			long run() {
+				long bytes = 0;
+				for (int i = 0; i < messages.length; i++) {
+					bytes += AdaptiveHuffmanCoder.compress(messages[i]).length;
+				}
+				return bytes;
+			}
+		}, iterations);
+	}
+
+	//the Huffman merge loop (remove two, insert their sum) on both heaps
+	private static void heapCases(String corpus, final int n, int iterations)
+			throws IOException {
+		final double[] keys = new double[n];
+		final int[] ids = new int[n];
+		Random random = new Random(SEED);
+		for (int i = 0; i < n; i++) {
+			keys[i] = 1 + random.nextInt(1 << 20);
+			ids[i] = i;
+		}
+
+		measure(new Case("BinaryMinHeap<Double>", corpus, n, n * 8L) {
+			long run() {
+				BinaryMinHeap<Double> heap = new BinaryMinHeap<Double>();
+				for (int i = 0; i < n; i++) {
+					heap.insert(keys[i]);
+				}
+				while (heap.size() > 1) {
+					heap.insert(heap.removeMin() + heap.removeMin());
+				}
+				return heap.removeMin().longValue();
+			}
+		}, iterations);
+		measure(new Case("DoubleIntMinHeap", corpus, n, n * 8L) {
+			long run() {
+				DoubleIntMinHeap heap = DoubleIntMinHeap.heapify(keys, ids, n);
+				int next = n;
+				while (heap.size() > 1) {
+					double sum = heap.minKey();
+					heap.removeMin();
+					sum += heap.minKey();
+					heap.removeMin();
+					heap.insert(sum, next++);
+				}
+				return (long) heap.minKey();
+			}
+		}, iterations);
+	}
+
+	//encodes text with the string encodings of a code book, returns bytes
+	private static long staticEncode(CodeBookI codebook, String text) throws IOException {
+		BitWriter out = new BitWriter(new ByteArrayOutputStream(text.length() / 2 + 16));
+		String lower = text.toLowerCase();
+		for (int i = 0; i < lower.length(); i++) {
+			String code = codebook.getEncoding(lower.charAt(i));
+			for (int j = 0; j < code.length(); j++) {
+				out.writeBit(code.charAt(j) - '0');
+			}
+		}
+		out.finish();
+		return (out.bitsWritten() + 7) / 8;
+	}
+
+	private static byte[] encode(HuffmanTable table, String text) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(text.length() / 2 + 16);
+		BitWriter out = new BitWriter(bytes);
+		table.encode(text, out);
+		out.finish();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Warms up and times a case, then prints its line of results.
+	 * @param benchmark - case to run
+	 * @param iterations - number of timed runs
+	 * @throws IOException
+	 */
+	static void measure(Case benchmark, int iterations) throws IOException {
+		long result = 0;
+		for (int i = 0; i < Math.max(iterations, 3); i++) {
+			result += benchmark.run();
+		}
+
+		long allocStart = allocatedBytes();
+		long start = System.nanoTime();
+		long output = 0;
+		for (int i = 0; i < iterations; i++) {
+			output = benchmark.run();
+			result += output;
+		}
+		long nanos = Math.max(System.nanoTime() - start, 1);
+		long allocEnd = allocatedBytes();
+		_sink += result;
+
+		double seconds = nanos / 1e9;
+		double mbPerSec = (benchmark._inputBytes * (double) iterations) / (1 << 20) / seconds;
+		double nsPerSymbol = nanos / (benchmark._symbols * (double) iterations);
+		String alloc = (allocStart < 0) ? "n/a"
+				: String.format("%.1f", (allocEnd - allocStart) / (double) (1 << 20) / seconds);
+		String ratio = benchmark._reportsRatio
+				? String.format("%.3f", output / (double) benchmark._inputBytes) : "-";
+		System.out.printf("%-28s %-14s %10.2f %12.2f %12s %8s%n", benchmark._name,
+				benchmark._corpus, mbPerSec, nsPerSymbol, alloc, ratio);
+	}
+
+	//bytes allocated so far by this thread, or -1 if the JVM cannot tell
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * A single benchmark case. run() performs one full pass over the corpus
+	 * and returns the output size in bytes for encoders, or any value derived
+	 * from the work for other cases.
+	 */
+	abstract static class Case {
+		private String _name;
+		private String _corpus;
+		private long _symbols;
+		private long _inputBytes;
+		private boolean _reportsRatio;
+
+		Case(String name, String corpus, long symbols, long inputBytes) {
+			this(name, corpus, symbols, inputBytes, false);
+		}
+
+		Case(String name, String corpus, long symbols, long inputBytes,
+				boolean reportsRatio) {
+			_name = name;
+			_corpus = corpus;
+			_symbols = Math.max(symbols, 1);
+			_inputBytes = Math.max(inputBytes, 1);
+			_reportsRatio = reportsRatio;
+		}
+
+		abstract long run() throws IOException;
+	}
+}
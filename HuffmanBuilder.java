@@ -1,5 +1,12 @@
 package edu.upenn.cis.cis121.hw6;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.Set;
 
@@ -12,6 +19,8 @@ import java.util.Set;
 
 public class HuffmanBuilder {
 
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
 	/**
 	 * Default constructor
 	 */
@@ -61,6 +70,23 @@ public class HuffmanBuilder {
 		}
 		return temp;
 	}	
+
+	/**
+	 * Same as blankCodeBook(String), additionally recording the time spent
+	 * counting the symbols as the histogram phase of metrics.
+	 * @param text - given input to make a code book
+	 * @param metrics - receives the histogram timing, may be null
+	 * @return the code book which contains all symbols and their respective
+	 * probabilities
+	 */
+	public static CodeBookI blankCodeBook(String text, HuffmanMetrics metrics) {
+		long start = System.nanoTime();
+		CodeBookI codebook = blankCodeBook(text);
+		if (metrics != null) {
+			metrics.addHistogramNanos(System.nanoTime() - start);
+		}
+		return codebook;
+	}
 	
 	/** 
 	 * This method receives as input a CodeBookI containing an alphabet and the
@@ -71,9 +97,21 @@ public class HuffmanBuilder {
 	 * @return
 	 */
 	public static CodeBookI buildHuffmanCode(CodeBookI codebook) {
+		return buildHuffmanCode(codebook, null);
+	}
+
+	/**
+	 * Same as buildHuffmanCode(CodeBookI), additionally recording the tree
+	 * build and code assignment timings and the statistics of the resulting
+	 * code (entropy, expected length, maximum depth) in metrics.
+	 * @param codebook - code book with the alphabet and probabilities
+	 * @param metrics - receives timings and code statistics, may be null
+	 * @return the code book with Huffman encodings
+	 */
+	public static CodeBookI buildHuffmanCode(CodeBookI codebook, HuffmanMetrics metrics) {
 		
 		//inner class to store the symbols, frequency and children of a node
-		class probNode implements Comparable<probNode>{
+		class probNode {
 			private String _symbol;
 			private double _frequency;
 			private probNode leftChild;
@@ -99,19 +137,6 @@ public class HuffmanBuilder {
 				return _symbol;
 			}
 			
-			//override compareTo function to ensure nodes are compared properly
-			public int compareTo(probNode other) {
-				if (_frequency < other._frequency) {
-					return -1;
-				}
-				else if (_frequency > other._frequency){
-					return 1;
-				}
-				else {
-					return 0;
-				}
-			}
-			
 			//helper method to generate the code of the leaves
 			private void generateCode(String encoding, CodeBookI codebook, probNode node) {
 				if (node.getSymb().length() > 1) {
@@ -131,35 +156,391 @@ public class HuffmanBuilder {
 			}
 		}
 		
+		long treeStart = System.nanoTime();
 		Set<Character> alphaSet = codebook.getAlphabet();
 		Iterator<Character> iterator = alphaSet.iterator();
-		BinaryMinHeap<probNode> heap = new BinaryMinHeap<probNode>();
-		
-		//create BinaryMinHeap
+		int size = alphaSet.size();
+		probNode[] nodes = new probNode[Math.max(2 * size - 1, 0)];
+		double[] keys = new double[size];
+		int[] ids = new int[size];
+
+		//create the leaves and heapify them in one pass
+		int count = 0;
 		while (iterator.hasNext()) {
 			char curr = iterator.next();
 			double prob = codebook.getProbability(curr);
-			probNode temp = new probNode(Character.toString(curr), prob);
-			heap.insert(temp);
+			nodes[count] = new probNode(Character.toString(curr), prob);
+			keys[count] = prob;
+			ids[count] = count;
+			count++;
 		}
+		DoubleIntMinHeap heap = DoubleIntMinHeap.heapify(keys, ids, count);
 
 		//generate huffman tree
 		while (heap.size() > 1) {
-			probNode min1 = heap.removeMin();
-			probNode min2 = heap.removeMin();
-			probNode combinedProbNode = new probNode(min1, min2);
-			heap.insert(combinedProbNode);
+			probNode min1 = nodes[heap.removeMin()];
+			probNode min2 = nodes[heap.removeMin()];
+			nodes[count] = new probNode(min1, min2);
+			heap.insert(nodes[count].getFreq(), count);
+			count++;
 		}
 		
 		//populate codebook
+		long codeStart = System.nanoTime();
 		if (heap.size() > 0) {
-			probNode huffmanTree = heap.removeMin();
+			probNode huffmanTree = nodes[heap.removeMin()];
 			huffmanTree.generateCode("", codebook, huffmanTree);
 		}
 
+		if (metrics != null) {
+			metrics.addTreeBuildNanos(codeStart - treeStart);
+			metrics.addCodeAssignmentNanos(System.nanoTime() - codeStart);
+			double[] weights = new double[size];
+			int[] lengths = new int[size];
+			iterator = codebook.getAlphabet().iterator();
+			for (int i = 0; i < size && iterator.hasNext(); i++) {
+				char curr = iterator.next();
+				weights[i] = codebook.getProbability(curr);
+				lengths[i] = codebook.getEncoding(curr).length();
+			}
+			metrics.recordCode(weights, lengths);
+		}
+
 		return codebook;
-		
+
+	}
+
+	/**
+	 * Given a CodeBookI that already holds Huffman encodings, this method
+	 * returns a new CodeBookI with the canonical Huffman code of the same code
+	 * lengths. Symbols are ordered by code length and then by symbol, and each
+	 * one gets the next binary number of its length, so the whole code can be
+	 * rebuilt from the lengths alone.
+	 * @param codebook - code book with Huffman encodings
+	 * @return canonical code book with the same probabilities and code lengths
+	 */
+	public static CodeBookI canonicalCode(CodeBookI codebook) {
+
+		Set<Character> alphaSet = codebook.getAlphabet();
+		char[] symbols = new char[alphaSet.size()];
+		int[] lengths = new int[symbols.length];
+		Iterator<Character> iterator = alphaSet.iterator();
+		int count = 0;
+		while (iterator.hasNext()) {
+			symbols[count] = iterator.next();
+			lengths[count] = codebook.getEncoding(symbols[count]).length();
+			count++;
+		}
+
+		//sort by (length, symbol) using insertion sort, alphabets are small
+		for (int i = 1; i < count; i++) {
+			char symbol = symbols[i];
+			int length = lengths[i];
+			int x = i;
+			while (x > 0 && (lengths[x - 1] > length
+					|| (lengths[x - 1] == length && symbols[x - 1] > symbol))) {
+				symbols[x] = symbols[x - 1];
+				lengths[x] = lengths[x - 1];
+				x--;
+			}
+			symbols[x] = symbol;
+			lengths[x] = length;
+		}
+
+		//assign consecutive codes, shifting left whenever the length grows
+		CodeBook canonical = new CodeBook();
+		long code = 0;
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				code = (code + 1) << (lengths[i] - lengths[i - 1]);
+			}
+			StringBuilder encoding = new StringBuilder(lengths[i]);
+			for (int bit = lengths[i] - 1; bit >= 0; bit--) {
+				encoding.append((code >>> bit & 1) == 0 ? '0' : '1');
+			}
+			canonical.putSymbol(symbols[i], codebook.getProbability(symbols[i]),
+					encoding.toString());
+		}
+		return canonical;
+	}
+
+	/**
+	 * Builds a HuffmanTable over the raw bytes of data. This is lossless for
+	 * any binary input and is the fastest path, since the histogram and all
+	 * lookups are 256 entry arrays.
+	 * @param data - input bytes
+	 * @return table with a code for every byte value present in data
+	 */
+	public static HuffmanTable buildTable(byte[] data) {
+		return buildTable(data, null);
+	}
+
+	/**
+	 * Builds a HuffmanTable over the raw bytes of data and records the build
+	 * statistics in metrics.
+	 * @param data - input bytes
+	 * @param metrics - receives timings and code statistics, may be null
+	 * @return table with a code for every byte value present in data
+	 */
+	public static HuffmanTable buildTable(byte[] data, HuffmanMetrics metrics) {
+		long start = System.nanoTime();
+		long[] counts = new long[256];
+		for (int i = 0; i < data.length; i++) {
+			counts[data[i] & 0xFF]++;
+		}
+		return buildTable(HuffmanAlphabet.BYTES, counts, metrics, start);
+	}
+
+	/**
+	 * Builds a HuffmanTable over text using the given alphabet. Unlike
+	 * blankCodeBook(), the text is not lowercased. For BYTES the UTF-8
+	 * encoding of text is used.
+	 * @param text - input text
+	 * @param alphabet - kind of symbols to code
+	 * @return table with a code for every symbol present in text
+	 */
+	public static HuffmanTable buildTable(String text, HuffmanAlphabet alphabet) {
+		return buildTable(text, alphabet, null);
+	}
+
+	/**
+	 * Builds a HuffmanTable over text using the given alphabet and records
+	 * the build statistics in metrics.
+	 * @param text - input text
+	 * @param alphabet - kind of symbols to code
+	 * @param metrics - receives timings and code statistics, may be null
+	 * @return table with a code for every symbol present in text
+	 */
+	public static HuffmanTable buildTable(String text, HuffmanAlphabet alphabet,
+			HuffmanMetrics metrics) {
+		if (alphabet == HuffmanAlphabet.BYTES) {
+			return buildTable(text.getBytes(UTF8), metrics);
+		}
+		long start = System.nanoTime();
+
+		//chars, and the BMP part of code points, are counted in a direct table
+		long[] counts = new long[Character.MAX_VALUE + 1];
+		if (alphabet == HuffmanAlphabet.CASE_PRESERVING) {
+			for (int i = 0; i < text.length(); i++) {
+				counts[text.charAt(i)]++;
+			}
+			return buildTable(alphabet, counts, metrics, start);
+		}
+
+		//supplementary code points are collected and counted after sorting
+		int[] supplementary = new int[16];
+		int numSupplementary = 0;
+		int i = 0;
+		while (i < text.length()) {
+			int codePoint = text.codePointAt(i);
+			i += Character.charCount(codePoint);
+			if (codePoint <= Character.MAX_VALUE) {
+				counts[codePoint]++;
+			}
+			else {
+				if (numSupplementary == supplementary.length) {
+					supplementary = Arrays.copyOf(supplementary, numSupplementary * 2);
+				}
+				supplementary[numSupplementary++] = codePoint;
+			}
+		}
+		Arrays.sort(supplementary, 0, numSupplementary);
+
+		int distinct = 0;
+		for (int c = 0; c < counts.length; c++) {
+			if (counts[c] > 0) {
+				distinct++;
+			}
+		}
+		for (int j = 0; j < numSupplementary; j++) {
+			if (j == 0 || supplementary[j] != supplementary[j - 1]) {
+				distinct++;
+			}
+		}
+		int[] symbols = new int[distinct];
+		long[] symbolCounts = new long[distinct];
+		int pos = 0;
+		for (int c = 0; c < counts.length; c++) {
+			if (counts[c] > 0) {
+				symbols[pos] = c;
+				symbolCounts[pos++] = counts[c];
+			}
+		}
+		for (int j = 0; j < numSupplementary; j++) {
+			if (j == 0 || supplementary[j] != supplementary[j - 1]) {
+				symbols[pos++] = supplementary[j];
+			}
+			symbolCounts[pos - 1]++;
+		}
+		return buildTable(alphabet, symbols, symbolCounts, metrics, start);
+	}
+
+	/**
+	 * Builds a HuffmanTable from a histogram that is indexed by symbol.
+	 * @param alphabet - kind of symbols to code
+	 * @param counts - frequency of every symbol, indexed by symbol
+	 * @return table with a code for every symbol with a positive count
+	 */
+	public static HuffmanTable buildTable(HuffmanAlphabet alphabet, long[] counts) {
+		return buildTable(alphabet, counts, null, System.nanoTime());
+	}
+
+	//compacts a symbol-indexed histogram; the histogram phase runs until the
+	//symbols are handed to the tree build
+	private static HuffmanTable buildTable(HuffmanAlphabet alphabet, long[] counts,
+			HuffmanMetrics metrics, long histogramStart) {
+		int distinct = 0;
+		for (int c = 0; c < counts.length; c++) {
+			if (counts[c] > 0) {
+				distinct++;
+			}
+		}
+		int[] symbols = new int[distinct];
+		long[] symbolCounts = new long[distinct];
+		int pos = 0;
+		for (int c = 0; c < counts.length; c++) {
+			if (counts[c] > 0) {
+				symbols[pos] = c;
+				symbolCounts[pos++] = counts[c];
+			}
+		}
+		return buildTable(alphabet, symbols, symbolCounts, metrics, histogramStart);
+	}
+
+	/**
+	 * Builds a HuffmanTable from a list of distinct symbols and their counts.
+	 * @param alphabet - kind of symbols to code
+	 * @param symbols - distinct symbols
+	 * @param counts - positive frequency of each symbol
+	 * @return table with a code for every symbol
+	 */
+	public static HuffmanTable buildTable(HuffmanAlphabet alphabet, int[] symbols,
+			long[] counts) {
+		return buildTable(alphabet, symbols, counts, null, System.nanoTime());
+	}
+
+	//builds the tree and assigns the codes, timing each phase
+	private static HuffmanTable buildTable(HuffmanAlphabet alphabet, int[] symbols,
+			long[] counts, HuffmanMetrics metrics, long histogramStart) {
+		if (symbols.length != counts.length) {
+			throw new IllegalArgumentException("Symbols and counts do not match.");
+		}
+		long treeStart = System.nanoTime();
+		int[] lengths = codeLengths(counts);
+		long codeStart = System.nanoTime();
+		HuffmanTable table = new HuffmanTable(alphabet, symbols, counts, lengths);
+		if (metrics != null) {
+			long end = System.nanoTime();
+			metrics.addHistogramNanos(treeStart - histogramStart);
+			metrics.addTreeBuildNanos(codeStart - treeStart);
+			metrics.addCodeAssignmentNanos(end - codeStart);
+			double[] weights = new double[counts.length];
+			for (int i = 0; i < counts.length; i++) {
+				weights[i] = counts[i];
+			}
+			metrics.recordCode(weights, lengths);
+		}
+		return table;
+	}
+
+	/**
+	 * Computes Huffman code lengths for the given frequencies. A single
+	 * symbol gets a code of length 1, like in buildHuffmanCode().
+	 * @param counts - frequency of each symbol
+	 * @return code length of each symbol
+	 */
+	static int[] codeLengths(long[] counts) {
+
+		int n = counts.length;
+		int[] lengths = new int[n];
+		if (n == 1) {
+			lengths[0] = 1;
+		}
+		if (n <= 1) {
+			return lengths;
+		}
+
+		//leaves are nodes 0..n-1, internal nodes n..2n-2 in creation order
+		int[] parent = new int[2 * n - 1];
+		double[] keys = new double[n];
+		int[] ids = new int[n];
+		for (int i = 0; i < n; i++) {
+			keys[i] = counts[i];
+			ids[i] = i;
+		}
+		DoubleIntMinHeap heap = DoubleIntMinHeap.heapify(keys, ids, n);
+		int next = n;
+		while (heap.size() > 1) {
+			double weight1 = heap.minKey();
+			int min1 = heap.removeMin();
+			double weight2 = heap.minKey();
+			int min2 = heap.removeMin();
+			parent[min1] = next;
+			parent[min2] = next;
+			heap.insert(weight1 + weight2, next);
+			next++;
+		}
+
+		//parents are created after their children, so walk down from the root
+		int[] depth = new int[2 * n - 1];
+		for (int node = 2 * n - 3; node >= 0; node--) {
+			depth[node] = depth[parent[node]] + 1;
+		}
+		System.arraycopy(depth, 0, lengths, 0, n);
+		return lengths;
+	}
+
+	/**
+	 * Compresses arbitrary bytes losslessly. The output holds the table
+	 * header, the number of input bytes and the code bits.
+	 * @param data - input bytes
+	 * @return compressed bytes
+	 */
+	public static byte[] compress(byte[] data) {
+		HuffmanTable table = buildTable(data);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 2 + 64);
+		try {
+			DataOutputStream header = new DataOutputStream(bytes);
+			table.write(header);
+			header.writeInt(data.length);
+			header.flush();
+			BitWriter out = new BitWriter(bytes);
+			table.encode(data, 0, data.length, out);
+			out.finish();
+		} catch (IOException e) {
+			//cannot happen when writing to memory
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decompresses the output of compress(byte[]).
+	 * @param data - compressed bytes
+	 * @return the original bytes
+	 * @throws IOException if the data is truncated or corrupt
+	 */
+	public static byte[] decompress(byte[] data) throws IOException {
+		ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+		DataInputStream header = new DataInputStream(bytes);
+		HuffmanTable table = HuffmanTable.read(header);
+		if (table.alphabet() != HuffmanAlphabet.BYTES) {
+			throw new IOException("Data was not compressed as bytes.");
+		}
+		int length = header.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid length header.");
+		}
+		byte[] output = new byte[length];
+		BitReader in = new BitReader(bytes);
+		for (int i = 0; i < length; i++) {
+			int symbol = table.decodeSymbol(in);
+			if (symbol < 0) {
+				throw new IOException("Unexpected end of bit stream.");
+			}
+			output[i] = (byte) symbol;
+		}
+		return output;
 	}
-	
 
 }
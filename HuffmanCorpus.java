@@ -0,0 +1,125 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Seeded generators of benchmark inputs for the Huffman coders. The same
+ * seed always produces the same corpus, so runs can be compared against
+ * each other.
+ */
+public class HuffmanCorpus {
+
+	private static final String LETTERS = "etaoinshrdlcumwfgypbvkjxqz";
+	private static final String SKEWED_SYMBOLS = "abcdefghijklmnopqrstuvwxyz0123456789";
+
+	/**
+	 * Generates lowercase text whose letter frequencies roughly follow
+	 * English, separated into words by spaces.
+	 * @param size - number of chars to generate
+	 * @param seed - seed of the random generator
+	 * @return generated text
+	 */
+	public static String englishLike(int size, long seed) {
+		Random random = new Random(seed);
+		StringBuilder text = new StringBuilder(size);
+		while (text.length() < size) {
+			int wordLength = 1 + random.nextInt(8);
+			for (int i = 0; i < wordLength && text.length() < size; i++) {
+				//squaring skews the draw towards the frequent letters
+				double r = random.nextDouble();
+				text.append(LETTERS.charAt((int) (r * r * LETTERS.length())));
+			}
+			if (text.length() < size) {
+				text.append(' ');
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Generates text over 36 lowercase letters and digits where the symbol
+	 * of rank k is drawn with probability proportional to 1 / k^exponent.
+	 * @param size - number of chars to generate
+	 * @param exponent - Zipf exponent, larger values are more skewed
+	 * @param seed - seed of the random generator
+	 * @return generated text
+	 */
+	public static String skewed(int size, double exponent, long seed) {
+		double[] cumulative = zipf(SKEWED_SYMBOLS.length(), exponent);
+		Random random = new Random(seed);
+		char[] text = new char[size];
+		for (int i = 0; i < size; i++) {
+			text[i] = SKEWED_SYMBOLS.charAt(sample(cumulative, random));
+		}
+		return new String(text);
+	}
+
+	/**
+	 * Generates bytes where byte value k is drawn with probability
+	 * proportional to 1 / (k + 1)^exponent.
+	 * @param size - number of bytes to generate
+	 * @param exponent - Zipf exponent, larger values are more skewed
+	 * @param seed - seed of the random generator
+	 * @return generated bytes
+	 */
+	public static byte[] skewedBytes(int size, double exponent, long seed) {
+		double[] cumulative = zipf(256, exponent);
+		Random random = new Random(seed);
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) sample(cumulative, random);
+		}
+		return data;
+	}
+
+	/**
+	 * Generates uniformly random bytes, which Huffman coding cannot compress.
+	 * @param size - number of bytes to generate
+	 * @param seed - seed of the random generator
+	 * @return generated bytes
+	 */
+	public static byte[] uniformBytes(int size, long seed) {
+		byte[] data = new byte[size];
+		new Random(seed).nextBytes(data);
+		return data;
+	}
+
+	/**
+	 * Generates many short English-like messages.
+	 * @param count - number of messages
+	 * @param maxLength - maximum length of a message in chars
+	 * @param seed - seed of the random generator
+	 * @return generated messages
+	 */
+	public static String[] tinyMessages(int count, int maxLength, long seed) {
+		Random random = new Random(seed);
+		String[] messages = new String[count];
+		for (int i = 0; i < count; i++) {
+			messages[i] = englishLike(1 + random.nextInt(maxLength), random.nextLong());
+		}
+		return messages;
+	}
+
+	//cumulative distribution of a Zipf law over n ranks
+	private static double[] zipf(int n, double exponent) {
+		double[] cumulative = new double[n];
+		double total = 0.0;
+		for (int k = 0; k < n; k++) {
+			total += 1.0 / Math.pow(k + 1, exponent);
+			cumulative[k] = total;
+		}
+		for (int k = 0; k < n; k++) {
+			cumulative[k] /= total;
+		}
+		return cumulative;
+	}
+
+	private static int sample(double[] cumulative, Random random) {
+		int pos = Arrays.binarySearch(cumulative, random.nextDouble());
+		if (pos < 0) {
+			pos = -pos - 1;
+		}
+		return Math.min(pos, cumulative.length - 1);
+	}
+}
@@ -0,0 +1,92 @@
+package edu.upenn.cis.cis121.hw6;
+
+/**
+ * Collects build-time instrumentation from HuffmanBuilder. Pass an instance
+ * to the builder methods that accept one; phase timings accumulate across
+ * calls, and the code statistics describe the most recently built code.
+ * A HuffmanMetrics is not thread safe, so use one per thread.
+ */
+public class HuffmanMetrics {
+
+	private long _histogramNanos;
+	private long _treeBuildNanos;
+	private long _codeAssignmentNanos;
+
+	private long _symbols;
+	private int _distinct;
+	private double _entropy;
+	private double _expectedLength;
+	private int _maxDepth;
+
+	/**
+	 * Default constructor
+	 */
+	public HuffmanMetrics() {
+	}
+
+	/**
+	 * Returns an immutable snapshot of what has been recorded so far.
+	 * @return the statistics
+	 */
+	public HuffmanStats snapshot() {
+		return new HuffmanStats(_symbols, _distinct, _entropy, _expectedLength,
+				_maxDepth, _histogramNanos, _treeBuildNanos, _codeAssignmentNanos);
+	}
+
+	/**
+	 * Clears all timings and statistics.
+	 */
+	public void reset() {
+		_histogramNanos = 0;
+		_treeBuildNanos = 0;
+		_codeAssignmentNanos = 0;
+		_symbols = 0;
+		_distinct = 0;
+		_entropy = 0.0;
+		_expectedLength = 0.0;
+		_maxDepth = 0;
+	}
+
+	void addHistogramNanos(long nanos) {
+		_histogramNanos += nanos;
+	}
+
+	void addTreeBuildNanos(long nanos) {
+		_treeBuildNanos += nanos;
+	}
+
+	void addCodeAssignmentNanos(long nanos) {
+		_codeAssignmentNanos += nanos;
+	}
+
+	/**
+	 * Records the statistics of a code given the weight and code length of
+	 * each symbol. Weights need not be normalized.
+	 * @param weights - frequency or probability of each symbol
+	 * @param lengths - code length of each symbol
+	 */
+	void recordCode(double[] weights, int[] lengths) {
+		double total = 0.0;
+		int maxDepth = 0;
+		for (int i = 0; i < weights.length; i++) {
+			total += weights[i];
+			maxDepth = Math.max(maxDepth, lengths[i]);
+		}
+		double entropy = 0.0;
+		double expectedLength = 0.0;
+		if (total > 0) {
+			for (int i = 0; i < weights.length; i++) {
+				if (weights[i] > 0) {
+					double p = weights[i] / total;
+					entropy -= p * Math.log(p) / Math.log(2);
+					expectedLength += p * lengths[i];
+				}
+			}
+		}
+		_symbols = Math.round(total);
+		_distinct = weights.length;
+		_entropy = entropy;
+		_expectedLength = expectedLength;
+		_maxDepth = maxDepth;
+	}
+}
@@ -0,0 +1,153 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Self-checking round trip harness for the Huffman coders. It compresses and
+ * decompresses edge cases and seeded corpora from HuffmanCorpus with
+ * HuffmanBuilder.compress(byte[]) and AdaptiveHuffmanCoder.compress(String),
+ * and streams symbols through AdaptiveHuffmanCoder instances with small
+ * alphabets and rescale limits, so that the model is reset many times in the
+ * middle of a stream.
+ *
+ * It prints one line per group of cases and throws an IllegalStateException
+ * at the first input that doesn't come back unchanged.
+ *
+ * Usage: java edu.upenn.cis.cis121.hw6.HuffmanRoundTripCheck [size] [rounds]
+ */
+public class HuffmanRoundTripCheck {
+
+	private static final long SEED = 121L;
+
+	/**
+	 * Runs the checks.
+	 * @param args - optional corpus size and number of random inputs per group
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : 1 << 18;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 200;
+		Random random = new Random(SEED);
+
+		//static byte coder
+		byte[] all = new byte[256];
+		for (int i = 0; i < all.length; i++) {
+			all[i] = (byte) i;
+		}
+		byte[] same = new byte[1000];
+		Arrays.fill(same, (byte) 0xff);
+		checkBytes("empty", new byte[0]);
+		checkBytes("one byte", new byte[] {42});
+		checkBytes("one symbol", same);
+		checkBytes("two symbols", new byte[] {0, -1, 0, 0});
+		checkBytes("all bytes", all);
+		checkBytes("uniform", HuffmanCorpus.uniformBytes(size, SEED));
+		double[] exponents = {0.5, 1.0, 2.0, 4.0};
+		for (int i = 0; i < exponents.length; i++) {
+			checkBytes("skewed " + exponents[i],
+					HuffmanCorpus.skewedBytes(size, exponents[i], SEED));
+		}
+		for (int i = 0; i < rounds; i++) {
+			byte[] data = new byte[random.nextInt(2000)];
+			int symbols = 1 + random.nextInt(256);
+			for (int j = 0; j < data.length; j++) {
+				//a few symbols much more often than the rest, so codes run long
+				int symbol = random.nextInt(symbols);
+				data[j] = (byte) ((random.nextInt(3) == 0) ? symbol : symbol % 3);
+			}
+			checkBytes("random " + i, data);
+		}
+		System.out.println("HuffmanBuilder.compress(byte[]) ok");
+
+		//adaptive coder on strings
+		checkText("empty", "");
+		checkText("one char", "a");
+		checkText("repeated", "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa");
+		checkText("high chars", "\u0000\uffff\ud800\udc00\udc00\u00e9\u4e2d\uffff\u0000");
+		checkText("english", HuffmanCorpus.englishLike(size, SEED));
+		for (int i = 0; i < exponents.length; i++) {
+			checkText("skewed " + exponents[i], HuffmanCorpus.skewed(size, exponents[i], SEED));
+		}
+		String[] messages = HuffmanCorpus.tinyMessages(rounds, 64, SEED);
+		for (int i = 0; i < messages.length; i++) {
+			checkText("tiny " + i, messages[i]);
+		}
+		for (int i = 0; i < rounds; i++) {
+			char[] text = new char[random.nextInt(500)];
+			int range = (random.nextBoolean()) ? 128 : Character.MAX_VALUE + 1;
+			for (int j = 0; j < text.length; j++) {
+				text[j] = (char) random.nextInt(range);
+			}
+			checkText("random " + i, new String(text));
+		}
+		System.out.println("AdaptiveHuffmanCoder.compress(String) ok");
+
+		//adaptive coder instances with small alphabets and rescale limits
+		int[] alphabets = {1, 2, 3, 300};
+		int[] limits = {2, 7, 50, AdaptiveHuffmanCoder.DEFAULT_RESCALE_LIMIT};
+		for (int a = 0; a < alphabets.length; a++) {
+			for (int l = 0; l < limits.length; l++) {
+				for (int i = 0; i < rounds / 10 + 1; i++) {
+					int[] symbols = new int[random.nextInt(5000)];
+					for (int j = 0; j < symbols.length; j++) {
+						int symbol = random.nextInt(alphabets[a]);
+						symbols[j] = (random.nextInt(4) == 0) ? symbol : symbol / 16;
+					}
+					checkSymbols(alphabets[a], limits[l], symbols);
+				}
+			}
+		}
+		System.out.println("AdaptiveHuffmanCoder.encode()/decode() ok");
+	}
+
+	private static void checkBytes(String name, byte[] data) throws IOException {
+		byte[] result = HuffmanBuilder.decompress(HuffmanBuilder.compress(data));
+		if (!Arrays.equals(data, result)) {
+			throw new IllegalStateException("HuffmanBuilder changed " + name + " input of "
+					+ data.length + " bytes");
+		}
+	}
+
+	private static void checkText(String name, String text) throws IOException {
+		String result = AdaptiveHuffmanCoder.decompress(AdaptiveHuffmanCoder.compress(text));
+		if (!text.equals(result)) {
+			throw new IllegalStateException("AdaptiveHuffmanCoder changed " + name
+					+ " input of " + text.length() + " chars");
+		}
+	}
+
+	//the symbols are preceded by their count, since the padding of the last
+	//byte can't be told apart from code bits
+	private static void checkSymbols(int alphabetSize, int rescaleLimit, int[] symbols)
+			throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BitWriter out = new BitWriter(bytes);
+		AdaptiveHuffmanCoder encoder = new AdaptiveHuffmanCoder(alphabetSize, rescaleLimit);
+		out.writeBits(symbols.length, 32);
+		for (int i = 0; i < symbols.length; i++) {
+			encoder.encode(symbols[i], out);
+		}
+		out.finish();
+
+		BitReader in = new BitReader(new ByteArrayInputStream(bytes.toByteArray()));
+		AdaptiveHuffmanCoder decoder = new AdaptiveHuffmanCoder(alphabetSize, rescaleLimit);
+		int length = (int) in.readBits(32);
+		if (length != symbols.length) {
+			throw new IllegalStateException("AdaptiveHuffmanCoder(" + alphabetSize + ", "
+					+ rescaleLimit + ") decoded " + length + " symbols instead of "
+					+ symbols.length);
+		}
+		for (int i = 0; i < length; i++) {
+			int symbol = decoder.decode(in);
+			if (symbol != symbols[i]) {
+				throw new IllegalStateException("AdaptiveHuffmanCoder(" + alphabetSize + ", "
+						+ rescaleLimit + ") decoded symbol " + i + " of " + symbols.length
+						+ " as " + symbol + " instead of " + symbols[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package edu.upenn.cis.cis121.hw6;
+
+/**
+ * Immutable snapshot of the quality of a Huffman code and of the time spent
+ * building it. Taken from a HuffmanMetrics with snapshot().
+ *
+ * All lengths are in bits per symbol. The redundancy is the expected code
+ * length minus the Shannon entropy of the input, i.e. how far the code is
+ * from the best any symbol-by-symbol coder could do.
+ */
+public class HuffmanStats {
+
+	private final long _symbols;
+	private final int _distinct;
+	private final double _entropy;
+	private final double _expectedLength;
+	private final int _maxDepth;
+	private final long _histogramNanos;
+	private final long _treeBuildNanos;
+	private final long _codeAssignmentNanos;
+
+	HuffmanStats(long symbols, int distinct, double entropy, double expectedLength,
+			int maxDepth, long histogramNanos, long treeBuildNanos, long codeAssignmentNanos) {
+		_symbols = symbols;
+		_distinct = distinct;
+		_entropy = entropy;
+		_expectedLength = expectedLength;
+		_maxDepth = maxDepth;
+		_histogramNanos = histogramNanos;
+		_treeBuildNanos = treeBuildNanos;
+		_codeAssignmentNanos = codeAssignmentNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return total weight of the coded symbols (number of input symbols when
+	 * the weights are counts)
+	 */
+	public long symbols() {
+		return _symbols;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of distinct symbols
+	 */
+	public int distinctSymbols() {
+		return _distinct;
+	}
+
+	/**
+	 * Accessor.
+	 * @return Shannon entropy of the input in bits per symbol
+	 */
+	public double entropy() {
+		return _entropy;
+	}
+
+	/**
+	 * Accessor.
+	 * @return expected code length in bits per symbol
+	 */
+	public double expectedLength() {
+		return _expectedLength;
+	}
+
+	/**
+	 * Accessor.
+	 * @return length of the longest code (depth of the Huffman tree)
+	 */
+	public int maxDepth() {
+		return _maxDepth;
+	}
+
+	/**
+	 * Accessor.
+	 * @return expected code length minus entropy, in bits per symbol
+	 */
+	public double redundancy() {
+		return _expectedLength - _entropy;
+	}
+
+	/**
+	 * Returns the expected size of the coded output relative to a fixed width
+	 * encoding.
+	 * @param rawBitsPerSymbol - bits per symbol without compression, e.g. 8
+	 * for bytes or 16 for chars
+	 * @return expected output size / raw size
+	 */
+	public double compressionRatio(int rawBitsPerSymbol) {
+		return _expectedLength / rawBitsPerSymbol;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time spent counting symbols, in nanoseconds
+	 */
+	public long histogramNanos() {
+		return _histogramNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time spent building the Huffman tree, in nanoseconds
+	 */
+	public long treeBuildNanos() {
+		return _treeBuildNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time spent assigning codes to the symbols, in nanoseconds
+	 */
+	public long codeAssignmentNanos() {
+		return _codeAssignmentNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return total build time over all phases, in nanoseconds
+	 */
+	public long totalNanos() {
+		return _histogramNanos + _treeBuildNanos + _codeAssignmentNanos;
+	}
+
+	/**
+	 * Accessor for logging.
+	 * @return one line summary of the statistics
+	 */
+	public String toString() {
+		return String.format("HuffmanStats[symbols=%d, distinct=%d, entropy=%.4f, "
+				+ "expectedLength=%.4f, redundancy=%.4f, maxDepth=%d, histogram=%dns, "
+				+ "tree=%dns, codes=%dns]", _symbols, _distinct, _entropy,
+				_expectedLength, redundancy(), _maxDepth, _histogramNanos,
+				_treeBuildNanos, _codeAssignmentNanos);
+	}
+}
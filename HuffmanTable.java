@@ -0,0 +1,357 @@
+package edu.upenn.cis.cis121.hw6;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A canonical Huffman code over int symbols, stored in primitive arrays
+ * instead of the Set<Character> based CodeBookI. Symbols are kept in
+ * canonical order (by code length, then by symbol), which lets the whole
+ * code be rebuilt from the symbols and their lengths and lets decoding work
+ * from a few small per-length tables.
+ *
+ * For the BYTES and CASE_PRESERVING alphabets symbols are looked up through
+ * a directly indexed array; for CODE_POINTS a sorted array is binary
+ * searched, since a direct table over all code points would be too large.
+ *
+ * Tables are built by HuffmanBuilder.buildTable().
+ */
+public class HuffmanTable {
+
+	/**
+	 * Longest code length that is supported. Inputs shorter than about 2^40
+	 * symbols can never produce longer codes.
+	 */
+	public static final int MAX_CODE_LENGTH = 63;
+
+	private HuffmanAlphabet _alphabet;
+	private int _size;
+	private int[] _symbols; //canonical order
+	private int[] _lengths;
+	private long[] _codes;
+	private long[] _counts;
+	private int _maxLength;
+
+	//symbol -> position in canonical order, for the small alphabets
+	private int[] _slot;
+	//ascending symbols and their positions, for CODE_POINTS
+	private int[] _sortedSymbols;
+	private int[] _sortedSlot;
+
+	//per code length: number of codes, first position and first code
+	private int[] _lengthCount;
+	private int[] _firstIndex;
+	private long[] _firstCode;
+
+	/**
+	 * Constructs the canonical code for the given symbols and code lengths.
+	 * @param alphabet - alphabet of the symbols
+	 * @param symbols - distinct symbols
+	 * @param counts - frequency of each symbol (may be all zero)
+	 * @param lengths - code length of each symbol
+	 */
+	HuffmanTable(HuffmanAlphabet alphabet, int[] symbols, long[] counts, int[] lengths) {
+		_alphabet = alphabet;
+		_size = symbols.length;
+
+		//sort by (length, symbol), carrying the original index along
+		long[] keys = new long[_size];
+		for (int i = 0; i < _size; i++) {
+			if (symbols[i] < 0 || symbols[i] >= alphabet.size()) {
+				throw new IllegalArgumentException("Symbol is outside the alphabet.");
+			}
+			if (lengths[i] < 1 || lengths[i] > MAX_CODE_LENGTH) {
+				throw new IllegalArgumentException("Invalid code length.");
+			}
+			keys[i] = ((long) lengths[i] << 42) | ((long) symbols[i] << 21) | i;
+		}
+		Arrays.sort(keys);
+
+		_symbols = new int[_size];
+		_lengths = new int[_size];
+		_codes = new long[_size];
+		_counts = new long[_size];
+		for (int i = 0; i < _size; i++) {
+			int index = (int) (keys[i] & 0x1FFFFF);
+			_symbols[i] = symbols[index];
+			_lengths[i] = lengths[index];
+			_counts[i] = counts[index];
+		}
+
+		//assign consecutive codes, shifting left whenever the length grows
+		_maxLength = (_size == 0) ? 0 : _lengths[_size - 1];
+		_lengthCount = new int[_maxLength + 1];
+		_firstIndex = new int[_maxLength + 1];
+		_firstCode = new long[_maxLength + 1];
+		long code = 0;
+		for (int i = 0; i < _size; i++) {
+			if (i > 0) {
+				code = (code + 1) << (_lengths[i] - _lengths[i - 1]);
+			}
+			if (code >>> _lengths[i] != 0) {
+				throw new IllegalArgumentException("Code lengths are not a prefix code.");
+			}
+			_codes[i] = code;
+			if (_lengthCount[_lengths[i]]++ == 0) {
+				_firstIndex[_lengths[i]] = i;
+				_firstCode[_lengths[i]] = code;
+			}
+		}
+
+		if (alphabet == HuffmanAlphabet.CODE_POINTS) {
+			long[] bySymbol = new long[_size];
+			for (int i = 0; i < _size; i++) {
+				bySymbol[i] = ((long) _symbols[i] << 32) | i;
+			}
+			Arrays.sort(bySymbol);
+			_sortedSymbols = new int[_size];
+			_sortedSlot = new int[_size];
+			for (int i = 0; i < _size; i++) {
+				_sortedSymbols[i] = (int) (bySymbol[i] >>> 32);
+				_sortedSlot[i] = (int) bySymbol[i];
+			}
+		}
+		else {
+			_slot = new int[alphabet.size()];
+			Arrays.fill(_slot, -1);
+			for (int i = 0; i < _size; i++) {
+				_slot[_symbols[i]] = i;
+			}
+		}
+	}
+
+	/**
+	 * Accessor.
+	 * @return alphabet of this table
+	 */
+	public HuffmanAlphabet alphabet() {
+		return _alphabet;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of symbols with a code
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Accessor.
+	 * @return length of the longest code
+	 */
+	public int maxCodeLength() {
+		return _maxLength;
+	}
+
+	/**
+	 * Returns whether symbol has a code in this table.
+	 * @param symbol
+	 * @return true if symbol can be encoded
+	 */
+	public boolean contains(int symbol) {
+		return slotOf(symbol) >= 0;
+	}
+
+	/**
+	 * Returns the code length of symbol.
+	 * @param symbol
+	 * @return number of bits in the code of symbol
+	 * @throws IllegalArgumentException if symbol has no code
+	 */
+	public int codeLength(int symbol) {
+		return _lengths[checkedSlot(symbol)];
+	}
+
+	/**
+	 * Returns the code of symbol as the lowest codeLength(symbol) bits of a
+	 * long.
+	 * @param symbol
+	 * @return code bits of symbol
+	 * @throws IllegalArgumentException if symbol has no code
+	 */
+	public long code(int symbol) {
+		return _codes[checkedSlot(symbol)];
+	}
+
+	/**
+	 * Returns the frequency symbol had in the input the table was built from.
+	 * @param symbol
+	 * @return frequency of symbol, 0 for tables read from a header
+	 * @throws IllegalArgumentException if symbol has no code
+	 */
+	public long count(int symbol) {
+		return _counts[checkedSlot(symbol)];
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of bits needed to encode the input the table was built
+	 * from
+	 */
+	public long encodedBits() {
+		long bits = 0;
+		for (int i = 0; i < _size; i++) {
+			bits += _counts[i] * _lengths[i];
+		}
+		return bits;
+	}
+
+	/**
+	 * Encodes a range of bytes. Only valid for BYTES tables.
+	 * @param data - input bytes
+	 * @param offset - first byte to encode
+	 * @param length - number of bytes to encode
+	 * @param out - destination of the code bits
+	 * @throws IOException
+	 */
+	public void encode(byte[] data, int offset, int length, BitWriter out) throws IOException {
+		if (_alphabet != HuffmanAlphabet.BYTES) {
+			throw new IllegalStateException("Table is not a byte table.");
+		}
+		int[] slot = _slot;
+		for (int i = offset; i < offset + length; i++) {
+			int s = slot[data[i] & 0xFF];
+			if (s < 0) {
+				throw new IllegalArgumentException("Byte has no code: " + (data[i] & 0xFF));
+			}
+			out.writeBits(_codes[s], _lengths[s]);
+		}
+	}
+
+	/**
+	 * Encodes text as chars (CASE_PRESERVING) or code points (CODE_POINTS).
+	 * @param text - input text
+	 * @param out - destination of the code bits
+	 * @throws IOException
+	 */
+	public void encode(CharSequence text, BitWriter out) throws IOException {
+		if (_alphabet == HuffmanAlphabet.BYTES) {
+			throw new IllegalStateException("Byte tables encode byte arrays.");
+		}
+		int i = 0;
+		while (i < text.length()) {
+			int symbol;
+			if (_alphabet == HuffmanAlphabet.CODE_POINTS) {
+				symbol = Character.codePointAt(text, i);
+				i += Character.charCount(symbol);
+			}
+			else {
+				symbol = text.charAt(i++);
+			}
+			int s = checkedSlot(symbol);
+			out.writeBits(_codes[s], _lengths[s]);
+		}
+	}
+
+	/**
+	 * Decodes a single symbol.
+	 * @param in - source of the code bits
+	 * @return the decoded symbol, or -1 if the stream ended before the first
+	 * bit of a new symbol
+	 * @throws IOException if the stream ends in the middle of a symbol or the
+	 * bits do not form a code of this table
+	 */
+	public int decodeSymbol(BitReader in) throws IOException {
+		long code = 0;
+		for (int length = 1; length <= _maxLength; length++) {
+			int bit = in.readBit();
+			if (bit < 0) {
+				if (length == 1) {
+					return -1;
+				}
+				throw new IOException("Unexpected end of bit stream.");
+			}
+			code = (code << 1) | bit;
+			int count = _lengthCount[length];
+			if (count > 0 && code >= _firstCode[length]
+					&& code - _firstCode[length] < count) {
+				return _symbols[_firstIndex[length] + (int) (code - _firstCode[length])];
+			}
+		}
+		throw new IOException("Invalid code in bit stream.");
+	}
+
+	/**
+	 * Writes the symbols and code lengths, which is everything needed to
+	 * rebuild the code with read(DataInput).
+	 * @param out
+	 * @throws IOException
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeByte(_alphabet.ordinal());
+		out.writeInt(_size);
+		for (int i = 0; i < _size; i++) {
+			if (_alphabet == HuffmanAlphabet.BYTES) {
+				out.writeByte(_symbols[i]);
+			}
+			else if (_alphabet == HuffmanAlphabet.CASE_PRESERVING) {
+				out.writeChar(_symbols[i]);
+			}
+			else {
+				out.writeInt(_symbols[i]);
+			}
+			out.writeByte(_lengths[i]);
+		}
+	}
+
+	/**
+	 * Reads a table written by write(DataOutput). Symbol counts are not
+	 * stored, so count() returns 0 for every symbol of the result.
+	 * @param in
+	 * @return the table
+	 * @throws IOException if the header is corrupt
+	 */
+	public static HuffmanTable read(DataInput in) throws IOException {
+		int ordinal = in.readUnsignedByte();
+		HuffmanAlphabet[] alphabets = HuffmanAlphabet.values();
+		if (ordinal >= alphabets.length) {
+			throw new IOException("Unknown alphabet in table header.");
+		}
+		HuffmanAlphabet alphabet = alphabets[ordinal];
+		int size = in.readInt();
+		if (size < 0 || size > alphabet.size()) {
+			throw new IOException("Invalid table size.");
+		}
+		int[] symbols = new int[size];
+		int[] lengths = new int[size];
+		for (int i = 0; i < size; i++) {
+			if (alphabet == HuffmanAlphabet.BYTES) {
+				symbols[i] = in.readUnsignedByte();
+			}
+			else if (alphabet == HuffmanAlphabet.CASE_PRESERVING) {
+				symbols[i] = in.readChar();
+			}
+			else {
+				symbols[i] = in.readInt();
+			}
+			lengths[i] = in.readUnsignedByte();
+		}
+		try {
+			return new HuffmanTable(alphabet, symbols, new long[size], lengths);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Corrupt table header: " + e.getMessage());
+		}
+	}
+
+	private int slotOf(int symbol) {
+		if (symbol < 0 || symbol >= _alphabet.size()) {
+			return -1;
+		}
+		if (_slot != null) {
+			return _slot[symbol];
+		}
+		int pos = Arrays.binarySearch(_sortedSymbols, symbol);
+		return (pos < 0) ? -1 : _sortedSlot[pos];
+	}
+
+	private int checkedSlot(int symbol) {
+		int s = slotOf(symbol);
+		if (s < 0) {
+			throw new IllegalArgumentException("Symbol has no code: " + symbol);
+		}
+		return s;
+	}
+}
@@ -0,0 +1,121 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe histogram of query latencies with logarithmic buckets: every
+ * power of two of nanoseconds is split into SUB_BUCKETS buckets of equal
+ * width, so a percentile is off by at most 1 / SUB_BUCKETS (12.5%) of its
+ * value, from 1 microsecond up to hours, in a fixed 4KB. Recording is a few
+ * atomic increments and never allocates, so it can stay on for every
+ * query.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKETS = 8;
+	private static final int SUB_BITS = 3;
+	//latencies below 2^MIN_BITS ns share the first bucket
+	private static final int MIN_BITS = 10;
+	private static final int NUM_BUCKETS = (64 - MIN_BITS) * SUB_BUCKETS;
+
+	private final AtomicLongArray _counts = new AtomicLongArray(NUM_BUCKETS);
+	private final AtomicLong _count = new AtomicLong();
+	private final AtomicLong _totalNanos = new AtomicLong();
+	private final AtomicLong _maxNanos = new AtomicLong();
+
+	/**
+	 * Records one latency.
+	 * @param nanos - latency in nanoseconds
+	 */
+	public void record(long nanos) {
+		nanos = Math.max(0, nanos);
+		_counts.incrementAndGet(bucket(nanos));
+		_count.incrementAndGet();
+		_totalNanos.addAndGet(nanos);
+		long max = _maxNanos.get();
+		while (nanos > max && !_maxNanos.compareAndSet(max, nanos)) {
+			max = _maxNanos.get();
+		}
+	}
+
+	//bucket of a latency: its power of two and the next SUB_BITS bits
+	private static int bucket(long nanos) {
+		if (nanos < (1L << MIN_BITS)) {
+			return 0;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+		return (exponent - MIN_BITS) * SUB_BUCKETS + sub;
+	}
+
+	//largest latency that falls into a bucket
+	private static long upperBound(int bucket) {
+		int exponent = bucket / SUB_BUCKETS + MIN_BITS;
+		int sub = bucket % SUB_BUCKETS;
+		if (exponent >= 63) {
+			return Long.MAX_VALUE;
+		}
+		return (1L << exponent) + ((long) (sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of recorded latencies
+	 */
+	public long count() {
+		return _count.get();
+	}
+
+	/**
+	 * Accessor.
+	 * @return mean latency in nanoseconds, 0 if nothing was recorded
+	 */
+	public double meanNanos() {
+		long count = _count.get();
+		return (count == 0) ? 0.0 : _totalNanos.get() / (double) count;
+	}
+
+	/**
+	 * Accessor.
+	 * @return largest recorded latency in nanoseconds
+	 */
+	public long maxNanos() {
+		return _maxNanos.get();
+	}
+
+	/**
+	 * Returns a percentile of the recorded latencies, rounded up to the end
+	 * of its bucket (but not past the largest latency).
+	 * @param p - the percentile, from 0 to 100
+	 * @return the latency in nanoseconds, 0 if nothing was recorded
+	 */
+	public long percentileNanos(double p) {
+		if (!(p >= 0 && p <= 100)) {
+			throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+		}
+		long count = _count.get();
+		if (count == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(p / 100 * count));
+		long seen = 0;
+		for (int b = 0; b < NUM_BUCKETS; b++) {
+			seen += _counts.get(b);
+			if (seen >= rank) {
+				return Math.min(upperBound(b), _maxNanos.get());
+			}
+		}
+		return _maxNanos.get();
+	}
+
+	/**
+	 * Accessor.
+	 * @return count, mean, percentiles and max in milliseconds
+	 */
+	public String toString() {
+		return String.format("count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+				count(), meanNanos() / 1e6, percentileNanos(50) / 1e6, percentileNanos(90) / 1e6,
+				percentileNanos(99) / 1e6, maxNanos() / 1e6);
+	}
+}
@@ -0,0 +1,102 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Immutable report of one MovieFinder.readMovies() call: how many rows were
+ * loaded, how fast, and which lines could not be parsed.
+ */
+public class LoadStats {
+
+	private final int _rows;
+	private final long _malformed;
+	private final long[] _malformedLines;
+	private final long _bytes;
+	private final int _chunks;
+	private final long _nanos;
+
+	LoadStats(int rows, long malformed, long[] malformedLines, long bytes, int chunks, long nanos) {
+		_rows = rows;
+		_malformed = malformed;
+		_malformedLines = malformedLines;
+		_bytes = bytes;
+		_chunks = chunks;
+		_nanos = nanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of movies loaded
+	 */
+	public int rows() {
+		return _rows;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of records that were skipped because they could not be
+	 * parsed
+	 */
+	public long malformedLines() {
+		return _malformed;
+	}
+
+	/**
+	 * Accessor.
+	 * @return 1-based line numbers of the first malformed records (at most
+	 * 100), in file order
+	 */
+	public long[] malformedLineNumbers() {
+		return _malformedLines.clone();
+	}
+
+	/**
+	 * Accessor.
+	 * @return size of the file in bytes
+	 */
+	public long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of chunks the file was parsed in
+	 */
+	public int chunks() {
+		return _chunks;
+	}
+
+	/**
+	 * Accessor.
+	 * @return wall clock time of the load in nanoseconds
+	 */
+	public long nanos() {
+		return _nanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return movies loaded per second
+	 */
+	public double rowsPerSecond() {
+		return (_nanos == 0) ? 0.0 : _rows * 1e9 / _nanos;
+	}
+
+	/**
+	 * Accessor for logging.
+	 * @return one line summary of the load
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(String.format("LoadStats[rows=%d, bytes=%d, "
+				+ "chunks=%d, time=%.1fms, rows/s=%.0f, malformed=%d", _rows, _bytes, _chunks,
+				_nanos / 1e6, rowsPerSecond(), _malformed));
+		if (_malformedLines.length > 0) {
+			sb.append(", malformed lines=");
+			for (int i = 0; i < _malformedLines.length; i++) {
+				sb.append(i == 0 ? "" : " ").append(_malformedLines[i]);
+			}
+			if (_malformed > _malformedLines.length) {
+				sb.append(" ...");
+			}
+		}
+		return sb.append("]").toString();
+	}
+}
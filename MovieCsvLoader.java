@@ -0,0 +1,575 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Parallel loader for the movie CSV format (Title,Rating,Votes,Awards with
+ * one header line). Fields follow RFC 4180: a field may be quoted, quoted
+ * fields may contain commas, line breaks and doubled quotes, and lines may
+ * end in LF or CRLF.
+ *
+ * The file is split at nominal offsets into chunks that are memory-mapped
+ * and parsed in parallel. A record belongs to the chunk its first byte
+ * falls in, so a chunk skips ahead to the first record boundary after its
+ * offset and parses past its end to finish its last record. Boundaries are
+ * line breaks outside quotes; since a line break inside quotes can't be told
+ * apart locally, a first parallel pass counts the quotes in every chunk,
+ * which gives each chunk the quote state at its offset.
+ *
+ * The tokenizer reads the mapped bytes directly. Only titles are turned
+ * into Strings; numbers are parsed from the bytes, with the JDK parsers as a
+ * fallback for anything unusual. Records that can't be parsed are skipped
+ * and reported by line number in the LoadStats. A quote inside an unquoted
+ * field makes its record malformed, and since quote parity decides where
+ * records end, an odd number of such quotes carries the record on to the
+ * next line break at even parity.
+ *
+ * tail() loads a file that is being appended to: it starts at the offset a
+ * Position has consumed so far and stops after the last complete record,
+ * so a record still being written is left for the next call. Finding that
+ * record uses the quote counts of the chunks, so only the last chunk with a
+ * line break in it is scanned again.
+ */
+final class MovieCsvLoader {
+
+	//every chunk is mapped on its own, so files over 2GB load as long as no
+	//single record is longer than MAX_RECORD
+	private static final long MIN_CHUNK = 1L << 20;
+	private static final long MAX_CHUNK = 1L << 28;
+	private static final long MAX_RECORD = 1L << 24;
+
+	//number of malformed line numbers kept for the report
+	static final int MAX_REPORTED = 100;
+
+	//powers of ten that are exact doubles
+	private static final double[] POW10 = {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+	};
+
+	private MovieCsvLoader() {
+	}
+
+	/**
+	 * Appends the movies of a CSV file to a store.
+	 * @param file - name of the file
+	 * @param store - store to append to
+	 * @return statistics of the load
+	 * @throws IOException if the file can't be read
+	 */
+	static LoadStats load(String file, MovieStore store) throws IOException {
+		return load(file, store, null, false);
+	}
+
+	/**
+	 * Appends the complete records of a CSV file to a store, and sets a
+	 * position after the last of them so that tail() can continue from
+	 * there. Like tail(), it stops after the last complete record, so a
+	 * record still being written is left for the next tail().
+	 * @param file - name of the file
+	 * @param store - store to append to
+	 * @param end - set to the end of the last complete record
+	 * @return statistics of the load
+	 * @throws IOException if the file can't be read
+	 */
+	static LoadStats load(String file, MovieStore store, Position end) throws IOException {
+		return load(file, store, end, false);
+	}
+
+	/**
+	 * Appends the complete records of a CSV file that follow a position, and
+	 * moves the position past them.
+	 * @param file - name of the file
+	 * @param store - store to append to
+	 * @param position - how much of the file has been loaded so far
+	 * @return statistics of the load; bytes() is the number of bytes consumed
+	 * @throws IOException if the file can't be read or is shorter than the
+	 * position
+	 */
+	static LoadStats tail(String file, MovieStore store, Position position) throws IOException {
+		return load(file, store, position, true);
+	}
+
+	//reads the whole file, or with tail set the records after position; if
+	//position is given, only complete records are read and position ends up
+	//after them
+	private static LoadStats load(String file, MovieStore store, Position position, 
+			boolean tail) throws IOException {
+		long startNanos = System.nanoTime();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final long start = tail ? position._offset : 0;
+			long size = channel.size();
+			if (size < start) {
+				throw new IOException("File " + file + " is shorter than the " + start 
+						+ " bytes already loaded; it is not append-only.");
+			}
+			long target = Math.max(MIN_CHUNK, Math.min(MAX_CHUNK, (size - start) / (4 * WorkerPool.parallelism())));
+			int numChunks = (int) Math.max(1, (size - start + target - 1) / target);
+			long[] offsets = new long[numChunks + 1];
+			for (int i = 0; i <= numChunks; i++) {
+				offsets[i] = start + (size - start) * i / numChunks;
+			}
+			final boolean[] inQuotes = quoteStates(channel, offsets);
+			if (position != null) {
+				//stop after the last complete record, dropping the chunks past it
+				numChunks = lastBoundary(channel, offsets, inQuotes);
+				size = offsets[numChunks];
+			}
+			final long end = size;
+			final long[] bounds = offsets;
+			final boolean header = start == 0;
+
+			List<Callable<Chunk>> tasks = new ArrayList<Callable<Chunk>>(numChunks);
+			for (int i = 0; i < numChunks; i++) {
+				final int index = i;
+				tasks.add(new Callable<Chunk>() {
+					public Chunk call() throws IOException {
+						Chunk chunk = new Chunk();
+						chunk.parse(channel, end, bounds, index, inQuotes[index], header);
+						return chunk;
+					}
+				});
+			}
+			List<Chunk> chunks = invokeAll(tasks);
+
+			//merge in file order, turning chunk-local line numbers into file
+			//line numbers
+			int rows = 0;
+			long malformed = 0;
+			long[] reported = new long[MAX_REPORTED];
+			int numReported = 0;
+			long lines = tail ? position._lines : 0;
+			for (Chunk chunk : chunks) {
+				store.addAll(chunk._store);
+				rows += chunk._store.size();
+				malformed += chunk._malformed;
+				for (int i = 0; i < chunk._numReported && numReported < MAX_REPORTED; i++) {
+					reported[numReported++] = lines + chunk._reported[i] + 1;
+				}
+				lines += chunk._lines;
+			}
+			if (position != null) {
+				position._offset = end;
+				position._lines = lines;
+			}
+			long[] malformedLines = new long[numReported];
+			System.arraycopy(reported, 0, malformedLines, 0, numReported);
+			return new LoadStats(rows, malformed, malformedLines, end - start, numChunks,
+					System.nanoTime() - startNanos);
+		} finally {
+			in.close();
+		}
+	}
+
+	//quote state at the start of each chunk, from the parity of the number
+	//of quotes before it
+	private static boolean[] quoteStates(final FileChannel channel, final long[] offsets)
+			throws IOException {
+		int numChunks = offsets.length - 1;
+		boolean[] inQuotes = new boolean[numChunks];
+		if (numChunks == 1) {
+			return inQuotes;
+		}
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>(numChunks);
+		for (int i = 0; i < numChunks; i++) {
+			final int index = i;
+			tasks.add(new Callable<Long>() {
+				public Long call() throws IOException {
+					MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+							offsets[index], offsets[index + 1] - offsets[index]);
+					long quotes = 0;
+					int limit = buf.limit();
+					for (int i = 0; i < limit; i++) {
+						if (buf.get(i) == '"') {
+							quotes++;
+						}
+					}
+					return quotes;
+				}
+			});
+		}
+		List<Long> quotes = invokeAll(tasks);
+		long total = 0;
+		for (int i = 0; i < numChunks; i++) {
+			inQuotes[i] = (total & 1) != 0;
+			total += quotes.get(i);
+		}
+		return inQuotes;
+	}
+
+	//finds the line break ending the last complete record, going by quote
+	//parity from the last chunk backwards, and moves the end of the chunk it
+	//is in to just after it; returns the number of chunks left, which is 0
+	//if there is no complete record
+	private static int lastBoundary(FileChannel channel, long[] offsets, boolean[] inQuotes)
+			throws IOException {
+		for (int c = offsets.length - 2; c >= 0; c--) {
+			MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+					offsets[c], offsets[c + 1] - offsets[c]);
+			boolean quoted = inQuotes[c];
+			int last = -1;
+			int limit = buf.limit();
+			for (int i = 0; i < limit; i++) {
+				byte b = buf.get(i);
+				if (b == '"') {
+					quoted = !quoted;
+				}
+				else if (b == '\n' && !quoted) {
+					last = i;
+				}
+			}
+			if (last >= 0) {
+				offsets[c + 1] = offsets[c] + last + 1;
+				return c + 1;
+			}
+		}
+		offsets[1] = offsets[0];
+		return 0;
+	}
+
+	//WorkerPool.invokeAll(), rethrowing the IOExceptions of the tasks
+	private static <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+		try {
+			return WorkerPool.invokeAll(tasks);
+		} catch (RuntimeException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * How much of a file tail() has consumed: the offset after the last
+	 * complete record and the number of lines before it.
+	 */
+	static final class Position {
+		long _offset;
+		long _lines;
+	}
+
+	/**
+	 * Parser state and results for one chunk of the file.
+	 */
+	private static final class Chunk {
+
+		private final MovieStore _store = new MovieStore();
+		private long _malformed;
+		private final long[] _reported = new long[MAX_REPORTED];
+		private int _numReported;
+		//line breaks from the first record of the chunk to the end of its last
+		private long _lines;
+
+		private MappedByteBuffer _buf;
+		private int _limit;
+		private byte[] _scratch = new byte[256];
+
+		//span of the current field and whether it holds doubled quotes
+		private int _start;
+		private int _end;
+		private boolean _escaped;
+
+		void parse(FileChannel channel, long size, long[] offsets, int index, boolean inQuotes,
+				boolean header) throws IOException {
+			//map from the byte before the offset, so a record starting right at
+			//the offset is found after the line break in front of it; the first
+			//chunk starts at a record
+			long base = (index == 0) ? offsets[0] : offsets[index] - 1;
+			long windowEnd = Math.min(size, Math.min(base + Integer.MAX_VALUE,
+					offsets[index + 1] + MAX_RECORD));
+			_buf = channel.map(FileChannel.MapMode.READ_ONLY, base, windowEnd - base);
+			_limit = (int) (windowEnd - base);
+			int owned = (int) (offsets[index + 1] - base);
+
+			int pos = 0;
+			if (index > 0) {
+				//quote state in front of the byte before the offset
+				boolean quoted = inQuotes ^ (_buf.get(0) == '"');
+				pos = -1;
+				for (int i = 0; i < _limit; i++) {
+					byte b = _buf.get(i);
+					if (b == '"') {
+						quoted = !quoted;
+					}
+					else if (b == '\n' && !quoted) {
+						pos = i + 1;
+						break;
+					}
+				}
+				if (pos < 0 || pos > owned) {
+					//no record starts in this chunk
+					return;
+				}
+			}
+			if (index == 0 && header && pos < owned) {
+				//skip the header
+				pos = record(pos, true);
+			}
+			while (pos < owned) {
+				pos = record(pos, false);
+			}
+		}
+
+		//parses the record at pos and returns the start of the next one
+		private int record(int pos, boolean header) {
+			long line = _lines;
+			int start = pos;
+			//blank lines are ignored
+			if (get(pos) == '\n' || (get(pos) == '\r' && get(pos + 1) == '\n')) {
+				_lines++;
+				return pos + (get(pos) == '\n' ? 1 : 2);
+			}
+
+			boolean ok = true;
+			boolean quoted = false;
+			String title = null;
+			double rating = 0.0;
+			int votes = 0;
+			int awards = 0;
+			int field = 0;
+			while (true) {
+				quoted |= get(pos) == '"';
+				int end = field(pos);
+				if (end < 0) {
+					ok = false;
+					pos = skip(start);
+					break;
+				}
+				if (!header) {
+					try {
+						if (field == 0) {
+							title = title();
+						}
+						else if (field < 4 && _escaped) {
+							ok = false;
+						}
+						else if (field == 1) {
+							rating = parseDouble(_start, _end);
+						}
+						else if (field == 2) {
+							votes = parseInt(_start, _end);
+						}
+						else if (field == 3) {
+							awards = parseInt(_start, _end);
+						}
+					} catch (NumberFormatException e) {
+						ok = false;
+					}
+				}
+				field++;
+				pos = end;
+				if (end == _limit || _buf.get(end) == '\n') {
+					break;
+				}
+				pos++;
+			}
+
+			int next = (pos < _limit) ? pos + 1 : pos;
+			if (quoted || !ok) {
+				for (int i = start; i < next; i++) {
+					if (_buf.get(i) == '\n') {
+						_lines++;
+					}
+				}
+			}
+			else if (pos < _limit) {
+				_lines++;
+			}
+			if (header) {
+				return next;
+			}
+			if (ok && field >= 4) {
+				_store.add(title, rating, votes, awards);
+			}
+			else {
+				if (_numReported < MAX_REPORTED) {
+					_reported[_numReported++] = line;
+				}
+				_malformed++;
+			}
+			return next;
+		}
+
+		//tokenizes the field at pos, setting _start, _end and _escaped;
+		//returns the position of the ',' or '\n' after it (or _limit), or -1
+		//if the field is malformed
+		private int field(int pos) {
+			_escaped = false;
+			if (get(pos) == '"') {
+				int i = pos + 1;
+				_start = i;
+				while (true) {
+					if (i >= _limit) {
+						return -1;
+					}
+					if (_buf.get(i) == '"') {
+						if (get(i + 1) != '"') {
+							break;
+						}
+						_escaped = true;
+						i++;
+					}
+					i++;
+				}
+				_end = i++;
+				if (get(i) == '\r' && get(i + 1) == '\n') {
+					i++;
+				}
+				if (i < _limit && _buf.get(i) != ',' && _buf.get(i) != '\n') {
+					return -1;
+				}
+				return i;
+			}
+			int i = pos;
+			while (i < _limit) {
+				byte b = _buf.get(i);
+				if (b == ',' || b == '\n') {
+					break;
+				}
+				if (b == '"') {
+					return -1;
+				}
+				i++;
+			}
+			_start = pos;
+			_end = (i > pos && _buf.get(i - 1) == '\r' && (i == _limit || _buf.get(i) == '\n')) ? i - 1 : i;
+			return i;
+		}
+
+		//returns the line break ending the malformed record at pos, going by
+		//quote parity only, the same way chunk boundaries are found
+		private int skip(int pos) {
+			boolean quoted = false;
+			for (; pos < _limit; pos++) {
+				byte b = _buf.get(pos);
+				if (b == '"') {
+					quoted = !quoted;
+				}
+				else if (b == '\n' && !quoted) {
+					return pos;
+				}
+			}
+			return _limit;
+		}
+
+		//byte at pos, or 0 past the end of the window
+		private byte get(int pos) {
+			return (pos < _limit) ? _buf.get(pos) : 0;
+		}
+
+		//decodes the current field, undoubling quotes
+		private String title() {
+			int length = _end - _start;
+			if (_scratch.length < length) {
+				_scratch = new byte[Math.max(length, 2 * _scratch.length)];
+			}
+			int n = 0;
+			for (int i = _start; i < _end; i++) {
+				byte b = _buf.get(i);
+				_scratch[n++] = b;
+				if (b == '"' && _escaped) {
+					i++;
+				}
+			}
+			return new String(_scratch, 0, n, Charset.defaultCharset());
+		}
+
+		private int parseInt(int start, int end) {
+			int i = start;
+			boolean negative = false;
+			if (i < end && (_buf.get(i) == '-' || _buf.get(i) == '+')) {
+				negative = _buf.get(i) == '-';
+				i++;
+			}
+			if (i == end || end - i > 10) {
+				return Integer.parseInt(ascii(start, end));
+			}
+			long value = 0;
+			for (; i < end; i++) {
+				int digit = _buf.get(i) - '0';
+				if (digit < 0 || digit > 9) {
+					return Integer.parseInt(ascii(start, end));
+				}
+				value = value * 10 + digit;
+			}
+			value = negative ? -value : value;
+			if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+				throw new NumberFormatException("Out of range: " + ascii(start, end));
+			}
+			return (int) value;
+		}
+
+		//exact when the digits form an integer below 2^53 and the power of
+		//ten is at most 22, since both are then exact doubles and a single
+		//multiplication or division rounds correctly
+		private double parseDouble(int start, int end) {
+			int i = start;
+			boolean negative = false;
+			if (i < end && (_buf.get(i) == '-' || _buf.get(i) == '+')) {
+				negative = _buf.get(i) == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int exponent = 0;
+			boolean digits = false;
+			boolean fraction = false;
+			for (; i < end; i++) {
+				byte b = _buf.get(i);
+				if (b == '.' && !fraction) {
+					fraction = true;
+					continue;
+				}
+				int digit = b - '0';
+				if (digit < 0 || digit > 9 || mantissa >= 100000000000000000L) {
+					break;
+				}
+				mantissa = mantissa * 10 + digit;
+				exponent -= fraction ? 1 : 0;
+				digits = true;
+			}
+			if (i < end && digits && (_buf.get(i) == 'e' || _buf.get(i) == 'E')) {
+				int j = i + 1;
+				boolean negativeExponent = false;
+				if (j < end && (_buf.get(j) == '-' || _buf.get(j) == '+')) {
+					negativeExponent = _buf.get(j) == '-';
+					j++;
+				}
+				int e = 0;
+				int exponentDigits = 0;
+				for (; j < end && exponentDigits < 5; j++, exponentDigits++) {
+					int digit = _buf.get(j) - '0';
+					if (digit < 0 || digit > 9) {
+						break;
+					}
+					e = e * 10 + digit;
+				}
+				if (exponentDigits > 0) {
+					exponent += negativeExponent ? -e : e;
+					i = j;
+				}
+			}
+			if (i != end || !digits || mantissa >= (1L << 53) || exponent < -22 || exponent > 22) {
+				return Double.parseDouble(ascii(start, end));
+			}
+			double value = (exponent >= 0) ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+			return negative ? -value : value;
+		}
+
+		private String ascii(int start, int end) {
+			char[] chars = new char[end - start];
+			for (int i = start; i < end; i++) {
+				chars[i - start] = (char) (_buf.get(i) & 0xff);
+			}
+			return new String(chars);
+		}
+	}
+}
@@ -0,0 +1,380 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Self-checking harness for MovieCsvLoader. For each seed it generates a CSV
+ * file of several MB, so that it is split into several chunks, full of the
+ * cases the parallel loader has to get right: quoted titles with commas,
+ * doubled quotes and LF or CRLF line breaks, lines ending in LF or CRLF,
+ * blank lines, numbers in the formats the fast parsers handle and in ones
+ * they hand to the JDK, and malformed records, including stray quotes that
+ * carry a record on to a later line. It checks that load(), and tail()
+ * called while the file is appended in random pieces, give the same rows,
+ * malformed count and malformed line numbers as a simple sequential parser
+ * of the format MovieCsvLoader documents.
+ *
+ * It prints one line per seed and throws an IllegalStateException at the
+ * first difference.
+ *
+ * Usage: java edu.upenn.cis.cis121.hw5.MovieCsvLoaderCheck [seeds] [megabytes]
+ */
+public class MovieCsvLoaderCheck {
+
+	private static final String[] DOUBLES = {"7.5", "10", "0", ".5", "5.", "1e1", "2.5E-1",
+		"+3.0", "-0", "-1.25", "1234567890123456789", "0.12345678901234567891",
+		"3.141592653589793", "1e-30", "1e300", "9007199254740993", "NaN", "Infinity",
+		" 4.0", "4.0 ", "4.0f", "\"6.5\"", "x", "", "1e", "-", "..5", "0x1p3", "1.2.3"};
+	private static final String[] INTS = {"0", "123", "+5", "-7", "2147483647", "-2147483648",
+		"2147483648", "12a", "", "00012", " 5", "\"42\"", "\"4\"\"2\"", "99999999999", "-"};
+
+	/**
+	 * Runs the checks.
+	 * @param args - optional number of seeds and file size in MB
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int seeds = (args.length > 0) ? Integer.parseInt(args[0]) : 5;
+		int megabytes = (args.length > 1) ? Integer.parseInt(args[1]) : 4;
+		Charset charset = Charset.defaultCharset();
+		boolean unicode = charset.newEncoder().canEncode("\u00e9\u4e2d");
+		File file = File.createTempFile("loader", ".csv");
+		file.deleteOnExit();
+
+		for (int seed = 1; seed <= seeds; seed++) {
+			Random random = new Random(seed);
+			String text = generate(random, megabytes << 20, unicode);
+			byte[] bytes = text.getBytes(charset);
+
+			//the whole file at once
+			write(file, bytes, 0, bytes.length, false);
+			Expected expected = reference(text);
+			MovieStore store = new MovieStore();
+			LoadStats stats = MovieCsvLoader.load(file.getPath(), store);
+			compare("load", expected, store, stats.malformedLines(), stats.malformedLineNumbers());
+
+			//the file as it is appended to, which leaves a last line without
+			//a line break unread
+			int end = lastBoundary(text);
+			Expected complete = reference(text.substring(0, end));
+			MovieStore tailed = new MovieStore();
+			MovieCsvLoader.Position position = new MovieCsvLoader.Position();
+			List<Long> lines = new ArrayList<Long>();
+			long malformed = 0;
+			boolean truncated = false;
+			write(file, bytes, 0, 0, false);
+			int pos = 0;
+			int calls = 0;
+			while (pos < bytes.length) {
+				int step = (random.nextInt(4) == 0) ? 1 + random.nextInt(64)
+						: 1 + random.nextInt(bytes.length / 4 + 1);
+				step = Math.min(step, bytes.length - pos);
+				write(file, bytes, pos, step, true);
+				pos += step;
+				LoadStats tail = MovieCsvLoader.tail(file.getPath(), tailed, position);
+				calls++;
+				malformed += tail.malformedLines();
+				long[] reported = tail.malformedLineNumbers();
+				for (int i = 0; i < reported.length && !truncated; i++) {
+					lines.add(reported[i]);
+				}
+				truncated |= reported.length < tail.malformedLines();
+			}
+			long[] tailLines = new long[lines.size()];
+			for (int i = 0; i < tailLines.length; i++) {
+				tailLines[i] = lines.get(i);
+			}
+			compare("tail", complete, tailed, malformed, tailLines);
+
+			System.out.printf("seed %d: %d bytes, %d chunks, %d rows, %d malformed, "
+					+ "%d tail calls ok%n", seed, bytes.length, stats.chunks(), store.size(),
+					stats.malformedLines(), calls);
+		}
+	}
+
+	//the rows and malformed lines of a load against those of the reference
+	private static void compare(String name, Expected expected, MovieStore store,
+			long malformed, long[] lines) {
+		if (store.size() != expected._rows.size()) {
+			throw new IllegalStateException(name + ": " + store.size() + " rows instead of "
+					+ expected._rows.size());
+		}
+		for (int row = 0; row < store.size(); row++) {
+			MovieStore rows = expected._rows;
+			if (!rows.title(row).equals(store.title(row))
+					|| Double.compare(rows.rating(row), store.rating(row)) != 0
+					|| rows.votes(row) != store.votes(row)
+					|| rows.awards(row) != store.awards(row)) {
+				throw new IllegalStateException(name + ": row " + row + " is " + store.toMovie(row)
+						+ " instead of " + rows.toMovie(row));
+			}
+		}
+		if (malformed != expected._malformed.size()) {
+			throw new IllegalStateException(name + ": " + malformed + " malformed lines instead of "
+					+ expected._malformed.size());
+		}
+		for (int i = 0; i < lines.length; i++) {
+			if (lines[i] != expected._malformed.get(i)) {
+				throw new IllegalStateException(name + ": malformed line " + i + " is " + lines[i]
+						+ " instead of " + expected._malformed.get(i));
+			}
+		}
+	}
+
+	//a header and random records up to about size chars
+	private static String generate(Random random, int size, boolean unicode) {
+		StringBuilder text = new StringBuilder(size + 1024);
+		text.append("Title,Rating,Votes,Awards").append(eol(random));
+		int n = 0;
+		while (text.length() < size) {
+			int kind = random.nextInt(200);
+			if (kind == 0) {
+				text.append(eol(random));
+				continue;
+			}
+			if (kind == 1) {
+				//a pair of stray quotes: the records in between become part
+				//of one malformed record
+				text.append("Stray\"quote ").append(n++).append(",1.0,1,1").append(eol(random));
+				for (int i = random.nextInt(3); i > 0; i--) {
+					record(text, random, n++, unicode);
+				}
+				text.append("Other\"stray,2.0,2,2").append(eol(random));
+				continue;
+			}
+			record(text, random, n++, unicode);
+		}
+		if (random.nextBoolean()) {
+			//a last record without a line break, maybe ending in a lone CR
+			text.append(title(random, n, unicode)).append(",5.0,7,");
+			text.append(random.nextBoolean() ? "1" : "\"1\"");
+			if (random.nextBoolean()) {
+				text.append('\r');
+			}
+		}
+		return text.toString();
+	}
+
+	private static void record(StringBuilder text, Random random, int n, boolean unicode) {
+		text.append(title(random, n, unicode));
+		int fields = 3;
+		int kind = random.nextInt(100);
+		if (kind == 0) {
+			fields = random.nextInt(3);
+		}
+		for (int i = 0; i < fields; i++) {
+			text.append(',');
+			text.append(number(random, i == 0));
+		}
+		if (kind == 1) {
+			text.append(",extra");
+		}
+		else if (kind == 2) {
+			text.append(",\"ab\"c");
+		}
+		text.append(eol(random));
+	}
+
+	private static String title(Random random, int n, boolean unicode) {
+		switch (random.nextInt(20)) {
+		case 0:
+			return "\"Title, The " + n + "\"";
+		case 1:
+			return "\"Say \"\"Hi\"\" " + n + "\"";
+		case 2:
+			return "\"Line one " + n + "\nline two\r\nthree\"";
+		case 3:
+			return random.nextBoolean() ? "" : "\"\"";
+		case 4:
+			return unicode ? "Am\u00e9lie \u4e2d " + n : "Amelie " + n;
+		case 5:
+			//long enough to reach over a chunk boundary now and then
+			StringBuilder title = new StringBuilder("\"Long");
+			for (int i = random.nextInt(random.nextInt(10) == 0 ? 2000 : 100); i > 0; i--) {
+				title.append(random.nextBoolean() ? " a\"\"b\n" : " c,d\r\n");
+			}
+			return title.append('"').toString();
+		case 6:
+			return "\"Closed\"early " + n;
+		default:
+			return "Movie " + n;
+		}
+	}
+
+	private static String number(Random random, boolean rating) {
+		int kind = random.nextInt(12);
+		if (rating) {
+			if (kind == 0) {
+				return DOUBLES[random.nextInt(DOUBLES.length)];
+			}
+			return (kind < 4) ? Double.toString(random.nextDouble() * 1e6)
+					: Integer.toString(random.nextInt(101) - 1) + "." + random.nextInt(10);
+		}
+		if (kind == 0) {
+			return INTS[random.nextInt(INTS.length)];
+		}
+		return Integer.toString(random.nextInt(100000));
+	}
+
+	private static String eol(Random random) {
+		return random.nextBoolean() ? "\n" : "\r\n";
+	}
+
+	//length of the text up to the last line break outside quotes
+	private static int lastBoundary(String text) {
+		boolean quoted = false;
+		int end = 0;
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '"') {
+				quoted = !quoted;
+			}
+			else if (c == '\n' && !quoted) {
+				end = i + 1;
+			}
+		}
+		return end;
+	}
+
+	//rows and malformed line numbers of a file, parsed one record at a time:
+	//a record runs to the first line break outside quotes, the first one is
+	//the header, and blank lines are skipped
+	private static Expected reference(String text) {
+		Expected expected = new Expected();
+		long line = 1;
+		int pos = 0;
+		boolean header = true;
+		while (pos < text.length()) {
+			if (text.startsWith("\n", pos) || text.startsWith("\r\n", pos)) {
+				pos += (text.charAt(pos) == '\n') ? 1 : 2;
+				line++;
+				header = false;
+				continue;
+			}
+			int end = pos;
+			boolean quoted = false;
+			while (end < text.length() && (quoted || text.charAt(end) != '\n')) {
+				if (text.charAt(end) == '"') {
+					quoted = !quoted;
+				}
+				end++;
+			}
+			String record = text.substring(pos, end);
+			boolean complete = end < text.length();
+			long first = line;
+			for (int i = 0; i < record.length(); i++) {
+				if (record.charAt(i) == '\n') {
+					line++;
+				}
+			}
+			if (complete) {
+				line++;
+			}
+			pos = end + 1;
+			if (header) {
+				header = false;
+			}
+			else if (!parse(record, complete, expected._rows)) {
+				expected._malformed.add(first);
+			}
+		}
+		return expected;
+	}
+
+	//splits a record into fields and adds it to rows; returns false if it
+	//is malformed
+	private static boolean parse(String record, boolean complete, MovieStore rows) {
+		List<String> fields = new ArrayList<String>();
+		List<Boolean> escaped = new ArrayList<Boolean>();
+		int n = record.length();
+		int i = 0;
+		while (true) {
+			if (i < n && record.charAt(i) == '"') {
+				StringBuilder value = new StringBuilder();
+				boolean doubled = false;
+				int j = i + 1;
+				while (true) {
+					if (j >= n) {
+						return false;
+					}
+					char c = record.charAt(j);
+					if (c == '"') {
+						if (j + 1 < n && record.charAt(j + 1) == '"') {
+							value.append('"');
+							doubled = true;
+							j += 2;
+							continue;
+						}
+						break;
+					}
+					value.append(c);
+					j++;
+				}
+				j++;
+				//a CR is part of the line break only if a LF follows
+				if (j == n - 1 && record.charAt(j) == '\r' && complete) {
+					j++;
+				}
+				if (j < n && record.charAt(j) != ',') {
+					return false;
+				}
+				fields.add(value.toString());
+				escaped.add(doubled);
+				i = j;
+			}
+			else {
+				int j = record.indexOf(',', i);
+				if (j < 0) {
+					j = n;
+				}
+				String value = record.substring(i, j);
+				if (value.indexOf('"') >= 0) {
+					return false;
+				}
+				if (j == n && value.endsWith("\r")) {
+					value = value.substring(0, value.length() - 1);
+				}
+				fields.add(value);
+				escaped.add(false);
+				i = j;
+			}
+			if (i == n) {
+				break;
+			}
+			i++;
+		}
+		if (fields.size() < 4 || escaped.get(1) || escaped.get(2) || escaped.get(3)) {
+			return false;
+		}
+		try {
+			rows.add(fields.get(0), Double.parseDouble(fields.get(1)),
+					Integer.parseInt(fields.get(2)), Integer.parseInt(fields.get(3)));
+			return true;
+		} catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static void write(File file, byte[] bytes, int offset, int length, boolean append)
+			throws IOException {
+		OutputStream out = new FileOutputStream(file, append);
+		try {
+			out.write(bytes, offset, length);
+		} finally {
+			out.close();
+		}
+	}
+
+	//result of the reference parser
+	private static class Expected {
+		private final MovieStore _rows = new MovieStore();
+		private final List<Long> _malformed = new ArrayList<Long>();
+	}
+}
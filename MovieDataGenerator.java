@@ -0,0 +1,169 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Seeded generator of movie CSV files for benchmarks and load tests, in the
+ * format readMovies() reads. The same seed always produces the same file.
+ * The columns roughly follow real movie databases:
+ * - titles are one to five words drawn from a Zipf law over a small
+ *   vocabulary, so common words repeat, often with a year, and some contain
+ *   commas or quotes and are quoted as in RFC 4180,
+ * - ratings are normal around 6.3, clamped to [1, 10], with one decimal,
+ * - votes are log-normal, so most movies have a few hundred and a few have
+ *   hundreds of thousands,
+ * - awards are mostly zero and more likely for well rated movies.
+ *
+ * Usage: java edu.upenn.cis.cis121.hw5.MovieDataGenerator file rows [seed]
+ */
+public class MovieDataGenerator {
+
+	private static final String[] WORDS = {"the", "of", "a", "love", "night", "man", "last",
+		"day", "story", "house", "war", "dead", "girl", "life", "city", "dark", "return",
+		"king", "world", "blood", "star", "little", "secret", "lost", "black", "home", "time",
+		"american", "christmas", "summer", "road", "game", "moon", "river", "ghost", "dream",
+		"island", "wild", "heart", "shadow", "fire", "kingdom", "angel", "devil", "space",
+		"mountain", "ocean", "silent", "golden", "revenge"};
+
+	private static final long DEFAULT_SEED = 2012L;
+
+	/**
+	 * Writes a CSV file with a header and rows movies.
+	 * @param args - file name, number of rows and optionally the seed
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("Usage: MovieDataGenerator file rows [seed]");
+			return;
+		}
+		long seed = (args.length > 2) ? Long.parseLong(args[2]) : DEFAULT_SEED;
+		long start = System.nanoTime();
+		long bytes = write(args[0], Integer.parseInt(args[1]), seed);
+		System.out.printf("%d bytes in %.1f s%n", bytes, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * Writes a generated CSV file.
+	 * @param file - name of the file; an existing file is replaced
+	 * @param rows - number of movies
+	 * @param seed - seed of the random generator
+	 * @return size of the file in bytes
+	 * @throws IOException
+	 */
+	public static long write(String file, int rows, long seed) throws IOException {
+		if (rows < 0) {
+			throw new IllegalArgumentException("Number of rows is negative.");
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "US-ASCII"), 1 << 16);
+		long bytes = 0;
+		try {
+			String header = "Title,Rating,Votes,Awards\n";
+			out.write(header);
+			bytes += header.length();
+			Random random = new Random(seed);
+			double[] cumulative = zipf(WORDS.length, 1.1);
+			StringBuilder line = new StringBuilder(128);
+			for (int i = 0; i < rows; i++) {
+				line.setLength(0);
+				appendRow(line, random, cumulative);
+				out.write(line.toString());
+				bytes += line.length();
+			}
+		} finally {
+			out.close();
+		}
+		return bytes;
+	}
+
+	//appends one CSV record, including its line break
+	private static void appendRow(StringBuilder line, Random random, double[] cumulative) {
+		StringBuilder title = new StringBuilder(48);
+		int words = 1 + random.nextInt(3) + (random.nextInt(4) == 0 ? 2 : 0);
+		for (int w = 0; w < words; w++) {
+			String word = WORDS[sample(cumulative, random)];
+			if (w > 0) {
+				//one title in ten has a comma, one in fifty a quoted word
+				int r = random.nextInt(100);
+				title.append(r < 10 ? ", " : " ");
+				if (r >= 98) {
+					word = "\"" + word + "\"";
+				}
+			}
+			title.append(Character.toUpperCase(word.charAt(0))).append(word, 1, word.length());
+		}
+		if (random.nextInt(3) > 0) {
+			title.append(" (").append(1920 + random.nextInt(100)).append(')');
+		}
+
+		double rating = Math.max(1.0, Math.min(10.0, 6.3 + 1.2 * random.nextGaussian()));
+		int tenths = (int) Math.round(rating * 10);
+		int votes = (int) Math.min(2000000, Math.exp(5.5 + 1.8 * random.nextGaussian()));
+		int awards = 0;
+		//the better the rating, the more likely each further award
+		double p = Math.max(0.0, (rating - 5.0) / 6.0);
+		while (awards < 20 && random.nextDouble() < p) {
+			awards++;
+		}
+
+		appendTitle(line, title);
+		line.append(',').append(tenths / 10).append('.').append(tenths % 10)
+				.append(',').append(votes).append(',').append(awards).append('\n');
+	}
+
+	private static void appendTitle(StringBuilder line, CharSequence title) {
+		boolean quote = false;
+		for (int i = 0; i < title.length() && !quote; i++) {
+			quote = title.charAt(i) == ',' || title.charAt(i) == '"';
+		}
+		if (!quote) {
+			line.append(title);
+			return;
+		}
+		line.append('"');
+		for (int i = 0; i < title.length(); i++) {
+			char c = title.charAt(i);
+			line.append(c);
+			if (c == '"') {
+				line.append('"');
+			}
+		}
+		line.append('"');
+	}
+
+	//cumulative distribution of a Zipf law over n ranks
+	private static double[] zipf(int n, double exponent) {
+		double[] cumulative = new double[n];
+		double total = 0.0;
+		for (int k = 0; k < n; k++) {
+			total += 1.0 / Math.pow(k + 1, exponent);
+			cumulative[k] = total;
+		}
+		for (int k = 0; k < n; k++) {
+			cumulative[k] /= total;
+		}
+		return cumulative;
+	}
+
+	private static int sample(double[] cumulative, Random random) {
+		int lo = 0;
+		int hi = cumulative.length - 1;
+		double r = random.nextDouble();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (cumulative[mid] < r) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -9,20 +9,65 @@ package edu.upenn.cis.cis121.hw5;
  * 		   CIS 121, Spring 2012
  */
 
-import java.io.BufferedReader;
-import java.io.FileReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
  
 public class MovieFinder {
-	private ArrayList<Movie> _movies;	
+	//an index lookup is used only if it returns at most this fraction of
+	//the rows, since its row ids have to be sorted back into store order
+	private static final double INDEX_MAX_SELECTIVITY = 0.25;
+	//default memory bound of the query cache
+	private static final long DEFAULT_CACHE_BYTES = 32L << 20;
+	//with compression on, rows appended to the encoded rows stay plain
+	//until there are this fraction as many, then all rows are re-encoded
+	private static final double MAX_PLAIN_FRACTION = 0.125;
+	
+	//the data queries run against, replaced as a whole on every change
+	private final AtomicReference<Catalog> _catalog = new AtomicReference<Catalog>();
+	private final QueryCache _cache = new QueryCache(DEFAULT_CACHE_BYTES);
+	private volatile LoadStats _loadStats;
+	
+	//latencies by query shape, and the last trace of each thread
+	private final ConcurrentHashMap<String, LatencyHistogram> _latencies = 
+			new ConcurrentHashMap<String, LatencyHistogram>();
+	private final ThreadLocal<QueryTrace> _lastTrace = new ThreadLocal<QueryTrace>();
+	private volatile boolean _tracing;
+	
+	//writer side: readMovies(), tailMovies(), loadSnapshot(),
+	//setIndexesEnabled() and setCompressionEnabled() hold _writeLock while
+	//they append to _builder and publish a new catalog
+	private final Object _writeLock = new Object();
+	private MovieStore _builder;
+	private boolean _indexing;
+	private boolean _compressing;
+	//how far tailMovies() has read each file, by canonical path
+	private final HashMap<String, MovieCsvLoader.Position> _tails = 
+			new HashMap<String, MovieCsvLoader.Position>();
+	
+	//runs the polling of watchMovies() for all MovieFinders
+	private static ScheduledExecutorService _watcher;
 	
 	/**
 	 * Constructor
 	 */
 	public MovieFinder() {
-		_movies = new ArrayList<Movie>();
+		_builder = new MovieStore();
+		publish(false);
 	}
 	
 	/**
@@ -30,29 +75,270 @@ public class MovieFinder {
 	 * @return list of movies
 	 */
 	public ArrayList<Movie> getAllMovies() {
-		return _movies;
+		MovieStore store = _catalog.get()._store;
+		return toMovies(store, null, 0, store.size());
 	}
 	
 	/**
-	 * Takes the name of a comma-separated (.csv) text file as input and updates
-	 * _movies to include the entire database of movies.  Each line consists of 
+	 * Takes the name of a comma-separated (.csv) text file as input and appends
+	 * its movies to the ones already read.  Each line consists of 
 	 * data for a single movie in the following order: Title, Rating, Votes, Awards.
 	 * The first line of the file consists only of headers and should be skipped.
-	 * @param in_file
+	 * Titles may be quoted as in RFC 4180 to contain commas or quotes. The
+	 * file is parsed in parallel chunks (see MovieCsvLoader); lines that can't
+	 * be parsed are skipped and reported by getLoadStats().
+	 *
+	 * Queries running meanwhile are not blocked and keep seeing the movies
+	 * from before the call; the new movies become visible all at once when
+	 * loading is done.
+	 *
+	 * Only complete lines are read: a last line without a line break may
+	 * still be being written, so it is left for a later tailMovies() of the
+	 * same file, which then only reads what follows the lines read here.
+	 * @param inFile - name of the CSV file
 	 * @throws IOException 
 	 */
 	public void readMovies(String inFile) throws IOException {
-		BufferedReader in = new BufferedReader(new FileReader(inFile));
-		//skip first line
-		in.readLine();
-		while (in.ready()) {
-			String info = in.readLine();
-			String[] movieParts = info.split(",");
-			Movie toAdd = new Movie(movieParts[0], Double.parseDouble(movieParts[1]), 
-					Integer.parseInt(movieParts[2]), Integer.parseInt(movieParts[3]));
-			_movies.add(toAdd);
+		synchronized (_writeLock) {
+			MovieCsvLoader.Position position = new MovieCsvLoader.Position();
+			_loadStats = MovieCsvLoader.load(inFile, _builder, position);
+			_tails.put(new File(inFile).getCanonicalPath(), position);
+			publish(true);
+		}
+	}
+	
+	/**
+	 * Reads the movies appended to a CSV file since the last call for the
+	 * same file, or since readMovies() of it; the first call reads the
+	 * file like readMovies(). Only complete lines are read, so a line that
+	 * is still being written is read by the next call. With indexes enabled,
+	 * the new rows go into small delta indexes (see ColumnIndex and
+	 * TitleIndex), so each call costs time proportional to the new data,
+	 * apart from the occasional call that merges the deltas into the main
+	 * indexes. Calling readMovies() on the same file reads it again from
+	 * the top.
+	 * @param inFile - an append-only CSV file
+	 * @return statistics of this call; bytes() counts the new bytes read
+	 * @throws IOException if the file can't be read or has become shorter
+	 */
+	public LoadStats tailMovies(String inFile) throws IOException {
+		synchronized (_writeLock) {
+			String path = new File(inFile).getCanonicalPath();
+			MovieCsvLoader.Position position = _tails.get(path);
+			if (position == null) {
+				position = new MovieCsvLoader.Position();
+				_tails.put(path, position);
+			}
+			LoadStats stats = MovieCsvLoader.tail(inFile, _builder, position);
+			_loadStats = stats;
+			if (stats.rows() > 0) {
+				publish(true);
+			}
+			return stats;
+		}
+	}
+	
+	/**
+	 * Calls tailMovies(inFile) every period on a background thread, so the
+	 * catalog follows the file. Cancel the returned future to stop. If a
+	 * call fails, polling stops and get() on the future throws the error.
+	 * @param inFile - an append-only CSV file
+	 * @param period - time between two polls
+	 * @param unit - unit of period
+	 * @return the future of the polling task
+	 */
+	public ScheduledFuture<?> watchMovies(final String inFile, long period, TimeUnit unit) {
+		if (inFile == null || unit == null || period <= 0) {
+			throw new IllegalArgumentException("Invalid file or polling period.");
+		}
+		return watcher().scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					tailMovies(inFile);
+				} catch (IOException e) {
+					throw new RuntimeException("Failed to read " + inFile, e);
+				}
+			}
+		}, 0, period, unit);
+	}
+	
+	private static synchronized ScheduledExecutorService watcher() {
+		if (_watcher == null) {
+			_watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "movie-watcher");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _watcher;
+	}
+	
+	/**
+	 * Saves the loaded movies to a binary snapshot file (see MovieSnapshot),
+	 * which loadSnapshot() can reopen much faster than readMovies() parses
+	 * the CSV.
+	 * @param outFile - name of the snapshot file; an existing file is replaced
+	 * @throws IOException
+	 */
+	public void saveSnapshot(String outFile) throws IOException {
+		MovieSnapshot.save(_catalog.get()._store, outFile);
+	}
+	
+	/**
+	 * Replaces the movies with the contents of a snapshot file written by
+	 * saveSnapshot(). The file is memory-mapped and the titles are read from
+	 * it on demand, so it must not be modified while this MovieFinder uses
+	 * it. Later calls to readMovies() append as usual.
+	 * @param inFile - name of the snapshot file
+	 * @throws IOException if the file can't be read or is not a snapshot
+	 */
+	public void loadSnapshot(String inFile) throws IOException {
+		synchronized (_writeLock) {
+			long start = System.nanoTime();
+			_builder = MovieSnapshot.open(inFile);
+			_tails.clear();
+			_loadStats = new LoadStats(_builder.size(), 0, new long[0], 
+					new File(inFile).length(), 1, System.nanoTime() - start);
+			publish(false);
+		}
+	}
+	
+	/**
+	 * Accessor. The cache holds the sorted results of queryMovies() (and so
+	 * of queryMoviesSelect()) and is cleared whenever readMovies() changes
+	 * the data; use setMaxBytes(0) on it to turn it off.
+	 * @return the query cache, with its hit rate and other statistics
+	 */
+	public QueryCache getQueryCache() {
+		return _cache;
+	}
+	
+	/**
+	 * Accessor.
+	 * @return statistics of the last readMovies(), or null if nothing has
+	 * been read
+	 */
+	public LoadStats getLoadStats() {
+		return _loadStats;
+	}
+	
+	/**
+	 * Turns query traces on or off. While enabled, every queryMovies(),
+	 * selectEach() and selectTo() call records a QueryTrace with the rows
+	 * each search step examined and kept, the sort comparisons, the time of
+	 * each phase and the bytes allocated; getLastTrace() returns it.
+	 * Counting the rows per step takes an extra pass over the rows the
+	 * search starts from, so leave tracing off unless diagnosing.
+	 * @param enabled - true to trace queries
+	 */
+	public void setTracingEnabled(boolean enabled) {
+		_tracing = enabled;
+	}
+	
+	/**
+	 * Accessor.
+	 * @return trace of the last queryMovies(), selectEach() or selectTo()
+	 * call made by the calling thread while tracing was enabled, or null
+	 */
+	public QueryTrace getLastTrace() {
+		return _lastTrace.get();
+	}
+	
+	/**
+	 * Accessor. Latencies are always recorded, grouped by the shape of the
+	 * query: the kind of call ("query" for the calls returning all results,
+	 * "slice", "page" or "aggregate"), the search parameters without their
+	 * values, the title predicate kind and the sort fields, e.g.
+	 * "query: rating AT_LEAST ?; votes AT_MOST ?; sort[votes]". The time
+	 * covers finding and ordering the rows, not building Movie objects or
+	 * writing output.
+	 * @return live read-only view of the latency histogram of each shape
+	 */
+	public Map<String, LatencyHistogram> getLatencyHistograms() {
+		return Collections.unmodifiableMap(_latencies);
+	}
+	
+	/**
+	 * Turns the sorted indexes on rating, votes and awards and the title
+	 * index on or off. While enabled, the indexes are rebuilt after every
+	 * readMovies() and the query planner may answer the most selective search
+	 * parameter with a binary search instead of a scan, and a title predicate
+	 * with a lookup in the title index (see TitleIndex).
+	 * @param enabled - true to build and use the indexes
+	 */
+	public void setIndexesEnabled(boolean enabled) {
+		synchronized (_writeLock) {
+			_indexing = enabled;
+			publish(false);
+		}
+	}
+	
+	/**
+	 * Turns compression of the movies on or off. While enabled, the movies
+	 * are kept in compressed columns (see EncodedColumns): votes and awards
+	 * bit-packed relative to their minimum, ratings and titles as bit-packed
+	 * codes into sorted dictionaries of the distinct values, the title
+	 * dictionary front-coded. Search parameters and title predicates are
+	 * tested on the codes, but sorting and returning movies decode them.
+	 * Rows read later are kept uncompressed until they make up an eighth of
+	 * the compressed ones, then all rows are compressed again, so each
+	 * readMovies() or tailMovies() that triggers this costs time
+	 * proportional to all rows.
+	 * Indexes (see setIndexesEnabled()) don't shrink as much: the title
+	 * index of compressed rows is keyed by title code, with the trigrams of
+	 * each distinct title, but each column index still holds an 8-byte key
+	 * and a row id for every row, about 12 bytes per row and field. With
+	 * both on, 1M generated movies take about 75 bytes each instead of 11.
+	 * @param enabled - true to compress the movies
+	 */
+	public void setCompressionEnabled(boolean enabled) {
+		synchronized (_writeLock) {
+			_compressing = enabled;
+			if (!enabled && _builder.isEncoded()) {
+				MovieStore plain = new MovieStore(_builder.size());
+				plain.addAll(_builder);
+				_builder = plain;
+			}
+			publish(false);
+		}
+	}
+	
+	//freezes the rows loaded so far, builds their indexes off to the side
+	//and swaps in the new catalog; if rows were only appended since the
+	//last catalog, its indexes are extended instead of rebuilt. With
+	//compression on, the builder is first re-encoded if too many of its
+	//rows are plain. Called with _writeLock held
+	private void publish(boolean appended) {
+		int plainRows = _builder.size() - _builder.encodedRows();
+		if (_compressing && plainRows > 0 
+				&& (!appended || plainRows > MAX_PLAIN_FRACTION * _builder.encodedRows())) {
+			_builder = MovieStore.encode(_builder);
 		}
-		in.close();
+		MovieStore store = _builder.snapshot();
+		Catalog previous = _catalog.get();
+		ColumnIndex[] indexes = null;
+		TitleIndex titleIndex = null;
+		if (_indexing && appended && previous._indexes != null) {
+			indexes = new ColumnIndex[3];
+			for (int f = 0; f < indexes.length; f++) {
+				ColumnIndex index = previous._indexes[f];
+				indexes[f] = (index == null) ? null : index.append(store);
+			}
+			titleIndex = previous._titleIndex.append(store);
+		}
+		else if (_indexing) {
+			indexes = new ColumnIndex[3];
+			indexes[MovieSorter.RATING] = ColumnIndex.build(store, MovieSorter.RATING);
+			indexes[MovieSorter.VOTES] = ColumnIndex.build(store, MovieSorter.VOTES);
+			indexes[MovieSorter.AWARDS] = ColumnIndex.build(store, MovieSorter.AWARDS);
+			titleIndex = TitleIndex.build(store);
+		}
+		//invalidate first, so queries still on the old catalog can't fill
+		//the cache of the new one
+		long generation = _cache.invalidate();
+		_catalog.set(new Catalog(store, indexes, titleIndex, generation));
 	}
 	
 	/**
@@ -64,6 +350,492 @@ public class MovieFinder {
 	 */
 	public ArrayList<Movie> queryMovies(MovieQuery query) {
 		
+		return queryMovies(query, (TitlePredicate) null);
+	}
+	
+	/**
+	 * Like queryMovies(query), but only returns the movies whose title also
+	 * matches a title predicate.
+	 * @param query
+	 * @param title - condition on the title, or null for none
+	 * @return list of movies satisfying query and title in the order
+	 * specified by query
+	 */
+	public ArrayList<Movie> queryMovies(MovieQuery query, TitlePredicate title) {
+		
+		validate(query);
+		Catalog catalog = _catalog.get();
+		int[] rows = sortedRows(catalog, query, title);
+		return toMovies(catalog._store, rows, 0, rows.length);
+	}
+	
+	/**
+	 * Streams the results of queryMovies(query) to a consumer without
+	 * creating Movie objects: the consumer reads the fields it needs from a
+	 * reused MovieRow, with the numbers straight from the columns.
+	 * @param query
+	 * @param consumer - receives the rows in query order
+	 * @return number of rows the consumer accepted
+	 */
+	public int selectEach(MovieQuery query, MovieRowConsumer consumer) {
+		
+		validate(query);
+		if (consumer == null) {
+			throw new IllegalArgumentException("Consumer is null.");
+		}
+		Catalog catalog = _catalog.get();
+		int[] rows = sortedRows(catalog, query, null);
+		MovieRow row = new MovieRow(catalog._store);
+		for (int i = 0; i < rows.length; i++) {
+			row.moveTo(rows[i], i);
+			if (!consumer.accept(row)) {
+				return i + 1;
+			}
+		}
+		return rows.length;
+	}
+	
+	/**
+	 * Writes the results of a query as CSV or JSON, with the fields named by
+	 * the select parameters of the query. Unlike queryMoviesSelect(), RATING
+	 * can be selected, and no Strings are built for the numeric fields. Apart
+	 * from the result row ids (4 bytes per movie), memory use doesn't grow
+	 * with the number of results.
+	 * @param query
+	 * @param format - output format
+	 * @param out - where to write; it is neither flushed nor closed
+	 * @return number of movies written
+	 * @throws IOException if out fails
+	 */
+	public int selectTo(MovieQuery query, ResultFormat format, Writer out) throws IOException {
+		
+		validate(query);
+		if (out == null) {
+			throw new IllegalArgumentException("Output is null.");
+		}
+		ResultWriter writer = new ResultWriter(out, format, query.selectParams());
+		Catalog catalog = _catalog.get();
+		int[] rows = sortedRows(catalog, query, null);
+		writer.begin();
+		for (int i = 0; i < rows.length; i++) {
+			writer.write(catalog._store, rows[i]);
+		}
+		writer.end();
+		return rows.length;
+	}
+	
+	/**
+	 * Like selectTo(query, format, Writer), but writes UTF-8 to a channel,
+	 * e.g. a socket or file, through a byte buffer.
+	 * @param query
+	 * @param format - output format
+	 * @param out - where to write; it is not closed
+	 * @return number of movies written
+	 * @throws IOException if out fails
+	 */
+	public int selectTo(MovieQuery query, ResultFormat format, WritableByteChannel out)
+			throws IOException {
+		if (out == null) {
+			throw new IllegalArgumentException("Output is null.");
+		}
+		Writer writer = Channels.newWriter(out, "UTF-8");
+		int count = selectTo(query, format, writer);
+		writer.flush();
+		return count;
+	}
+	
+	/**
+	 * Runs a validated query, from the cache if possible.
+	 * @param catalog - data to run the query against
+	 * @param query
+	 * @param title - title predicate, or null
+	 * @return ids of the result rows in query order; the array may be shared
+	 * with the cache and must not be modified
+	 */
+	private int[] sortedRows(Catalog catalog, MovieQuery query, TitlePredicate title) {
+		long start = System.nanoTime();
+		Predicate[] predicates = Predicate.compile(query);
+		MovieSorter sorter = new MovieSorter(query.sortParams());
+		String shape = QueryTrace.shape("query", predicates, title, sorter);
+		QueryTrace trace = _tracing ? new QueryTrace(shape) : null;
+		String key = QueryCache.key(predicates, title, sorter);
+		int[] cached = _cache.get(key, catalog._generation);
+		if (cached != null) {
+			if (trace != null) {
+				trace.setCacheHit();
+			}
+			record(shape, start, trace, cached.length);
+			return cached;
+		}
+		RowSet rows = search(catalog, predicates, title, query.sortParams(), trace);
+
+		//sort the row ids with the compiled sort parameters
+		long sortStart = System.nanoTime();
+		long comparisons = sorter.sort(catalog._store, rows._rows, rows._size);
+		if (trace != null) {
+			trace.setSort(comparisons, System.nanoTime() - sortStart);
+		}
+		
+		int[] sorted = Arrays.copyOf(rows._rows, rows._size);
+		_cache.put(key, sorted, catalog._generation);
+		record(shape, start, trace, sorted.length);
+		return sorted;
+	}
+	
+	//records the latency of a query under its shape, and its trace if any
+	private void record(String shape, long start, QueryTrace trace, int resultRows) {
+		long nanos = System.nanoTime() - start;
+		LatencyHistogram histogram = _latencies.get(shape);
+		if (histogram == null) {
+			_latencies.putIfAbsent(shape, new LatencyHistogram());
+			histogram = _latencies.get(shape);
+		}
+		histogram.record(nanos);
+		if (trace != null) {
+			trace.finish(resultRows);
+			_lastTrace.set(trace);
+		}
+	}
+	
+	/**
+	 * Returns one slice of the results of queryMovies(query) without sorting
+	 * all of them: the first offset + limit movies are picked with a bounded
+	 * heap. For deep pages use queryMoviesPage(), whose cost doesn't grow
+	 * with the offset.
+	 * @param query
+	 * @param offset - number of leading results to skip
+	 * @param limit - maximum number of results to return
+	 * @return up to limit movies starting at position offset of the results
+	 */
+	public ArrayList<Movie> queryMovies(MovieQuery query, int offset, int limit) {
+		
+		validate(query);
+		if (offset < 0 || limit < 0) {
+			throw new IllegalArgumentException("Offset and limit must not be negative.");
+		}
+		long start = System.nanoTime();
+		Catalog catalog = _catalog.get();
+		Predicate[] predicates = Predicate.compile(query);
+		MovieSorter sorter = new MovieSorter(query.sortParams());
+		String shape = QueryTrace.shape("slice", predicates, null, sorter);
+		int[] cached = _cache.get(QueryCache.key(predicates, null, sorter), catalog._generation);
+		if (cached != null) {
+			record(shape, start, null, cached.length);
+			return toMovies(catalog._store, cached, Math.min(offset, cached.length), 
+					(int) Math.min(cached.length, (long) offset + limit));
+		}
+		RowSet rows = search(catalog, predicates, null, query.sortParams(), null);
+		int k = (int) Math.min(rows._size, (long) offset + limit);
+		int[] top = sorter.top(catalog._store, rows._rows, rows._size, k);
+		record(shape, start, null, top.length);
+		return toMovies(catalog._store, top, Math.min(offset, top.length), top.length);
+	}
+	
+	/**
+	 * Returns the first page of the results of queryMovies(query).
+	 * @param query
+	 * @param pageSize - maximum number of movies on the page
+	 * @return the page and the cursor for the next one
+	 */
+	public MoviePage queryMoviesPage(MovieQuery query, int pageSize) {
+		return queryMoviesPage(query, null, pageSize);
+	}
+	
+	/**
+	 * Returns the page of the results of queryMovies(query) that follows a
+	 * cursor (keyset pagination). Only the rows after the cursor are ranked,
+	 * with a heap of pageSize entries, so every page costs about as much as
+	 * the first.
+	 * @param query
+	 * @param after - cursor returned with the previous page, or null for the
+	 * first page
+	 * @param pageSize - maximum number of movies on the page
+	 * @return the page and the cursor for the next one
+	 */
+	public MoviePage queryMoviesPage(MovieQuery query, PageCursor after, int pageSize) {
+		
+		validate(query);
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("Page size must be positive.");
+		}
+		long start = System.nanoTime();
+		Catalog catalog = _catalog.get();
+		MovieStore store = catalog._store;
+		Predicate[] predicates = Predicate.compile(query);
+		MovieSorter sorter = new MovieSorter(query.sortParams());
+		RowSet rows = search(catalog, predicates, null, query.sortParams(), null);
+		int numRows = rows._size;
+		if (after != null) {
+			numRows = sorter.retainAfter(store, rows._rows, numRows, after);
+		}
+		int[] top = sorter.top(store, rows._rows, numRows, pageSize);
+		PageCursor next = (numRows > pageSize) ? sorter.cursor(store, top[top.length - 1]) : null;
+		record(QueryTrace.shape("page", predicates, null, sorter), start, null, top.length);
+		return new MoviePage(toMovies(store, top, 0, top.length), next);
+	}
+	
+	/**
+	 * Aggregates a field over the movies matching the search parameters of
+	 * a query, e.g. the average rating per number of awards (see
+	 * Aggregation). The rows are aggregated in one pass, in parallel for
+	 * large catalogs, without sorting them or creating Movie objects; the
+	 * sort and select parameters of the query are ignored.
+	 * @param query
+	 * @param aggregation - what to compute
+	 * @return the totals and the statistics of each group
+	 */
+	public AggregateResult aggregate(MovieQuery query, Aggregation aggregation) {
+		
+		validate(query);
+		if (aggregation == null) {
+			throw new IllegalArgumentException("Aggregation is null.");
+		}
+		long start = System.nanoTime();
+		Catalog catalog = _catalog.get();
+		MovieStore store = catalog._store;
+		Predicate[] predicates = Predicate.compile(query);
+		QueryPlan plan = plan(catalog, predicates, null, new String[0]);
+		RowFilter filter = new RowFilter(plan.filters());
+		AggregateResult result;
+		if (plan.isEmpty() || filter.isEmpty()) {
+			result = aggregation.aggregate(store, new int[0], 0);
+		}
+		else if (plan.usesIndex()) {
+			//selective index lookups are filtered and aggregated as a list, 
+			//everything else in the fused scan
+			int[] rows = catalog._indexes[plan.access()._field].rows(plan.access());
+			result = aggregation.aggregate(store, rows, filter.filter(store, rows, rows.length));
+		}
+		else {
+			result = aggregation.aggregate(store, filter);
+		}
+		record(QueryTrace.shape("aggregate", predicates, null, null), start, null, 
+				(int) Math.min(Integer.MAX_VALUE, result.count()));
+		return result;
+	}
+	
+	/**
+	 * Plans and runs the search parameters of a validated query.
+	 * @param catalog - data to search
+	 * @param predicates - compiled search parameters
+	 * @param title - title predicate, or null
+	 * @param sortParams - sort parameters, for the plan
+	 * @param trace - trace to record the plan and steps in, or null
+	 * @return ids of the matching rows in store order
+	 */
+	private RowSet search(Catalog catalog, Predicate[] predicates, TitlePredicate title, 
+			String[] sortParams, QueryTrace trace) {
+		MovieStore store = catalog._store;
+		long start = System.nanoTime();
+		QueryPlan plan = plan(catalog, predicates, title, sortParams);
+		if (trace != null) {
+			trace.setPlan(plan, System.nanoTime() - start);
+			start = System.nanoTime();
+		}
+		RowFilter filter = new RowFilter(plan.filters());
+		if (plan.isEmpty() || filter.isEmpty()) {
+			return RowSet.EMPTY;
+		}
+		
+		//start from an index lookup or from all rows, and apply the
+		//remaining search parameters in one pass
+		int[] rows;
+		int numRows;
+		long traceNanos = 0;
+		if (plan.usesIndex()) {
+			rows = (plan.titleRows() != null) ? plan.titleRows() 
+					: catalog._indexes[plan.access()._field].rows(plan.access());
+			if (trace != null) {
+				traceNanos = traceSteps(trace, plan, filter, store, rows, rows.length);
+			}
+			numRows = filter.filter(store, rows, rows.length);
+		}
+		else {
+			if (trace != null) {
+				traceNanos = traceSteps(trace, plan, filter, store, null, store.size());
+			}
+			rows = RowBuffer.get(store.size());
+			numRows = filter.scan(store, rows);
+		}
+		
+		//title predicates without the title index are checked last, on the
+		//rows left after the cheap numeric filters
+		if (title != null && plan.titleRows() == null) {
+			int matched = filterTitles(store, title, rows, numRows);
+			if (trace != null) {
+				trace.addStep("FILTER " + title, numRows, matched);
+			}
+			numRows = matched;
+		}
+		if (trace != null) {
+			trace.setSearchNanos(System.nanoTime() - start - traceNanos);
+		}
+		return new RowSet(rows, numRows);
+	}
+	
+	/**
+	 * Filters row ids in place by a title predicate. If many of the rows
+	 * are encoded, the predicate is evaluated once per distinct title
+	 * instead of once per row.
+	 * @param store - the store the rows belong to
+	 * @param title - the predicate
+	 * @param rows - row ids; the matching ones are moved to the front
+	 * @param numRows - number of row ids
+	 * @return number of matching rows
+	 */
+	private static int filterTitles(MovieStore store, TitlePredicate title, int[] rows, 
+			int numRows) {
+		EncodedColumns encoded = store.encoded();
+		boolean[] codeMatches = null;
+		PackedInts codes = null;
+		if (encoded != null && numRows >= encoded.distinctTitles() / 4) {
+			codeMatches = encoded.matchTitles(title);
+			codes = encoded.titleCodes();
+		}
+		int base = store.encodedRows();
+		int matched = 0;
+		for (int i = 0; i < numRows; i++) {
+			int row = rows[i];
+			if ((codeMatches != null && row < base) ? codeMatches[(int) codes.get(row)]
+					: title.matches(store.title(row))) {
+				rows[matched++] = row;
+			}
+		}
+		return matched;
+	}
+	
+	/**
+	 * Adds the access step of a plan and the rows passing the test of each
+	 * field to a trace.
+	 * @param trace - the trace
+	 * @param plan - the plan being run
+	 * @param filter - the compiled filters of the plan
+	 * @param store - the store searched
+	 * @param rows - rows returned by the access step, or null for all rows
+	 * @param numRows - number of those rows
+	 * @return time this took in nanoseconds, which is not search time
+	 */
+	private static long traceSteps(QueryTrace trace, QueryPlan plan, RowFilter filter, 
+			MovieStore store, int[] rows, int numRows) {
+		long start = System.nanoTime();
+		String access = "FULL SCAN";
+		if (plan.titleRows() != null) {
+			access = "TITLE INDEX LOOKUP " + plan.title();
+		}
+		else if (plan.usesIndex()) {
+			access = "INDEX LOOKUP " + plan.access();
+		}
+		trace.addStep(access, store.size(), numRows);
+		long[] passed = filter.countPassed(store, rows, numRows);
+		long in = numRows;
+		for (int f = 0; f < passed.length; f++) {
+			if (passed[f] >= 0) {
+				trace.addStep("FILTER " + filter.describe(f), in, passed[f]);
+				in = passed[f];
+			}
+		}
+		return System.nanoTime() - start;
+	}
+	
+	/**
+	 * Returns the plan queryMovies() would use for a query, without running
+	 * it.
+	 * @param query
+	 * @return the plan; its toString() describes each step
+	 */
+	public QueryPlan explain(MovieQuery query) {
+		return explain(query, null);
+	}
+	
+	/**
+	 * Returns the plan queryMovies(query, title) would use, without running
+	 * the numeric part of it. A lookup in the title index is part of
+	 * planning, since its exact number of rows decides the plan.
+	 * @param query
+	 * @param title - title predicate, or null for none
+	 * @return the plan; its toString() describes each step
+	 */
+	public QueryPlan explain(MovieQuery query, TitlePredicate title) {
+		validate(query);
+		return plan(_catalog.get(), Predicate.compile(query), title, query.sortParams());
+	}
+	
+	/**
+	 * Chooses how to evaluate the search parameters. Every predicate on an
+	 * indexed field gets an exact match count from its index; the one with
+	 * the fewest matches becomes the index lookup if it is selective enough,
+	 * and the rest are applied as filters, fewest matches first. A title
+	 * predicate is looked up in the title index if there is one, and that
+	 * lookup replaces the numeric one if it returns no more rows.
+	 * @param catalog - data to plan for
+	 * @param predicates - compiled search parameters
+	 * @param title - title predicate, or null
+	 * @param sortParams - sort parameters, for explain output
+	 * @return the plan
+	 */
+	private QueryPlan plan(Catalog catalog, Predicate[] predicates, TitlePredicate title, 
+			String[] sortParams) {
+		ColumnIndex[] indexes = catalog._indexes;
+		int numRows = catalog._store.size();
+		int[] estimates = new int[predicates.length];
+		int best = -1;
+		for (int i = 0; i < predicates.length; i++) {
+			ColumnIndex index = (indexes == null) ? null : indexes[predicates[i]._field];
+			estimates[i] = (index == null) ? -1 : index.count(predicates[i]);
+			if (estimates[i] >= 0 && (best < 0 || estimates[i] < estimates[best])) {
+				best = i;
+			}
+		}
+		if (best >= 0 && estimates[best] > numRows * INDEX_MAX_SELECTIVITY) {
+			best = -1;
+		}
+		int[] titleRows = null;
+		if (title != null && catalog._titleIndex != null) {
+			titleRows = catalog._titleIndex.rows(title);
+			if (best >= 0 && estimates[best] < titleRows.length) {
+				titleRows = null;
+			}
+			else {
+				best = -1;
+			}
+		}
+		
+		//the remaining predicates, stable sorted by estimate with unknown
+		//estimates last
+		int numFilters = predicates.length - (best < 0 ? 0 : 1);
+		Predicate[] filters = new Predicate[numFilters];
+		int[] filterEstimates = new int[numFilters];
+		int k = 0;
+		for (int i = 0; i < predicates.length; i++) {
+			if (i == best) {
+				continue;
+			}
+			long key = estimates[i] < 0 ? Long.MAX_VALUE : estimates[i];
+			int j = k++;
+			while (j > 0 && (filterEstimates[j - 1] < 0 ? Long.MAX_VALUE : filterEstimates[j - 1]) > key) {
+				filters[j] = filters[j - 1];
+				filterEstimates[j] = filterEstimates[j - 1];
+				j--;
+			}
+			filters[j] = predicates[i];
+			filterEstimates[j] = estimates[i];
+		}
+		
+		if (best < 0) {
+			return new QueryPlan(null, numRows, filters, filterEstimates, numRows, sortParams,
+					title, titleRows);
+		}
+		return new QueryPlan(predicates[best], estimates[best], filters, filterEstimates, 
+				numRows, sortParams, title, titleRows);
+	}
+	
+	/**
+	 * Checks the search and sort parameters of a query.
+	 * @param query
+	 * @throws IllegalArgumentException if the query is null or invalid
+	 */
+	private void validate(MovieQuery query) {
+		
 		if (query == null) {
 			throw new IllegalArgumentException("Input query is null.");
 		}
@@ -98,133 +870,22 @@ public class MovieFinder {
 				throw new IllegalArgumentException("Invalid inputs in searchOperators.");
 			}
 		}
-		
-		ArrayList<Movie> result = _movies;
-
-		//filter out the results according to the search parameters
-		for (int i = 0; i < searchParams.length; i++) {
-			result = filterSearch(query, searchParams[i], i, result);
-		}
-
-		//sort the list using a modified version of insertion sort
-		for (int i = 1; i < result.size(); i++) {
-			int x = i;
-			while (x > 0 && toSwap(query, 0, result.get(x-1), result.get(x))) {
-				Movie temp = result.get(x);
-				result.set(x, result.get(x - 1));
-				result.set(x - 1, temp);
-				x--;
-			}
-		}
-		
-		return result;
 	}
 	
 	/**
-	 * Takes a MovieQuery object as input and returns a boolean value to 
-	 * determine if the two movies being compared should have their positioned 
-	 * swapped. 
-	 * @param query - contains all relevant searching and sorting information
-	 * @param n - current index of the search
-	 * @param current - one of the movies being compared
-	 * @param old - other movie being compared
-	 * @return boolean value depending on whether to swap the positions of the 
-	 * movies or not
-	 */
-	private boolean toSwap(MovieQuery query, int n, Movie old, Movie current) {
-		
-		String[] sortParams = query.sortParams();
-		boolean output = false;
-		
-		//return false if no more parameters to compare with after traversing 
-		//through all the options (i.e. don't swap)
-		if (n >= query.sortParams().length) { 
-			return false;
-		}
-		
-		//swap if in wrong order
-		//if equal, compare with next sorting parameter recursively
-		if (sortParams[n].equals(MovieQuery.AWARDS)) {
-			if (current.getAwards() > old.getAwards()) {
-				output = true;
-			}
-			else if (current.getAwards() == old.getAwards()) {
-				output = toSwap(query, n + 1, old, current);
-			}
-		}
-
-		else if (sortParams[n].equals(MovieQuery.RATING)) {
-			if (current.getRating() > old.getRating()) {
-				output = true;
-			}
-			else if (current.getRating() == old.getRating()) {
-				output = toSwap(query, n + 1, old, current);
-			}
-		}
-
-		else if (sortParams[n].equals(MovieQuery.VOTES)) {
-			if (current.getVotes() > old.getVotes()) {
-				output = true;
-			}
-			else if (current.getVotes() == old.getVotes()) {
-				output = toSwap(query, n + 1, old, current);
-			}
-		}
-		return output; 
-	}
-
-	/**
-	 * Takes in a MovieQuery and returns an ArrayList of movies that are 
-	 * filtered according to the current searchParam.
-	 * @param query - contains all relevant searching and sorting information
-	 * @param type - the type of "rating" being used
-	 * @param count - the index of the parameter
-	 * @param list - list of all the movies
-	 * @return list of movies satisfying query in the order specified by query
+	 * Creates Movie objects for a range of a list of row ids.
+	 * @param store - store holding the rows
+	 * @param rows - row ids, or null for the rows of the store in order
+	 * @param from - first position
+	 * @param to - position after the last one
+	 * @return list of movies in the order of rows
 	 */
-
-	private ArrayList<Movie> filterSearch(MovieQuery query, String type, 
-			int count, ArrayList<Movie> list) {
-
-		String[] searchOperators = query.searchOperators();
-		ArrayList<Movie> returnList = new ArrayList<Movie>();
-		Iterator<Movie> itr = list.iterator();
-
-		while (itr.hasNext()) {
-
-			Movie current = itr.next();
-			double compare = 0.0;
-			
-			//gets the value of the appropriate rating of the current movie
-			if (type.equals(MovieQuery.RATING)) {
-				compare = current.getRating();
-			}
-			else if (type.equals(MovieQuery.AWARDS)) {
-				compare = current.getAwards(); 
-			}
-			else if (type.equals(MovieQuery.VOTES)) {
-				compare = current.getVotes(); 
-			}
-
-			//checks to see if it should be added into the list
-			if (searchOperators[count].equals(MovieQuery.AT_LEAST)) {
-				if (compare >= query.searchOperatorVals()[count]) {
-					returnList.add(current);
-				}
-			}
-			else if (searchOperators[count].equals(MovieQuery.AT_MOST)) {
-				if (compare <= query.searchOperatorVals()[count]) {
-					returnList.add(current);
-				}
-			}
-			else if (searchOperators[count].equals(MovieQuery.EQUAL_TO)) {
-				if (compare == query.searchOperatorVals()[count]) {
-					returnList.add(current);
-				}
-			}
+	private static ArrayList<Movie> toMovies(MovieStore store, int[] rows, int from, int to) {
+		ArrayList<Movie> movies = new ArrayList<Movie>(to - from);
+		for (int i = from; i < to; i++) {
+			movies.add(store.toMovie((rows == null) ? i : rows[i]));
 		}
-
-		return returnList;
+		return movies;
 	}
 	
 	/**
@@ -240,9 +901,32 @@ public class MovieFinder {
 		
 		
 		String[] selectParams = query.selectParams();
-		String[][] returnArray;
 		//filter movies
-		ArrayList<Movie> filtered = queryMovies(query);
+		return select(selectParams, queryMovies(query));
+	}
+	
+	/**
+	 * Like queryMoviesSelect(query), but only for the slice of the results
+	 * that queryMovies(query, offset, limit) returns, so only those rows are
+	 * turned into Strings.
+	 * @param query
+	 * @param offset - number of leading results to skip
+	 * @param limit - maximum number of results to return
+	 * @return selected parameters of up to limit movies
+	 */
+	public String[][] queryMoviesSelect(MovieQuery query, int offset, int limit) {
+		String[] selectParams = query.selectParams();
+		return select(selectParams, queryMovies(query, offset, limit));
+	}
+	
+	/**
+	 * Builds the select output for a list of movies.
+	 * @param selectParams - fields to select
+	 * @param filtered - movies in result order
+	 * @return one row of Strings per movie
+	 */
+	private String[][] select(String[] selectParams, ArrayList<Movie> filtered) {
+		String[][] returnArray;
 		int first = filtered.size();
 		
 		//filters the list of selectParameters
@@ -281,4 +965,4 @@ public class MovieFinder {
 		
 		return returnArray;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
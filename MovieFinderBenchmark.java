@@ -0,0 +1,329 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Benchmark harness for MovieFinder. It generates a seeded catalog with
+ * MovieDataGenerator, then times loading and filter-only, sort-only,
+ * filter+sort and select queries, each at several selectivities, with a
+ * full scan, with a full scan of the compressed columns ("packed") and
+ * with indexes, and the same filters over a plain ArrayList<Movie> as a
+ * baseline. Every case is warmed up and then run a number
+ * of times; for each it prints the number of result rows, throughput in
+ * operations per second, the 50th, 90th and 99th percentile latency and the
+ * allocation rate of all threads, which includes the worker threads of
+ * parallel scans and sorts.
+ *
+ * Finally it prints the heap taken by the movies as an ArrayList<Movie>,
+ * as plain columns and compressed, each with and without indexes, measured
+ * as the growth of the used heap after a full GC, so run it with a heap
+ * large enough for all of them.
+ *
+ * The query cache is turned off so that every run does the full work.
+ * Selectivities are turned into vote thresholds from the generated data, so
+ * a 1% filter returns about 1% of the movies.
+ *
+ * Usage: java edu.upenn.cis.cis121.hw5.MovieFinderBenchmark [rows] [iterations]
+ */
+public class MovieFinderBenchmark {
+
+	private static final long SEED = 121L;
+	private static final double[] SELECTIVITIES = {0.001, 0.01, 0.1, 0.5};
+	private static final String[] NONE = new String[0];
+
+	//results are folded into this field so the JIT cannot drop the work
+	private static volatile long _sink;
+
+	/**
+	 * Runs every benchmark case and prints one line per case.
+	 * @param args - optional number of movies and number of timed iterations
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		int rows = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+		int iterations = (args.length > 1) ? Integer.parseInt(args[1]) : 20;
+
+		File file = File.createTempFile("movies", ".csv");
+		file.deleteOnExit();
+		final String path = file.getPath();
+		long bytes = MovieDataGenerator.write(path, rows, SEED);
+
+		System.out.printf("%-32s %-8s %9s %10s %10s %10s %10s %12s%n", "case", "plan",
+				"rows", "ops/s", "p50 ms", "p90 ms", "p99 ms", "alloc MB/s");
+
+		measure(new Case("readMovies " + (bytes >> 20) + " MB", "-") {
+			long run() throws IOException {
+				MovieFinder finder = new MovieFinder();
+				finder.readMovies(path);
+				return finder.getLoadStats().rows();
+			}
+		}, Math.max(3, iterations / 4));
+
+		MovieFinder finder = new MovieFinder();
+		finder.readMovies(path);
+		finder.getQueryCache().setMaxBytes(0);
+		double[] thresholds = voteThresholds(finder);
+
+		queryCases(finder, "scan", thresholds, iterations);
+		finder.setCompressionEnabled(true);
+		queryCases(finder, "packed", thresholds, iterations);
+		finder.setCompressionEnabled(false);
+		finder.setIndexesEnabled(true);
+		queryCases(finder, "indexed", thresholds, iterations);
+		listCases(finder.getAllMovies(), thresholds, iterations);
+		finder = null;
+		memoryCases(path);
+	}
+
+	//the filters of queryCases() as a loop over a list of movies
+	private static void listCases(final ArrayList<Movie> movies, double[] thresholds, 
+			int iterations) throws IOException {
+		for (int i = 0; i < SELECTIVITIES.length; i++) {
+			final double threshold = thresholds[i];
+			measure(new Case(String.format("filter-only %.1f%%", 100 * SELECTIVITIES[i]), "list") {
+				long run() {
+					ArrayList<Movie> result = new ArrayList<Movie>();
+					for (Movie movie : movies) {
+						if (movie.getVotes() >= threshold) {
+							result.add(movie);
+						}
+					}
+					return result.size();
+				}
+			}, iterations);
+		}
+	}
+
+	private static void memoryCases(String path) throws IOException {
+		long plainBytes = finderBytes(path, false, false);
+		long indexedBytes = finderBytes(path, false, true);
+		long compressedIndexedBytes = finderBytes(path, true, true);
+
+		long before = usedHeap();
+		MovieFinder compressed = new MovieFinder();
+		compressed.setCompressionEnabled(true);
+		compressed.readMovies(path);
+		long compressedBytes = usedHeap() - before;
+
+		//movies decoded from the compressed store get titles of their own,
+		//like movies parsed from the file one object at a time
+		before = usedHeap();
+		ArrayList<Movie> movies = compressed.getAllMovies();
+		long listBytes = usedHeap() - before;
+
+		int rows = movies.size();
+		_sink += rows;
+		System.out.printf("%n%-32s %12s %14s%n", "memory", "MB", "bytes/movie");
+		printMemory("ArrayList<Movie>", listBytes, rows);
+		printMemory("columns", plainBytes, rows);
+		printMemory("columns + indexes", indexedBytes, rows);
+		printMemory("compressed columns", compressedBytes, rows);
+		printMemory("compressed columns + indexes", compressedIndexedBytes, rows);
+	}
+
+	//heap taken by a finder holding the movies of path
+	private static long finderBytes(String path, boolean compressed, boolean indexed) 
+			throws IOException {
+		long before = usedHeap();
+		MovieFinder finder = new MovieFinder();
+		finder.setCompressionEnabled(compressed);
+		finder.setIndexesEnabled(indexed);
+		finder.readMovies(path);
+		long bytes = usedHeap() - before;
+		_sink += finder.getLoadStats().rows();
+		return bytes;
+	}
+
+	private static void printMemory(String name, long bytes, int rows) {
+		System.out.printf("%-32s %12.1f %14.1f%n", name, bytes / (double) (1 << 20), 
+				bytes / (double) Math.max(rows, 1));
+	}
+
+	//used heap after collecting garbage until it stops shrinking
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		long used = Long.MAX_VALUE;
+		for (int i = 0; i < 10; i++) {
+			System.gc();
+			long now = runtime.totalMemory() - runtime.freeMemory();
+			if (now >= used) {
+				break;
+			}
+			used = now;
+		}
+		return used;
+	}
+
+	private static void queryCases(final MovieFinder finder, String plan, double[] thresholds,
+			int iterations) throws IOException {
+		String[] sortParams = {MovieQuery.RATING, MovieQuery.VOTES};
+		String[] selectParams = {MovieQuery.TITLE, MovieQuery.VOTES};
+
+		measure(queryCase("sort-only", plan, finder, new BenchmarkQuery(NONE, NONE, 
+				new double[0], sortParams, NONE)), iterations);
+		for (int i = 0; i < SELECTIVITIES.length; i++) {
+			String selectivity = String.format(" %.1f%%", 100 * SELECTIVITIES[i]);
+			measure(queryCase("filter-only" + selectivity, plan, finder, 
+					votesAtLeast(thresholds[i], NONE, NONE)), iterations);
+			measure(queryCase("filter+sort" + selectivity, plan, finder, 
+					votesAtLeast(thresholds[i], sortParams, NONE)), iterations);
+			final MovieQuery select = votesAtLeast(thresholds[i], sortParams, selectParams);
+			measure(new Case("select" + selectivity, plan) {
+				long run() {
+					return finder.queryMoviesSelect(select).length;
+				}
+			}, iterations);
+		}
+	}
+
+	private static Case queryCase(String name, String plan, final MovieFinder finder, 
+			final MovieQuery query) {
+		return new Case(name, plan) {
+			long run() {
+				return finder.queryMovies(query).size();
+			}
+		};
+	}
+
+	private static MovieQuery votesAtLeast(double votes, String[] sortParams, String[] selectParams) {
+		return new BenchmarkQuery(new String[] {MovieQuery.VOTES}, 
+				new String[] {MovieQuery.AT_LEAST}, new double[] {votes}, sortParams, selectParams);
+	}
+
+	//vote counts that about SELECTIVITIES[i] of the movies reach
+	private static double[] voteThresholds(MovieFinder finder) {
+		ArrayList<Movie> movies = finder.getAllMovies();
+		int[] votes = new int[movies.size()];
+		for (int i = 0; i < votes.length; i++) {
+			votes[i] = movies.get(i).getVotes();
+		}
+		Arrays.sort(votes);
+		double[] thresholds = new double[SELECTIVITIES.length];
+		for (int i = 0; i < thresholds.length; i++) {
+			int pos = (int) Math.max(0, Math.min(votes.length - 1, 
+					Math.round(votes.length * (1 - SELECTIVITIES[i]))));
+			thresholds[i] = (votes.length == 0) ? 0 : votes[pos];
+		}
+		return thresholds;
+	}
+
+	/**
+	 * Warms up and times a case, then prints its line of results.
+	 * @param benchmark - case to run
+	 * @param iterations - number of timed runs
+	 * @throws IOException
+	 */
+	static void measure(Case benchmark, int iterations) throws IOException {
+		long result = 0;
+		for (int i = 0; i < Math.max(iterations / 2, 3); i++) {
+			result += benchmark.run();
+		}
+
+		long[] latencies = new long[iterations];
+		long output = 0;
+		long allocStart = allocatedBytes();
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			long runStart = System.nanoTime();
+			output = benchmark.run();
+			latencies[i] = System.nanoTime() - runStart;
+			result += output;
+		}
+		long nanos = Math.max(System.nanoTime() - start, 1);
+		long allocEnd = allocatedBytes();
+		_sink += result;
+
+		double seconds = nanos / 1e9;
+		Arrays.sort(latencies);
+		String alloc = (allocStart < 0) ? "n/a"
+				: String.format("%.1f", (allocEnd - allocStart) / (double) (1 << 20) / seconds);
+		System.out.printf("%-32s %-8s %9d %10.1f %10.3f %10.3f %10.3f %12s%n", benchmark._name,
+				benchmark._plan, output, iterations / seconds, percentile(latencies, 0.50),
+				percentile(latencies, 0.90), percentile(latencies, 0.99), alloc);
+	}
+
+	//p-th percentile of sorted latencies in ms, by the nearest rank
+	private static double percentile(long[] sorted, double p) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int rank = (int) Math.ceil(p * sorted.length);
+		return sorted[Math.max(0, rank - 1)] / 1e6;
+	}
+
+	//bytes allocated so far by all live threads, or -1 if the JVM cannot tell
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		long[] allocated = ((com.sun.management.ThreadMXBean) bean)
+				.getThreadAllocatedBytes(bean.getAllThreadIds());
+		long total = 0;
+		for (int i = 0; i < allocated.length; i++) {
+			total += Math.max(0, allocated[i]);
+		}
+		return total;
+	}
+
+	/**
+	 * A single benchmark case. run() performs one operation and returns the
+	 * number of result rows.
+	 */
+	abstract static class Case {
+		private String _name;
+		private String _plan;
+
+		Case(String name, String plan) {
+			_name = name;
+			_plan = plan;
+		}
+
+		abstract long run() throws IOException;
+	}
+
+	/**
+	 * Fixed MovieQuery built from arrays of parameters.
+	 */
+	private static class BenchmarkQuery implements MovieQuery {
+		private final String[] _searchParams;
+		private final String[] _searchOperators;
+		private final double[] _searchOperatorVals;
+		private final String[] _sortParams;
+		private final String[] _selectParams;
+
+		BenchmarkQuery(String[] searchParams, String[] searchOperators, 
+				double[] searchOperatorVals, String[] sortParams, String[] selectParams) {
+			_searchParams = searchParams;
+			_searchOperators = searchOperators;
+			_searchOperatorVals = searchOperatorVals;
+			_sortParams = sortParams;
+			_selectParams = selectParams;
+		}
+
+		public String[] searchParams() {
+			return _searchParams;
+		}
+
+		public String[] searchOperators() {
+			return _searchOperators;
+		}
+
+		public double[] searchOperatorVals() {
+			return _searchOperatorVals;
+		}
+
+		public String[] sortParams() {
+			return _sortParams;
+		}
+
+		public String[] selectParams() {
+			return _selectParams;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.ArrayList;
+
+/**
+ * One page of query results, with the cursor to fetch the next one.
+ */
+public class MoviePage {
+
+	private final ArrayList<Movie> _movies;
+	private final PageCursor _next;
+
+	MoviePage(ArrayList<Movie> movies, PageCursor next) {
+		_movies = movies;
+		_next = next;
+	}
+
+	/**
+	 * Accessor.
+	 * @return the movies of this page in query order
+	 */
+	public ArrayList<Movie> getMovies() {
+		return _movies;
+	}
+
+	/**
+	 * Accessor.
+	 * @return cursor for the next page, or null if this is the last page
+	 */
+	public PageCursor getNextCursor() {
+		return _next;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if there are more results after this page
+	 */
+	public boolean hasMore() {
+		return _next != null;
+	}
+}
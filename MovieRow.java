@@ -0,0 +1,72 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Read-only view of one result row, handed to a MovieRowConsumer. The same
+ * instance is reused for every row of a query, so it must not be kept
+ * after accept() returns; copy the fields (or call toMovie()) instead.
+ * Numeric fields are read straight from the columns, and the title is only
+ * decoded when asked for.
+ */
+public final class MovieRow {
+
+	private final MovieStore _store;
+	private int _row;
+	private int _position;
+
+	MovieRow(MovieStore store) {
+		_store = store;
+	}
+
+	void moveTo(int row, int position) {
+		_row = row;
+		_position = position;
+	}
+
+	/**
+	 * Accessor.
+	 * @return position of the row in the query results, starting at 0
+	 */
+	public int position() {
+		return _position;
+	}
+
+	/**
+	 * Accessor.
+	 * @return title of the movie
+	 */
+	public String title() {
+		return _store.title(_row);
+	}
+
+	/**
+	 * Accessor.
+	 * @return rating of the movie
+	 */
+	public double rating() {
+		return _store.rating(_row);
+	}
+
+	/**
+	 * Accessor.
+	 * @return votes of the movie
+	 */
+	public int votes() {
+		return _store.votes(_row);
+	}
+
+	/**
+	 * Accessor.
+	 * @return awards of the movie
+	 */
+	public int awards() {
+		return _store.awards(_row);
+	}
+
+	/**
+	 * Creates a Movie object for the row.
+	 * @return the movie
+	 */
+	public Movie toMovie() {
+		return _store.toMovie(_row);
+	}
+}
@@ -0,0 +1,14 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Receives the results of MovieFinder.selectEach() one row at a time.
+ */
+public interface MovieRowConsumer {
+
+	/**
+	 * Called for each result row in query order.
+	 * @param row - view of the current row, only valid during the call
+	 * @return true to continue with the next row, false to stop
+	 */
+	boolean accept(MovieRow row);
+}
@@ -0,0 +1,172 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Binary columnar snapshot of a MovieStore, for starting up without parsing
+ * the CSV again. Layout (little-endian):
+ * <pre>
+ * header   int magic "MVS1", int version, int rows, int reserved,
+ *          long title bytes
+ * rating   double[rows]
+ * votes    int[rows]
+ * awards   int[rows]
+ * offsets  int[rows + 1], title i is arena[offsets[i], offsets[i + 1])
+ * arena    UTF-8 bytes of all titles
+ * </pre>
+ * The rating column starts 8-byte aligned. Each section is mapped on its
+ * own, so snapshots over 2GB open too; the title arena itself is limited to
+ * 2GB by its int offsets.
+ *
+ * When a snapshot is opened, the numeric columns are copied into heap
+ * arrays with one bulk read each, because every scan, sort and index works
+ * on primitive arrays. The titles, which take most of the space of a
+ * catalog, stay in the mapped file and are decoded on demand.
+ */
+final class MovieSnapshot {
+
+	static final int MAGIC = 0x3153564d;
+	static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 24;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private MovieSnapshot() {
+	}
+
+	/**
+	 * Writes a store to a snapshot file, replacing the file.
+	 * @param store - the store
+	 * @param file - name of the file
+	 * @throws IOException if the file can't be written or the titles don't
+	 * fit in 2GB
+	 */
+	static void save(MovieStore store, String file) throws IOException {
+		int rows = store.size();
+		byte[][] titles = new byte[rows][];
+		long titleBytes = 0;
+		for (int i = 0; i < rows; i++) {
+			titles[i] = store.title(i).getBytes(UTF8);
+			titleBytes += titles[i].length;
+		}
+		if (titleBytes > Integer.MAX_VALUE) {
+			throw new IOException("Titles take more than 2GB.");
+		}
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			FileChannel channel = out.getChannel();
+			ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			buf.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(0).putLong(titleBytes);
+			for (int i = 0; i < rows; i++) {
+				ensure(channel, buf, 8);
+				buf.putDouble(store.rating(i));
+			}
+			for (int i = 0; i < rows; i++) {
+				ensure(channel, buf, 4);
+				buf.putInt(store.votes(i));
+			}
+			for (int i = 0; i < rows; i++) {
+				ensure(channel, buf, 4);
+				buf.putInt(store.awards(i));
+			}
+			int offset = 0;
+			for (int i = 0; i <= rows; i++) {
+				ensure(channel, buf, 4);
+				buf.putInt(offset);
+				offset += (i < rows) ? titles[i].length : 0;
+			}
+			for (int i = 0; i < rows; i++) {
+				int written = 0;
+				while (written < titles[i].length) {
+					ensure(channel, buf, 1);
+					int n = Math.min(buf.remaining(), titles[i].length - written);
+					buf.put(titles[i], written, n);
+					written += n;
+				}
+			}
+			flush(channel, buf);
+			channel.truncate(channel.position());
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Opens a snapshot file.
+	 * @param file - name of the file
+	 * @return a store over the snapshot; rows can be appended to it
+	 * @throws IOException if the file can't be read or isn't a snapshot of a
+	 * supported version
+	 */
+	static MovieStore open(String file) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size < HEADER_BYTES) {
+				throw new IOException("Not a movie snapshot: " + file);
+			}
+			ByteBuffer header = map(channel, 0, HEADER_BYTES);
+			if (header.getInt(0) != MAGIC) {
+				throw new IOException("Not a movie snapshot: " + file);
+			}
+			if (header.getInt(4) != VERSION) {
+				throw new IOException("Unsupported snapshot version " + header.getInt(4) + ".");
+			}
+			int rows = header.getInt(8);
+			long titleBytes = header.getLong(16);
+			long ratingStart = HEADER_BYTES;
+			long votesStart = ratingStart + 8L * rows;
+			long awardsStart = votesStart + 4L * rows;
+			long offsetsStart = awardsStart + 4L * rows;
+			long arenaStart = offsetsStart + 4L * (rows + 1);
+			if (rows < 0 || titleBytes < 0 || arenaStart + titleBytes != size) {
+				throw new IOException("Corrupt movie snapshot: " + file);
+			}
+
+			double[] rating = new double[rows];
+			map(channel, ratingStart, 8L * rows).asDoubleBuffer().get(rating);
+			int[] votes = new int[rows];
+			map(channel, votesStart, 4L * rows).asIntBuffer().get(votes);
+			int[] awards = new int[rows];
+			map(channel, awardsStart, 4L * rows).asIntBuffer().get(awards);
+			TitleArena arena = new TitleArena(map(channel, offsetsStart, 4L * (rows + 1)).asIntBuffer(),
+					map(channel, arenaStart, titleBytes), rows);
+			return new MovieStore(rating, votes, awards, arena);
+		} finally {
+			//the mappings stay valid after the channel is closed
+			in.close();
+		}
+	}
+
+	private static MappedByteBuffer map(FileChannel channel, long start, long length)
+			throws IOException {
+		MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+		buf.order(ByteOrder.LITTLE_ENDIAN);
+		return buf;
+	}
+
+	//flushes buf to the channel if it has less than n bytes of room
+	private static void ensure(FileChannel channel, ByteBuffer buf, int n)
+			throws IOException {
+		if (buf.remaining() < n) {
+			flush(channel, buf);
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buf) throws IOException {
+		buf.flip();
+		while (buf.hasRemaining()) {
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+}
@@ -0,0 +1,696 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Sorts row ids in the order given by the sort parameters of a MovieQuery:
+ * descending by the first parameter, ties broken by the following ones and
+ * finally by the original order (the sort is stable). NaN ratings sort
+ * after all other ratings and tie with each other, so the order is total
+ * and a PageCursor resumes exactly where a page ended. The parameters are
+ * compiled once into field codes, so comparisons never look at strings.
+ *
+ * Three strategies are used:
+ * - a single int field (votes or awards) is packed with the position of
+ *   each row into a long and sorted as primitives,
+ * - a single rating is sorted as a primitive (negated) double key array,
+ *   the NaN ratings moved behind it in their original order,
+ * - several fields use a merge sort with the compiled comparator.
+ * Large inputs are sorted in chunks on the WorkerPool and then merged.
+ */
+final class MovieSorter {
+
+	static final int RATING = 0;
+	static final int VOTES = 1;
+	static final int AWARDS = 2;
+
+	/**
+	 * Number of rows from which the sort runs in parallel.
+	 */
+	static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private static final int INSERTION_THRESHOLD = 32;
+
+	private final int[] _fields;
+
+	/**
+	 * Compiles the sort parameters. Like the old toSwap(), an unknown
+	 * parameter ends the chain of tie breakers.
+	 * @param sortParams - sort parameters of a query
+	 */
+	MovieSorter(String[] sortParams) {
+		int[] fields = new int[sortParams.length];
+		int numFields = 0;
+		for (int i = 0; i < sortParams.length; i++) {
+			int field = fieldOf(sortParams[i]);
+			if (field < 0) {
+				break;
+			}
+			fields[numFields++] = field;
+		}
+		_fields = Arrays.copyOf(fields, numFields);
+	}
+
+	/**
+	 * Returns the field code of a MovieQuery parameter.
+	 * @param param - RATING, VOTES or AWARDS
+	 * @return the field code, or -1 for any other parameter
+	 */
+	static int fieldOf(String param) {
+		if (MovieQuery.RATING.equals(param)) {
+			return RATING;
+		}
+		else if (MovieQuery.VOTES.equals(param)) {
+			return VOTES;
+		}
+		else if (MovieQuery.AWARDS.equals(param)) {
+			return AWARDS;
+		}
+		return -1;
+	}
+
+	/**
+	 * Accessor.
+	 * @return field codes of the compiled sort parameters, in order
+	 */
+	int[] fields() {
+		return _fields.clone();
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if the sort leaves rows in their original order
+	 */
+	boolean isEmpty() {
+		return _fields.length == 0;
+	}
+
+	/**
+	 * Compares two rows.
+	 * @param store - store holding the rows
+	 * @param a - row id
+	 * @param b - row id
+	 * @return negative if a sorts before b, positive if after, 0 if tied
+	 */
+	int compare(MovieStore store, int a, int b) {
+		if (store.isEncoded()) {
+			for (int i = 0; i < _fields.length; i++) {
+				int c = compareKeys(key(store, _fields[i], a), key(store, _fields[i], b));
+				if (c != 0) {
+					return c;
+				}
+			}
+			return 0;
+		}
+		return compare(_fields, store.ratingColumn(), store.votesColumn(),
+				store.awardsColumn(), a, b);
+	}
+
+	/**
+	 * Sorts the first n entries of rows.
+	 * @param store - store holding the rows
+	 * @param rows - row ids to sort in place
+	 * @param n - number of row ids
+	 * @return number of key comparisons made, or -1 if the strategy doesn't
+	 * count them (a single int field, whose runs are sorted as primitives)
+	 */
+	long sort(MovieStore store, int[] rows, int n) {
+		if (_fields.length == 0 || n < 2) {
+			return 0;
+		}
+		if (store.isEncoded()) {
+			//decode the keys into a plain store, sort positions in it and
+			//map them back to row ids
+			MovieStore keys = new MovieStore(n);
+			int[] positions = new int[n];
+			for (int i = 0; i < n; i++) {
+				keys.add(null, store.rating(rows[i]), store.votes(rows[i]), store.awards(rows[i]));
+				positions[i] = i;
+			}
+			long comparisons = sort(keys, positions, n);
+			int[] original = Arrays.copyOf(rows, n);
+			for (int i = 0; i < n; i++) {
+				rows[i] = original[positions[i]];
+			}
+			return comparisons;
+		}
+		Runs runs;
+		int numSorted = n;
+		if (_fields.length == 1 && _fields[0] == RATING) {
+			double[] rating = store.ratingColumn();
+			double[] keys = new double[n];
+			int[] nanRows = new int[n];
+			int numNaN = 0;
+			numSorted = 0;
+			for (int i = 0; i < n; i++) {
+				int row = rows[i];
+				if (Double.isNaN(rating[row])) {
+					nanRows[numNaN++] = row;
+				}
+				else {
+					keys[numSorted] = -rating[row];
+					rows[numSorted++] = row;
+				}
+			}
+			System.arraycopy(nanRows, 0, rows, numSorted, numNaN);
+			runs = new DoubleRuns(keys, rows, numSorted);
+		}
+		else if (_fields.length == 1) {
+			int[] column = (_fields[0] == VOTES) ? store.votesColumn() : store.awardsColumn();
+			runs = new PackedRuns(column, rows, n);
+		}
+		else {
+			runs = new RowRuns(_fields, store, rows, n);
+		}
+		long comparisons = sortRuns(runs, numSorted, 
+				numSorted >= PARALLEL_THRESHOLD && WorkerPool.parallelism() > 1);
+		runs.finish();
+		return runs.countsComparisons() ? comparisons : -1;
+	}
+
+	/**
+	 * Returns the first k of n rows in sort order, i.e. what sort() would put
+	 * first, assuming rows are in ascending row id order so that row ids break
+	 * ties the way the stable sort does. A bounded heap keeps the k best rows
+	 * seen so far with the worst one on top, so this takes O(n log k) time
+	 * and O(k) memory.
+	 * @param store - store holding the rows
+	 * @param rows - row ids in ascending order
+	 * @param n - number of row ids
+	 * @param k - number of rows wanted
+	 * @return min(k, n) row ids in sort order
+	 */
+	int[] top(MovieStore store, int[] rows, int n, int k) {
+		k = Math.min(k, n);
+		if (_fields.length == 0) {
+			return Arrays.copyOf(rows, k);
+		}
+		int[] heap = new int[k];
+		int size = 0;
+		for (int i = 0; i < n && k > 0; i++) {
+			int row = rows[i];
+			if (size < k) {
+				//sift up
+				int child = size++;
+				while (child > 0) {
+					int parent = (child - 1) >>> 1;
+					if (compareRows(store, heap[parent], row) >= 0) {
+						break;
+					}
+					heap[child] = heap[parent];
+					child = parent;
+				}
+				heap[child] = row;
+			}
+			else if (compareRows(store, row, heap[0]) < 0) {
+				siftDown(store, heap, row, size);
+			}
+		}
+		//pop the worst row to the back until the heap is empty
+		for (int end = size - 1; end > 0; end--) {
+			int last = heap[end];
+			heap[end] = heap[0];
+			siftDown(store, heap, last, end);
+		}
+		return heap;
+	}
+
+	/**
+	 * Moves the rows that sort strictly after a cursor to the front, keeping
+	 * their order.
+	 * @param store - store holding the rows
+	 * @param rows - row ids
+	 * @param n - number of row ids
+	 * @param cursor - position of the last row of the previous page
+	 * @return number of rows after the cursor
+	 * @throws IllegalArgumentException if cursor was made for another sort
+	 * order
+	 */
+	int retainAfter(MovieStore store, int[] rows, int n, PageCursor cursor) {
+		if (!Arrays.equals(_fields, cursor._fields)) {
+			throw new IllegalArgumentException("Cursor belongs to a different sort order.");
+		}
+		int numAfter = 0;
+		for (int i = 0; i < n; i++) {
+			if (compareToCursor(store, rows[i], cursor) > 0) {
+				rows[numAfter++] = rows[i];
+			}
+		}
+		return numAfter;
+	}
+
+	/**
+	 * Creates a cursor positioned at a row.
+	 * @param store - store holding the row
+	 * @param row - row id
+	 * @return cursor holding the sort keys and id of row
+	 */
+	PageCursor cursor(MovieStore store, int row) {
+		double[] keys = new double[_fields.length];
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = key(store, _fields[i], row);
+		}
+		return new PageCursor(_fields, keys, row);
+	}
+
+	//compare() with the row ids as the final tie breaker
+	private int compareRows(MovieStore store, int a, int b) {
+		int c = compare(store, a, b);
+		if (c != 0) {
+			return c;
+		}
+		return (a < b) ? -1 : ((a == b) ? 0 : 1);
+	}
+
+	private int compareToCursor(MovieStore store, int row, PageCursor cursor) {
+		for (int i = 0; i < _fields.length; i++) {
+			int c = compareKeys(key(store, _fields[i], row), cursor._keys[i]);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return (row < cursor._row) ? -1 : ((row == cursor._row) ? 0 : 1);
+	}
+
+	//puts row at the top of a max heap of size rows and sifts it down
+	private void siftDown(MovieStore store, int[] heap, int row, int size) {
+		int parent = 0;
+		while (true) {
+			int child = 2 * parent + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && compareRows(store, heap[child + 1], heap[child]) > 0) {
+				child++;
+			}
+			if (compareRows(store, heap[child], row) <= 0) {
+				break;
+			}
+			heap[parent] = heap[child];
+			parent = child;
+		}
+		heap[parent] = row;
+	}
+
+	//descending order of two keys, NaN after every number: negative if x
+	//sorts first, positive if y does, 0 if they tie
+	private static int compareKeys(double x, double y) {
+		if (x > y) {
+			return -1;
+		}
+		if (x < y) {
+			return 1;
+		}
+		if (x == y || (x != x && y != y)) {
+			return 0;
+		}
+		return (x != x) ? 1 : -1;
+	}
+
+	private static double key(MovieStore store, int field, int row) {
+		switch (field) {
+		case RATING:
+			return store.rating(row);
+		case VOTES:
+			return store.votes(row);
+		default:
+			return store.awards(row);
+		}
+	}
+
+	/**
+	 * Sorts the first n entries of keys ascending, stable, and applies the
+	 * same permutation to rows.
+	 * @param keys - sort keys, sorted in place
+	 * @param rows - payloads, permuted in place
+	 * @param n - number of entries
+	 */
+	static void sortByKey(double[] keys, int[] rows, int n) {
+		if (n < 2) {
+			return;
+		}
+		DoubleRuns runs = new DoubleRuns(keys, rows, n);
+		sortRuns(runs, n, n >= PARALLEL_THRESHOLD && WorkerPool.parallelism() > 1);
+		runs.finish();
+		System.arraycopy(runs._srcKeys, 0, keys, 0, n);
+	}
+
+	private static int compare(int[] fields, double[] rating, int[] votes, int[] awards,
+			int a, int b) {
+		for (int i = 0; i < fields.length; i++) {
+			switch (fields[i]) {
+			case RATING:
+				int c = compareKeys(rating[a], rating[b]);
+				if (c != 0) {
+					return c;
+				}
+				break;
+			case VOTES:
+				if (votes[a] != votes[b]) {
+					return (votes[a] > votes[b]) ? -1 : 1;
+				}
+				break;
+			default:
+				if (awards[a] != awards[b]) {
+					return (awards[a] > awards[b]) ? -1 : 1;
+				}
+				break;
+			}
+		}
+		return 0;
+	}
+
+	//sorts chunks of the input (in parallel if asked) and merges them
+	//pairwise; returns the number of comparisons
+	private static long sortRuns(final Runs runs, final int n, boolean parallel) {
+		int chunks = parallel ? Math.min(WorkerPool.parallelism(), n / (PARALLEL_THRESHOLD / 4)) : 1;
+		if (chunks <= 1) {
+			return runs.sortRun(0, n);
+		}
+
+		int[] bounds = new int[chunks + 1];
+		for (int i = 0; i <= chunks; i++) {
+			bounds[i] = (int) ((long) n * i / chunks);
+		}
+		List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+		for (int i = 0; i < chunks; i++) {
+			final int lo = bounds[i];
+			final int hi = bounds[i + 1];
+			tasks.add(new Callable<Long>() {
+				public Long call() {
+					return runs.sortRun(lo, hi);
+				}
+			});
+		}
+		long comparisons = sum(WorkerPool.invokeAll(tasks));
+
+		int numRuns = chunks;
+		while (numRuns > 1) {
+			tasks = new ArrayList<Callable<Long>>();
+			int[] next = new int[(numRuns + 1) / 2 + 1];
+			for (int r = 0; r < numRuns; r += 2) {
+				final int lo = bounds[r];
+				final int mid = bounds[Math.min(r + 1, numRuns)];
+				final int hi = bounds[Math.min(r + 2, numRuns)];
+				next[r / 2] = lo;
+				//a last run without partner is merged with an empty run (copied)
+				tasks.add(new Callable<Long>() {
+					public Long call() {
+						return runs.merge(lo, mid, hi);
+					}
+				});
+			}
+			numRuns = (numRuns + 1) / 2;
+			next[numRuns] = n;
+			comparisons += sum(WorkerPool.invokeAll(tasks));
+			runs.flip();
+			bounds = next;
+		}
+		return comparisons;
+	}
+
+	private static long sum(List<Long> values) {
+		long sum = 0;
+		for (Long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	/**
+	 * Data being sorted, held in a source and a destination buffer. sortRun()
+	 * sorts a range of the source in place (it may use the same range of the
+	 * destination as scratch space), merge() merges two adjacent sorted ranges
+	 * of the source into the destination and flip() swaps the buffers. Both
+	 * return the number of comparisons they made, counted in a local so the
+	 * loops stay as tight as without counting.
+	 */
+	private abstract static class Runs {
+		abstract long sortRun(int lo, int hi);
+
+		abstract long merge(int lo, int mid, int hi);
+
+		boolean countsComparisons() {
+			return true;
+		}
+
+		abstract void flip();
+
+		abstract void finish();
+	}
+
+	//rows compared field by field through the compiled comparator
+	private static class RowRuns extends Runs {
+		private int[] _fields;
+		private double[] _rating;
+		private int[] _votes;
+		private int[] _awards;
+		private int[] _rows;
+		private int[] _src;
+		private int[] _dst;
+		private int _n;
+
+		RowRuns(int[] fields, MovieStore store, int[] rows, int n) {
+			_fields = fields;
+			_rating = store.ratingColumn();
+			_votes = store.votesColumn();
+			_awards = store.awardsColumn();
+			_rows = rows;
+			_src = rows;
+			_dst = new int[n];
+			_n = n;
+		}
+
+		long sortRun(int lo, int hi) {
+			return mergeSort(lo, hi);
+		}
+
+		private long mergeSort(int lo, int hi) {
+			long comparisons = 0;
+			if (hi - lo <= INSERTION_THRESHOLD) {
+				for (int i = lo + 1; i < hi; i++) {
+					int row = _src[i];
+					int x = i;
+					while (x > lo && ++comparisons > 0
+							&& compare(_fields, _rating, _votes, _awards, _src[x - 1], row) > 0) {
+						_src[x] = _src[x - 1];
+						x--;
+					}
+					_src[x] = row;
+				}
+				return comparisons;
+			}
+			int mid = (lo + hi) >>> 1;
+			comparisons += mergeSort(lo, mid);
+			comparisons += mergeSort(mid, hi);
+			comparisons++;
+			if (compare(_fields, _rating, _votes, _awards, _src[mid - 1], _src[mid]) <= 0) {
+				return comparisons;
+			}
+			System.arraycopy(_src, lo, _dst, lo, mid - lo);
+			int left = lo;
+			int right = mid;
+			int out = lo;
+			while (left < mid && right < hi) {
+				comparisons++;
+				if (compare(_fields, _rating, _votes, _awards, _src[right], _dst[left]) < 0) {
+					_src[out++] = _src[right++];
+				}
+				else {
+					_src[out++] = _dst[left++];
+				}
+			}
+			while (left < mid) {
+				_src[out++] = _dst[left++];
+			}
+			return comparisons;
+		}
+
+		long merge(int lo, int mid, int hi) {
+			long comparisons = 0;
+			int left = lo;
+			int right = mid;
+			for (int out = lo; out < hi; out++) {
+				if (right < hi && (left >= mid || (++comparisons > 0
+						&& compare(_fields, _rating, _votes, _awards, _src[right], _src[left]) < 0))) {
+					_dst[out] = _src[right++];
+				}
+				else {
+					_dst[out] = _src[left++];
+				}
+			}
+			return comparisons;
+		}
+
+		void flip() {
+			int[] temp = _src;
+			_src = _dst;
+			_dst = temp;
+		}
+
+		void finish() {
+			if (_src != _rows) {
+				System.arraycopy(_src, 0, _rows, 0, _n);
+			}
+		}
+	}
+
+	//double keys sorted ascending together with their row ids
+	private static class DoubleRuns extends Runs {
+		private int[] _rows;
+		private double[] _srcKeys;
+		private int[] _srcRows;
+		private double[] _dstKeys;
+		private int[] _dstRows;
+		private int _n;
+
+		DoubleRuns(double[] keys, int[] rows, int n) {
+			_rows = rows;
+			_n = n;
+			_srcKeys = Arrays.copyOf(keys, n);
+			_srcRows = Arrays.copyOf(rows, n);
+			_dstKeys = new double[n];
+			_dstRows = new int[n];
+		}
+
+		long sortRun(int lo, int hi) {
+			return mergeSort(lo, hi);
+		}
+
+		private long mergeSort(int lo, int hi) {
+			long comparisons = 0;
+			if (hi - lo <= INSERTION_THRESHOLD) {
+				for (int i = lo + 1; i < hi; i++) {
+					double key = _srcKeys[i];
+					int row = _srcRows[i];
+					int x = i;
+					while (x > lo && ++comparisons > 0 && _srcKeys[x - 1] > key) {
+						_srcKeys[x] = _srcKeys[x - 1];
+						_srcRows[x] = _srcRows[x - 1];
+						x--;
+					}
+					_srcKeys[x] = key;
+					_srcRows[x] = row;
+				}
+				return comparisons;
+			}
+			int mid = (lo + hi) >>> 1;
+			comparisons += mergeSort(lo, mid);
+			comparisons += mergeSort(mid, hi);
+			comparisons++;
+			if (!(_srcKeys[mid] < _srcKeys[mid - 1])) {
+				return comparisons;
+			}
+			System.arraycopy(_srcKeys, lo, _dstKeys, lo, mid - lo);
+			System.arraycopy(_srcRows, lo, _dstRows, lo, mid - lo);
+			int left = lo;
+			int right = mid;
+			int out = lo;
+			while (left < mid && right < hi) {
+				comparisons++;
+				if (_srcKeys[right] < _dstKeys[left]) {
+					_srcKeys[out] = _srcKeys[right];
+					_srcRows[out++] = _srcRows[right++];
+				}
+				else {
+					_srcKeys[out] = _dstKeys[left];
+					_srcRows[out++] = _dstRows[left++];
+				}
+			}
+			while (left < mid) {
+				_srcKeys[out] = _dstKeys[left];
+				_srcRows[out++] = _dstRows[left++];
+			}
+			return comparisons;
+		}
+
+		long merge(int lo, int mid, int hi) {
+			long comparisons = 0;
+			int left = lo;
+			int right = mid;
+			for (int out = lo; out < hi; out++) {
+				if (right < hi && (left >= mid || (++comparisons > 0 && _srcKeys[right] < _srcKeys[left]))) {
+					_dstKeys[out] = _srcKeys[right];
+					_dstRows[out] = _srcRows[right++];
+				}
+				else {
+					_dstKeys[out] = _srcKeys[left];
+					_dstRows[out] = _srcRows[left++];
+				}
+			}
+			return comparisons;
+		}
+
+		void flip() {
+			double[] keys = _srcKeys;
+			_srcKeys = _dstKeys;
+			_dstKeys = keys;
+			int[] rows = _srcRows;
+			_srcRows = _dstRows;
+			_dstRows = rows;
+		}
+
+		void finish() {
+			System.arraycopy(_srcRows, 0, _rows, 0, _n);
+		}
+	}
+
+	//an int field packed as (~value << 32 | position); the position makes
+	//every key unique, so an unstable primitive sort still keeps ties stable
+	private static class PackedRuns extends Runs {
+		private int[] _rows;
+		private int[] _original;
+		private long[] _src;
+		private long[] _dst;
+		private int _n;
+
+		PackedRuns(int[] column, int[] rows, int n) {
+			_rows = rows;
+			_n = n;
+			_original = Arrays.copyOf(rows, n);
+			_src = new long[n];
+			_dst = new long[n];
+			for (int i = 0; i < n; i++) {
+				_src[i] = ((long) ~column[rows[i]] << 32) | i;
+			}
+		}
+
+		long sortRun(int lo, int hi) {
+			Arrays.sort(_src, lo, hi);
+			return 0;
+		}
+
+		long merge(int lo, int mid, int hi) {
+			int left = lo;
+			int right = mid;
+			for (int out = lo; out < hi; out++) {
+				if (right < hi && (left >= mid || _src[right] < _src[left])) {
+					_dst[out] = _src[right++];
+				}
+				else {
+					_dst[out] = _src[left++];
+				}
+			}
+			return 0;
+		}
+
+		boolean countsComparisons() {
+			return false;
+		}
+
+		void flip() {
+			long[] temp = _src;
+			_src = _dst;
+			_dst = temp;
+		}
+
+		void finish() {
+			for (int i = 0; i < _n; i++) {
+				_rows[i] = _original[(int) _src[i]];
+			}
+		}
+	}
+}
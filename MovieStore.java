@@ -0,0 +1,304 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Columnar storage for the movie database. Instead of one Movie object per
+ * row, every field is kept in its own primitive array (titles in a String
+ * array), so a filter over one field is a tight loop over a single array
+ * and a row costs 16 bytes plus its title.
+ *
+ * Rows are identified by their index (row id) in insertion order.
+ *
+ * A store opened from a snapshot keeps the titles of the snapshot rows in a
+ * read-only TitleArena off the heap; rows added afterwards go to the title
+ * array as usual.
+ *
+ * encode() returns a store whose rows are compressed into EncodedColumns;
+ * rows added to it afterwards go to the plain columns, after the encoded
+ * ones.
+ *
+ * snapshot() returns a read-only view of the rows added so far. The view
+ * shares the column arrays: later rows are only ever written past the
+ * view's size, and growing the store copies into new arrays, so a view
+ * never changes and can be read by any number of threads while its store
+ * keeps loading. A store itself must only be used by one writer at a time.
+ */
+public class MovieStore {
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	//title of row _base + _arenaRows + i in entry i
+	private String[] _titles;
+	private double[] _rating;
+	private int[] _votes;
+	private int[] _awards;
+	private int _size;
+	//titles of the first _arenaRows rows, or null
+	private TitleArena _arena;
+	private int _arenaRows;
+	//rows below _base are in _encoded, row _base + i in entry i of the
+	//columns; _base is 0 if _encoded is null
+	private EncodedColumns _encoded;
+	private int _base;
+	private boolean _readOnly;
+
+	/**
+	 * Constructor
+	 */
+	public MovieStore() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor
+	 * @param capacity - number of rows to allocate up front
+	 */
+	public MovieStore(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity is negative.");
+		}
+		_titles = new String[capacity];
+		_rating = new double[capacity];
+		_votes = new int[capacity];
+		_awards = new int[capacity];
+	}
+
+	/**
+	 * Constructs a store over columns read from a snapshot.
+	 * @param rating - rating column, one entry per row
+	 * @param votes - votes column
+	 * @param awards - awards column
+	 * @param arena - titles of the rows
+	 */
+	MovieStore(double[] rating, int[] votes, int[] awards, TitleArena arena) {
+		_titles = new String[0];
+		_rating = rating;
+		_votes = votes;
+		_awards = awards;
+		_size = rating.length;
+		_arena = arena;
+		_arenaRows = arena.size();
+	}
+
+	//store over encoded rows, with room for more
+	private MovieStore(EncodedColumns encoded) {
+		this(DEFAULT_CAPACITY);
+		_encoded = encoded;
+		_base = encoded.size();
+		_size = _base;
+	}
+
+	//read-only view of the first source._size rows of source
+	private MovieStore(MovieStore source) {
+		_titles = source._titles;
+		_rating = source._rating;
+		_votes = source._votes;
+		_awards = source._awards;
+		_size = source._size;
+		_arena = source._arena;
+		_arenaRows = source._arenaRows;
+		_encoded = source._encoded;
+		_base = source._base;
+		_readOnly = true;
+	}
+
+	/**
+	 * Compresses all rows of a store (see EncodedColumns).
+	 * @param store - the store to compress
+	 * @return a new store with the same rows, to which more rows can be added
+	 */
+	static MovieStore encode(MovieStore store) {
+		return new MovieStore(EncodedColumns.encode(store));
+	}
+
+	/**
+	 * Returns a read-only view of the rows added so far, which later calls
+	 * to add() don't change.
+	 * @return the view
+	 */
+	public MovieStore snapshot() {
+		return new MovieStore(this);
+	}
+
+	/**
+	 * Appends a row.
+	 * @param title
+	 * @param rating
+	 * @param votes
+	 * @param awards
+	 * @return row id of the new row
+	 */
+	public int add(String title, double rating, int votes, int awards) {
+		checkWritable();
+		int i = _size - _base;
+		if (i == _rating.length) {
+			grow(i + 1);
+		}
+		_titles[i - _arenaRows] = title;
+		_rating[i] = rating;
+		_votes[i] = votes;
+		_awards[i] = awards;
+		return _size++;
+	}
+
+	/**
+	 * Appends all rows of another store, in order.
+	 * @param other - store to copy the rows from
+	 */
+	public void addAll(MovieStore other) {
+		checkWritable();
+		int n = other._size;
+		int i = _size - _base;
+		if (i + n > _rating.length) {
+			grow(i + n);
+		}
+		if (other._encoded != null) {
+			for (int row = 0; row < n; row++) {
+				_titles[i - _arenaRows + row] = other.title(row);
+				_rating[i + row] = other.rating(row);
+				_votes[i + row] = other.votes(row);
+				_awards[i + row] = other.awards(row);
+			}
+			_size += n;
+			return;
+		}
+		int t = i - _arenaRows;
+		for (int row = 0; row < other._arenaRows; row++) {
+			_titles[t + row] = other._arena.title(row);
+		}
+		System.arraycopy(other._titles, 0, _titles, t + other._arenaRows, n - other._arenaRows);
+		System.arraycopy(other._rating, 0, _rating, i, n);
+		System.arraycopy(other._votes, 0, _votes, i, n);
+		System.arraycopy(other._awards, 0, _awards, i, n);
+		_size += n;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of rows
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return title of the movie in row
+	 */
+	public String title(int row) {
+		if (row < _base) {
+			return _encoded.title(row);
+		}
+		if (row < _arenaRows) {
+			return _arena.title(row);
+		}
+		return _titles[row - _base - _arenaRows];
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return rating of the movie in row
+	 */
+	public double rating(int row) {
+		if (row < _base) {
+			return _encoded.rating(row);
+		}
+		return _rating[row - _base];
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return votes of the movie in row
+	 */
+	public int votes(int row) {
+		if (row < _base) {
+			return _encoded.votes(row);
+		}
+		return _votes[row - _base];
+	}
+
+	/**
+	 * Accessor.
+	 * @param row - row id
+	 * @return awards of the movie in row
+	 */
+	public int awards(int row) {
+		if (row < _base) {
+			return _encoded.awards(row);
+		}
+		return _awards[row - _base];
+	}
+
+	/**
+	 * Creates a Movie object for a row.
+	 * @param row - row id
+	 * @return the movie in row
+	 */
+	public Movie toMovie(int row) {
+		return new Movie(title(row), rating(row), votes(row), awards(row));
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if some rows are encoded, in which case the raw columns
+	 * must not be used
+	 */
+	boolean isEncoded() {
+		return _encoded != null;
+	}
+
+	/**
+	 * Accessor.
+	 * @return the encoded rows, or null
+	 */
+	EncodedColumns encoded() {
+		return _encoded;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of encoded rows, which come before all other rows
+	 */
+	int encodedRows() {
+		return _base;
+	}
+
+	//raw columns for scans of stores that aren't encoded; only the first
+	//size() entries are valid
+
+	double[] ratingColumn() {
+		return _rating;
+	}
+
+	int[] votesColumn() {
+		return _votes;
+	}
+
+	int[] awardsColumn() {
+		return _awards;
+	}
+
+	private void checkWritable() {
+		if (_readOnly) {
+			throw new IllegalStateException("Store snapshot is read-only.");
+		}
+	}
+
+	private void grow(int minCapacity) {
+		int capacity = Math.max(minCapacity, Math.max(_rating.length * 2, DEFAULT_CAPACITY));
+		String[] titles = new String[capacity - _arenaRows];
+		double[] rating = new double[capacity];
+		int[] votes = new int[capacity];
+		int[] awards = new int[capacity];
+		System.arraycopy(_titles, 0, titles, 0, _size - _base - _arenaRows);
+		System.arraycopy(_rating, 0, rating, 0, _size - _base);
+		System.arraycopy(_votes, 0, votes, 0, _size - _base);
+		System.arraycopy(_awards, 0, awards, 0, _size - _base);
+		_titles = titles;
+		_rating = rating;
+		_votes = votes;
+		_awards = awards;
+	}
+}
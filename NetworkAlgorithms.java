@@ -9,6 +9,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * 
@@ -31,14 +32,25 @@ public class NetworkAlgorithms {
 	private HashSet<Integer> _allPlaces;
 	private HashMap<Integer, int[]> _userToPlace;
 	private HashMap<Integer, String> _placeToType;
-
+	
+	//connected components of the friendship graph: every user seen is 
+	//numbered by _userIndex, _parent is a union-find forest over those
+	//numbers and _componentSize holds the size of each component at its root
+	private HashMap<Integer, Integer> _userIndex;
+	private AtomicIntegerArray _parent;
+	private AtomicIntegerArray _componentSize;
+	
+	//minimum number of friend lists per thread when labelling components
+	private static final int MIN_LISTS_PER_THREAD = 1 << 14;
 	
 	/**
 	 * 
 	 * Constructs a NetworkAlgorithms object and populates relevant 
 	 * datastructures to allow for a reduced amount of time to calculate 
 	 * required information by reducing the number of queries required to
-	 * the database.
+	 * the database. It also labels the connected components of the friendship
+	 * graph, which tell distance() and recommendFriends() which users can't
+	 * be reached at all.
 	 * 
 	 * @param dbUser
 	 * @param dbPass
@@ -57,6 +69,8 @@ public class NetworkAlgorithms {
 		_allUsers = access.getAllUsers();
 		_userToPlace = new HashMap<Integer, int[]>();
 		_placeToType = new HashMap<Integer, String>();
+		_userIndex = new HashMap<Integer, Integer>();
+		List<int[]> friendLists = new ArrayList<int[]>();
 		
 		Iterator<Integer> iterator = _allUsers.iterator();
 		while (iterator.hasNext()) {
@@ -74,7 +88,188 @@ public class NetworkAlgorithms {
 					String desc = access.getDescription(currPlaceID);
 					_placeToType.put(currPlaceID, desc);
 				}
-			}		
+			}
+			
+			//collect friendships by user number, the user first
+			int[] friends = access.getFriends(temp);
+			int[] friendList = new int[friends.length + 1];
+			friendList[0] = indexOf(temp);
+			for (int i = 0; i < friends.length; i++) {
+				friendList[i + 1] = indexOf(friends[i]);
+			}
+			friendLists.add(friendList);
+		}
+		labelComponents(friendLists);
+	}
+	
+	/**
+	 * 
+	 * Helper method to number a user for the union-find forest.
+	 * 
+	 * @param user_id - ID of person
+	 * @return the number of the person, assigning the next one if the person
+	 * has none yet
+	 */
+	private int indexOf(int user_id) {
+		Integer index = _userIndex.get(user_id);
+		if (index == null) {
+			index = _userIndex.size();
+			_userIndex.put(user_id, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * 
+	 * Builds the union-find forest from the friend lists of all users. The
+	 * lists are split between threads that union concurrently, then the
+	 * forest is flattened so that every user points straight at its root.
+	 * 
+	 * @param friendLists - friend lists by user number, the user first
+	 */
+	private void labelComponents(final List<int[]> friendLists) {
+		int n = _userIndex.size();
+		_parent = new AtomicIntegerArray(n);
+		for (int i = 0; i < n; i++) {
+			_parent.set(i, i);
+		}
+		
+		int threads = Math.min(Runtime.getRuntime().availableProcessors(), 
+				friendLists.size() / MIN_LISTS_PER_THREAD);
+		if (threads < 2) {
+			unionLists(friendLists, 0, friendLists.size());
+		}
+		else {
+			Thread[] workers = new Thread[threads];
+			for (int t = 0; t < threads; t++) {
+				final int from = (int) ((long) friendLists.size() * t / threads);
+				final int to = (int) ((long) friendLists.size() * (t + 1) / threads);
+				workers[t] = new Thread(new Runnable() {
+					public void run() {
+						unionLists(friendLists, from, to);
+					}
+				}, "component-labeller-" + t);
+				workers[t].start();
+			}
+			try {
+				for (int t = 0; t < threads; t++) {
+					workers[t].join();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted while labelling components.", e);
+			}
+		}
+		
+		//point every user at its root and count the users of each component
+		int[] sizes = new int[n];
+		for (int i = 0; i < n; i++) {
+			int root = find(i);
+			_parent.set(i, root);
+			sizes[root]++;
+		}
+		_componentSize = new AtomicIntegerArray(sizes);
+	}
+	
+	//unions every user of friendLists[from, to) with its friends
+	private void unionLists(List<int[]> friendLists, int from, int to) {
+		for (int i = from; i < to; i++) {
+			int[] friendList = friendLists.get(i);
+			for (int j = 1; j < friendList.length; j++) {
+				union(friendList[0], friendList[j]);
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * Helper method to find the root of a user in the union-find forest. It
+	 * halves the path on the way up; losing a race with another thread only
+	 * skips a shortcut, since parents are always replaced by ancestors.
+	 * 
+	 * @param index - number of the user
+	 * @return number of the root of the user's component
+	 */
+	private int find(int index) {
+		while (true) {
+			int parent = _parent.get(index);
+			if (parent == index) {
+				return index;
+			}
+			int grandparent = _parent.get(parent);
+			_parent.compareAndSet(index, parent, grandparent);
+			index = grandparent;
+		}
+	}
+	
+	/**
+	 * 
+	 * Helper method to merge the components of two users. Roots are only
+	 * ever linked under roots with a smaller number, so concurrent unions
+	 * can't form a cycle; a union whose root was linked meanwhile retries.
+	 * 
+	 * @param a - number of the first user
+	 * @param b - number of the second user
+	 * @return true if the users were in different components
+	 */
+	private boolean union(int a, int b) {
+		while (true) {
+			a = find(a);
+			b = find(b);
+			if (a == b) {
+				return false;
+			}
+			if (a < b) {
+				int temp = a;
+				a = b;
+				b = temp;
+			}
+			if (_parent.compareAndSet(a, a, b)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * 
+	 * Helper method to find the component of a user.
+	 * 
+	 * @param user_id - ID of a person in the database
+	 * @return number of the root of the person's component
+	 */
+	private int componentOf(int user_id) {
+		return find(_userIndex.get(user_id));
+	}
+	
+	/**
+	 * 
+	 * Updates the connected components after a friendship has been added to
+	 * the database. It must be called for every friendship added after this
+	 * object was constructed: the components are only read from the
+	 * database by the constructor, so if a call is skipped they go stale,
+	 * and distance() returns -1 for people the new friendship connects, and
+	 * recommendFriends() may stop before reaching them, even though the
+	 * database links them. Calls are serialized, so that the size of a
+	 * merged component isn't lost to a concurrent call; distance() and
+	 * recommendFriends() may run meanwhile.
+	 * 
+	 * @param user_id1 - ID of first person
+	 * @param user_id2 - ID of second person
+	 * @throws IllegalArgumentException when user_id does not exist in database
+	 */
+	public synchronized void friendshipAdded(int user_id1, int user_id2) 
+			throws IllegalArgumentException {
+		if (!_allUsers.contains(user_id1) || !_allUsers.contains(user_id2)) {
+			throw new IllegalArgumentException();
+		}
+		int a = componentOf(user_id1);
+		int b = componentOf(user_id2);
+		if (union(a, b)) {
+			//no other union runs meanwhile, so a and b were the roots and
+			//the one linked under the other keeps its size
+			int root = find(a);
+			int linked = (root == a) ? b : a;
+			_componentSize.addAndGet(root, _componentSize.get(linked));
 		}
 	}
 		
@@ -86,7 +281,9 @@ public class NetworkAlgorithms {
 	 * @param user_id1 - ID of first person
 	 * @param user_id2 - ID of second person
 	 * @return the bacon number of the two people. If user_id2 cannot be reached
-	 * from user_id1, returns -1.
+	 * from user_id1, returns -1; people in different components are answered
+	 * without a search, so a friendship added without friendshipAdded()
+	 * doesn't connect them.
 	 * @throws IllegalArgumentException when user_id does not exist in database
 	 */
 	public int distance(int user_id1, int user_id2) throws IllegalArgumentException {
@@ -101,6 +298,11 @@ public class NetworkAlgorithms {
 			throw new IllegalArgumentException();
 		}
 		
+		//people in different components can't reach each other
+		if (componentOf(user_id1) != componentOf(user_id2)) {
+			return -1;
+		}
+		
 		//create relevant datastructures
 		DBWrapper access = new DBWrapper(_dbUser, _dbPass, _dbSID, _dbHost, _port);
 		LinkedList<Integer> queue = new LinkedList<Integer>();
@@ -183,7 +385,11 @@ public class NetworkAlgorithms {
 			userFriends.add(friends[i]);
 		}
 		
-		while (output.size() < numRec && !heap.isEmpty() ) {
+		//only the rest of the user's component can be recommended, so stop
+		//searching once all of it is, or right away if there is none
+		int reachable = _componentSize.get(componentOf(user_id)) - userFriends.size();
+		
+		while (output.size() < numRec && output.size() < reachable && !heap.isEmpty()) {
 			Vertex current = heap.poll();
 			
 			// only people who are not the user or not friends of the user will be added
@@ -193,7 +399,7 @@ public class NetworkAlgorithms {
 				recommendedFriends.add(current.getID());
 			}
 			
-			if (output.size() == numRec) {
+			if (output.size() == numRec || output.size() == reachable) {
 				break;
 			}
 			
@@ -0,0 +1,96 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Fixed-width array of unsigned integers of up to 63 bits each, stored
+ * back to back in a long array, so n values of b bits take n * b / 8 bytes
+ * instead of 4 or 8 bytes each. A value may straddle two words.
+ *
+ * Values are written with set() while the array is being built; after that
+ * it is only read, and can be shared between threads.
+ */
+final class PackedInts {
+
+	private final long[] _words;
+	private final int _bits;
+	private final long _mask;
+	private final int _size;
+
+	/**
+	 * Constructor. All values start out as 0.
+	 * @param size - number of values
+	 * @param bits - bits per value, 0 to 63
+	 */
+	PackedInts(int size, int bits) {
+		if (size < 0 || bits < 0 || bits > 63) {
+			throw new IllegalArgumentException("Invalid size or width.");
+		}
+		_words = new long[Math.max(1, (int) (((long) size * bits + 63) >>> 6))];
+		_bits = bits;
+		_mask = (1L << bits) - 1;
+		_size = size;
+	}
+
+	/**
+	 * Returns the number of bits needed to store values from 0 to max.
+	 * @param max - largest value, at least 0
+	 * @return number of bits
+	 */
+	static int bitsFor(long max) {
+		return 64 - Long.numberOfLeadingZeros(max);
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of values
+	 */
+	int size() {
+		return _size;
+	}
+
+	/**
+	 * Accessor.
+	 * @return bits per value
+	 */
+	int bits() {
+		return _bits;
+	}
+
+	/**
+	 * Accessor.
+	 * @param i - index of the value
+	 * @return the value
+	 */
+	long get(int i) {
+		long bit = (long) i * _bits;
+		int word = (int) (bit >>> 6);
+		int shift = (int) (bit & 63);
+		long value = _words[word] >>> shift;
+		if (shift + _bits > 64) {
+			value |= _words[word + 1] << (64 - shift);
+		}
+		return value & _mask;
+	}
+
+	/**
+	 * Stores a value. Each index must be set at most once.
+	 * @param i - index of the value
+	 * @param value - the value, 0 to 2^bits - 1
+	 */
+	void set(int i, long value) {
+		long bit = (long) i * _bits;
+		int word = (int) (bit >>> 6);
+		int shift = (int) (bit & 63);
+		_words[word] |= value << shift;
+		if (shift + _bits > 64) {
+			_words[word + 1] |= value >>> (64 - shift);
+		}
+	}
+
+	/**
+	 * Accessor.
+	 * @return approximate heap size of the array in bytes
+	 */
+	long memoryBytes() {
+		return 16 + 16 + 8L * _words.length;
+	}
+}
@@ -0,0 +1,34 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.Arrays;
+
+/**
+ * Position in the results of a query for keyset pagination: the sort keys
+ * and row id of the last movie of a page. The next page is made of the rows
+ * that sort strictly after it, so fetching page p costs the same as
+ * fetching the first page instead of growing with p * pageSize, and rows
+ * appended by readMovies() in between don't shift the pages.
+ *
+ * A cursor is only valid for queries with the same sort parameters as the
+ * one that produced it.
+ */
+public final class PageCursor {
+
+	final int[] _fields;
+	final double[] _keys;
+	final int _row;
+
+	PageCursor(int[] fields, double[] keys, int row) {
+		_fields = fields;
+		_keys = keys;
+		_row = row;
+	}
+
+	/**
+	 * Accessor for logging.
+	 * @return the sort keys and row id of the cursor
+	 */
+	public String toString() {
+		return "PageCursor[keys=" + Arrays.toString(_keys) + ", row=" + _row + "]";
+	}
+}
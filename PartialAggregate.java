@@ -0,0 +1,143 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Accumulators of count, sum, min and max per bucket, for one partition of
+ * an Aggregation. Buckets are kept in dense arrays over the range of bucket
+ * numbers seen so far, which grow in both directions as needed, so adding a
+ * value costs a few array writes and no allocation.
+ */
+final class PartialAggregate {
+
+	//maximum number of buckets between the lowest and highest one
+	static final int MAX_BUCKETS = 1 << 16;
+
+	//bucket number of slot 0
+	private long _base;
+	private long[] _count = new long[0];
+	private double[] _sum = new double[0];
+	private double[] _min = new double[0];
+	private double[] _max = new double[0];
+
+	/**
+	 * Adds a value to a bucket; NaN values are ignored.
+	 * @param bucket - bucket number
+	 * @param value - the value
+	 * @throws IllegalArgumentException if the buckets span more than
+	 * MAX_BUCKETS
+	 */
+	void add(long bucket, double value) {
+		if (value != value) {
+			return;
+		}
+		long slot = bucket - _base;
+		if (slot < 0 || slot >= _count.length) {
+			include(bucket);
+			slot = bucket - _base;
+		}
+		int i = (int) slot;
+		if (_count[i]++ == 0) {
+			_min[i] = value;
+			_max[i] = value;
+		}
+		else {
+			if (value < _min[i]) {
+				_min[i] = value;
+			}
+			if (value > _max[i]) {
+				_max[i] = value;
+			}
+		}
+		_sum[i] += value;
+	}
+
+	/**
+	 * Adds the buckets of another partial aggregate to this one.
+	 * @param other - aggregate of another partition
+	 */
+	void merge(PartialAggregate other) {
+		for (int j = 0; j < other._count.length; j++) {
+			if (other._count[j] == 0) {
+				continue;
+			}
+			long bucket = other._base + j;
+			if (bucket < _base || bucket - _base >= _count.length) {
+				include(bucket);
+			}
+			int i = (int) (bucket - _base);
+			if (_count[i] == 0) {
+				_min[i] = other._min[j];
+				_max[i] = other._max[j];
+			}
+			else {
+				_min[i] = Math.min(_min[i], other._min[j]);
+				_max[i] = Math.max(_max[i], other._max[j]);
+			}
+			_count[i] += other._count[j];
+			_sum[i] += other._sum[j];
+		}
+	}
+
+	//grows the arrays to cover bucket
+	private void include(long bucket) {
+		int length = _count.length;
+		long lo = (length == 0) ? bucket : Math.min(_base, bucket);
+		long hi = (length == 0) ? bucket : Math.max(_base + length - 1, bucket);
+		if (hi - lo >= MAX_BUCKETS) {
+			throw new IllegalArgumentException("More than " + MAX_BUCKETS 
+					+ " buckets; use a larger bucket width.");
+		}
+		//leave room to grow further on the side that grew
+		int capacity = (int) Math.min(MAX_BUCKETS, Math.max(hi - lo + 1, 2L * length));
+		long base = (length > 0 && bucket < _base) ? hi - capacity + 1 : lo;
+		int shift = (length == 0) ? 0 : (int) (_base - base);
+		_count = move(_count, shift, capacity);
+		_sum = move(_sum, shift, capacity);
+		_min = move(_min, shift, capacity);
+		_max = move(_max, shift, capacity);
+		_base = base;
+	}
+
+	private long[] move(long[] a, int shift, int capacity) {
+		long[] b = new long[capacity];
+		System.arraycopy(a, 0, b, shift, a.length);
+		return b;
+	}
+
+	private double[] move(double[] a, int shift, int capacity) {
+		double[] b = new double[capacity];
+		System.arraycopy(a, 0, b, shift, a.length);
+		return b;
+	}
+
+	/**
+	 * Accessor.
+	 * @return bucket number of slot 0
+	 */
+	long base() {
+		return _base;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of slots, some of which may be empty
+	 */
+	int slots() {
+		return _count.length;
+	}
+
+	long count(int slot) {
+		return _count[slot];
+	}
+
+	double sum(int slot) {
+		return _sum[slot];
+	}
+
+	double min(int slot) {
+		return _min[slot];
+	}
+
+	double max(int slot) {
+		return _max[slot];
+	}
+}
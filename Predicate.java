@@ -0,0 +1,84 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * One search parameter of a MovieQuery with its field and operator resolved
+ * to int codes, so the type and operator strings are compared once per query
+ * instead of once per row.
+ */
+final class Predicate {
+
+	static final int AT_LEAST = 0;
+	static final int AT_MOST = 1;
+	static final int EQUAL_TO = 2;
+
+	private static final String[] FIELD_NAMES = {"rating", "votes", "awards"};
+	private static final String[] OPERATOR_NAMES = {"AT_LEAST", "AT_MOST", "EQUAL_TO"};
+
+	final int _field;
+	final int _operator;
+	final double _value;
+
+	/**
+	 * Constructor
+	 * @param field - MovieSorter.RATING, VOTES or AWARDS
+	 * @param operator - AT_LEAST, AT_MOST or EQUAL_TO
+	 * @param value - value to compare against
+	 */
+	Predicate(int field, int operator, double value) {
+		_field = field;
+		_operator = operator;
+		_value = value;
+	}
+
+	/**
+	 * Resolves the search parameters of an already validated query.
+	 * @param query - the query
+	 * @return one predicate per search parameter, in query order
+	 */
+	static Predicate[] compile(MovieQuery query) {
+		String[] searchParams = query.searchParams();
+		String[] searchOperators = query.searchOperators();
+		double[] searchOperatorValues = query.searchOperatorVals();
+		Predicate[] predicates = new Predicate[searchParams.length];
+		for (int i = 0; i < predicates.length; i++) {
+			predicates[i] = new Predicate(MovieSorter.fieldOf(searchParams[i]),
+					operatorOf(searchOperators[i]), searchOperatorValues[i]);
+		}
+		return predicates;
+	}
+
+	/**
+	 * Maps a MovieQuery operator to its code.
+	 * @param operator - MovieQuery.AT_LEAST, AT_MOST or EQUAL_TO
+	 * @return the operator code, or -1 if operator is not a search operator
+	 */
+	static int operatorOf(String operator) {
+		if (operator.equals(MovieQuery.AT_LEAST)) {
+			return AT_LEAST;
+		}
+		else if (operator.equals(MovieQuery.AT_MOST)) {
+			return AT_MOST;
+		}
+		else if (operator.equals(MovieQuery.EQUAL_TO)) {
+			return EQUAL_TO;
+		}
+		return -1;
+	}
+
+	/**
+	 * Accessor for query statistics, which group queries that differ only
+	 * in their values.
+	 * @return e.g. "awards AT_LEAST ?"
+	 */
+	String shape() {
+		return FIELD_NAMES[_field] + " " + OPERATOR_NAMES[_operator] + " ?";
+	}
+
+	/**
+	 * Accessor for explain output.
+	 * @return e.g. "awards AT_LEAST 5.0"
+	 */
+	public String toString() {
+		return FIELD_NAMES[_field] + " " + OPERATOR_NAMES[_operator] + " " + _value;
+	}
+}
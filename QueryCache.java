@@ -0,0 +1,220 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Caches the results of MovieFinder queries as sorted row id arrays, which
+ * take 4 bytes per movie instead of a list of Movie objects. Queries are
+ * keyed by a normalized form of their search and sort parameters: the
+ * predicates are put in a canonical order (they are ANDed, so their order
+ * doesn't matter) and sort parameters after the first unknown one are
+ * dropped, as the sort ignores them. Select parameters only decide how rows
+ * are printed, so all selects over the same query share one entry.
+ *
+ * The cache is bounded by the estimated memory of its entries and evicts
+ * the least recently used ones. Every change of the movie data must call
+ * invalidate(), which starts a new generation; lookups and results carry
+ * the generation of the data they were made against, so queries still
+ * running on older data neither see nor store results of another
+ * generation.
+ */
+public class QueryCache {
+
+	//estimated fixed cost of an entry: map node, entry, array header
+	private static final int ENTRY_OVERHEAD = 96;
+
+	private long _maxBytes;
+	private long _bytes;
+	private long _generation;
+	private LinkedHashMap<String, int[]> _entries;
+
+	private long _hits;
+	private long _misses;
+	private long _evictions;
+	private long _invalidations;
+
+	/**
+	 * Constructor
+	 * @param maxBytes - memory bound of the cached results in bytes
+	 */
+	public QueryCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Cache size is negative.");
+		}
+		_maxBytes = maxBytes;
+		_entries = new LinkedHashMap<String, int[]>(16, 0.75f, true);
+	}
+
+	/**
+	 * Builds the cache key of a query.
+	 * @param predicates - compiled search parameters
+	 * @param title - title predicate, or null
+	 * @param sorter - compiled sort parameters
+	 * @return the normalized key
+	 */
+	static String key(Predicate[] predicates, TitlePredicate title, MovieSorter sorter) {
+		String[] terms = new String[predicates.length];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = predicates[i].toString();
+		}
+		Arrays.sort(terms);
+		StringBuilder key = new StringBuilder();
+		for (int i = 0; i < terms.length; i++) {
+			key.append(terms[i]).append(';');
+		}
+		if (title != null) {
+			key.append(title).append(';');
+		}
+		return key.append("sort").append(Arrays.toString(sorter.fields())).toString();
+	}
+
+	/**
+	 * Looks up the result of a query.
+	 * @param key - key from key()
+	 * @param generation - generation of the data the query runs against
+	 * @return the sorted row ids, which must not be modified, or null
+	 */
+	synchronized int[] get(String key, long generation) {
+		int[] rows = (generation == _generation) ? _entries.get(key) : null;
+		if (rows == null) {
+			_misses++;
+		}
+		else {
+			_hits++;
+		}
+		return rows;
+	}
+
+	/**
+	 * Stores the result of a query.
+	 * @param key - key from key()
+	 * @param rows - sorted row ids; the cache keeps the array
+	 * @param generation - generation of the data the query ran against;
+	 * stale results are dropped
+	 */
+	synchronized void put(String key, int[] rows, long generation) {
+		long cost = cost(key, rows);
+		if (generation != _generation || cost > _maxBytes) {
+			return;
+		}
+		int[] old = _entries.put(key, rows);
+		if (old != null) {
+			_bytes -= cost(key, old);
+		}
+		_bytes += cost;
+		evict();
+	}
+
+	/**
+	 * Drops every cached result because the data changed. Statistics are
+	 * kept.
+	 * @return the generation of the new data
+	 */
+	public synchronized long invalidate() {
+		_generation++;
+		if (!_entries.isEmpty()) {
+			_invalidations++;
+		}
+		_entries.clear();
+		_bytes = 0;
+		return _generation;
+	}
+
+	/**
+	 * Changes the memory bound, evicting entries as needed.
+	 * @param maxBytes - memory bound of the cached results in bytes
+	 */
+	public synchronized void setMaxBytes(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Cache size is negative.");
+		}
+		_maxBytes = maxBytes;
+		evict();
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of lookups answered from the cache
+	 */
+	public synchronized long hits() {
+		return _hits;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of lookups that had to run the query
+	 */
+	public synchronized long misses() {
+		return _misses;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of results evicted to stay within the memory bound
+	 */
+	public synchronized long evictions() {
+		return _evictions;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of times a non-empty cache was cleared because the data
+	 * changed
+	 */
+	public synchronized long invalidations() {
+		return _invalidations;
+	}
+
+	/**
+	 * Accessor.
+	 * @return fraction of lookups answered from the cache
+	 */
+	public synchronized double hitRate() {
+		long total = _hits + _misses;
+		return (total == 0) ? 0.0 : _hits / (double) total;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of cached results
+	 */
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	/**
+	 * Accessor.
+	 * @return estimated memory of the cached results in bytes
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	//removes least recently used entries until the bound holds
+	private void evict() {
+		Iterator<Map.Entry<String, int[]>> eldest = _entries.entrySet().iterator();
+		while (_bytes > _maxBytes) {
+			Map.Entry<String, int[]> evicted = eldest.next();
+			_bytes -= cost(evicted.getKey(), evicted.getValue());
+			eldest.remove();
+			_evictions++;
+		}
+	}
+
+	private static long cost(String key, int[] rows) {
+		return ENTRY_OVERHEAD + 2L * key.length() + 4L * rows.length;
+	}
+
+	/**
+	 * Accessor for debugging.
+	 * @return a short summary of the cache statistics
+	 */
+	public synchronized String toString() {
+		return "QueryCache[size=" + _entries.size() + ", bytes=" + _bytes
+				+ ", hits=" + _hits + ", misses=" + _misses
+				+ ", evictions=" + _evictions + ", invalidations=" + _invalidations + "]";
+	}
+}
@@ -0,0 +1,154 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Execution plan for the search part of a MovieQuery, as chosen by
+ * MovieFinder from the selectivity of each predicate. A plan either starts
+ * from the rows an index returns for its most selective predicate or from a
+ * full scan, and then applies the remaining predicates in one fused pass
+ * (see RowFilter), listed in ascending order of their estimated number of
+ * matches. A title predicate is either answered by the title index, which
+ * then replaces the numeric access step, or checked last, after the
+ * numeric filters.
+ *
+ * toString() gives the explain output, e.g.
+ * <pre>
+ * INDEX LOOKUP awards AT_LEAST 5.0 (est. 812 of 100000 rows)
+ *   FILTER rating AT_LEAST 8.0 (est. 4210 rows)
+ *   SORT BY awards, votes
+ * </pre>
+ */
+public class QueryPlan {
+
+	private final Predicate _access;
+	private final Predicate[] _filters;
+	private final int[] _estimates;
+	private final int _accessEstimate;
+	private final int _totalRows;
+	private final String[] _sortParams;
+	private final TitlePredicate _title;
+	//rows the title index returned for _title, or null if _title is a filter
+	private final int[] _titleRows;
+
+	/**
+	 * Constructor
+	 * @param access - predicate answered by an index, or null for a full scan
+	 * @param accessEstimate - rows returned by the index lookup
+	 * @param filters - remaining predicates in the order they are applied
+	 * @param estimates - estimated matches of each filter, -1 if unknown
+	 * @param totalRows - number of rows in the store
+	 * @param sortParams - sort parameters of the query
+	 * @param title - title predicate, or null
+	 * @param titleRows - rows the title index returned for title, or null if
+	 * title is checked after the other filters
+	 */
+	QueryPlan(Predicate access, int accessEstimate, Predicate[] filters, int[] estimates, 
+			int totalRows, String[] sortParams, TitlePredicate title, int[] titleRows) {
+		_access = access;
+		_accessEstimate = accessEstimate;
+		_filters = filters;
+		_estimates = estimates;
+		_totalRows = totalRows;
+		_sortParams = sortParams;
+		_title = title;
+		_titleRows = titleRows;
+	}
+
+	/**
+	 * Accessor.
+	 * @return predicate answered by an index, or null for a full scan
+	 */
+	Predicate access() {
+		return _access;
+	}
+
+	/**
+	 * Accessor.
+	 * @return predicates applied after the access step, in order
+	 */
+	Predicate[] filters() {
+		return _filters;
+	}
+
+	/**
+	 * Accessor.
+	 * @return title predicate, or null
+	 */
+	TitlePredicate title() {
+		return _title;
+	}
+
+	/**
+	 * Accessor.
+	 * @return ids of the rows matching title() in ascending order, or null
+	 * if the plan doesn't start from the title index
+	 */
+	int[] titleRows() {
+		return _titleRows;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if the plan starts from an index lookup
+	 */
+	public boolean usesIndex() {
+		return _access != null || _titleRows != null;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if some predicate is known to match no rows, so the query
+	 * returns nothing without touching the data
+	 */
+	public boolean isEmpty() {
+		if (_access != null && _accessEstimate == 0) {
+			return true;
+		}
+		if (_titleRows != null && _titleRows.length == 0) {
+			return true;
+		}
+		for (int i = 0; i < _estimates.length; i++) {
+			if (_estimates[i] == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Accessor for explain output.
+	 * @return one line per step of the plan
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		if (_titleRows != null) {
+			sb.append("TITLE INDEX LOOKUP ").append(_title).append(" (")
+					.append(_titleRows.length).append(" of ").append(_totalRows).append(" rows)");
+		}
+		else if (_access != null) {
+			sb.append("INDEX LOOKUP ").append(_access).append(" (est. ")
+					.append(_accessEstimate).append(" of ").append(_totalRows).append(" rows)");
+		}
+		else {
+			sb.append("FULL SCAN (").append(_totalRows).append(" rows)");
+		}
+		for (int i = 0; i < _filters.length; i++) {
+			sb.append("\n  FILTER ").append(_filters[i]);
+			if (_estimates[i] >= 0) {
+				sb.append(" (est. ").append(_estimates[i]).append(" rows)");
+			}
+		}
+		if (_title != null && _titleRows == null) {
+			sb.append("\n  FILTER ").append(_title);
+		}
+		if (isEmpty()) {
+			sb.append("\n  EMPTY RESULT");
+		}
+		if (_sortParams.length > 0) {
+			sb.append("\n  SORT BY ");
+			for (int i = 0; i < _sortParams.length; i++) {
+				sb.append(i == 0 ? "" : ", ").append(_sortParams[i]);
+			}
+		}
+		return sb.toString();
+	}
+}
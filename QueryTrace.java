@@ -0,0 +1,270 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Record of how one query ran, kept by MovieFinder while tracing is enabled
+ * (see MovieFinder.getLastTrace()):
+ * - the plan, or whether the result came from the cache,
+ * - each step of the search with the rows going in and out: the access
+ *   step (full scan or index lookup), the fused test of every field with a
+ *   search parameter in the order they are applied, and a title filter,
+ * - the comparisons of the sort,
+ * - the time of the plan, search and sort phases,
+ * - the bytes the query thread allocated; parallel scans and sorts also
+ *   allocate on worker threads, which are not included.
+ *
+ * The rows per field are counted in an extra pass that is not part of the
+ * search time, so tracing changes the total time but not the phase times.
+ */
+public class QueryTrace {
+
+	private static final String[] FIELD_NAMES = {"rating", "votes", "awards"};
+
+	private final String _shape;
+	private QueryPlan _plan;
+	private boolean _cacheHit;
+	private final ArrayList<String> _steps = new ArrayList<String>();
+	private final ArrayList<long[]> _stepRows = new ArrayList<long[]>();
+	private long _sortComparisons;
+	private long _planNanos;
+	private long _searchNanos;
+	private long _sortNanos;
+	private long _totalNanos;
+	private long _allocatedBytes = -1;
+	private int _resultRows;
+
+	private final long _start;
+	private final long _allocStart;
+
+	/**
+	 * Starts a trace.
+	 * @param shape - shape of the query, see MovieFinder.getLatencyHistograms()
+	 */
+	QueryTrace(String shape) {
+		_shape = shape;
+		_allocStart = threadAllocatedBytes();
+		_start = System.nanoTime();
+	}
+
+	/**
+	 * Builds the shape of a query: its search parameters without values in
+	 * a normal order, the title predicate kind and the sort fields.
+	 * @param kind - what kind of call ran the query, e.g. "query"
+	 * @param predicates - compiled search parameters
+	 * @param title - title predicate, or null
+	 * @param sorter - compiled sort parameters, or null
+	 * @return e.g. "query: rating AT_LEAST ?; sort[votes, rating]"
+	 */
+	static String shape(String kind, Predicate[] predicates, TitlePredicate title, 
+			MovieSorter sorter) {
+		String[] terms = new String[predicates.length];
+		for (int i = 0; i < terms.length; i++) {
+			terms[i] = predicates[i].shape();
+		}
+		Arrays.sort(terms);
+		StringBuilder shape = new StringBuilder(kind).append(':');
+		for (int i = 0; i < terms.length; i++) {
+			shape.append(' ').append(terms[i]).append(';');
+		}
+		if (title != null) {
+			shape.append(' ').append(title.shape()).append(';');
+		}
+		if (sorter != null) {
+			int[] fields = sorter.fields();
+			shape.append(" sort[");
+			for (int i = 0; i < fields.length; i++) {
+				shape.append(i == 0 ? "" : ", ").append(FIELD_NAMES[fields[i]]);
+			}
+			shape.append(']');
+		}
+		return shape.toString();
+	}
+
+	void setPlan(QueryPlan plan, long nanos) {
+		_plan = plan;
+		_planNanos = nanos;
+	}
+
+	void setCacheHit() {
+		_cacheHit = true;
+	}
+
+	void addStep(String step, long rowsIn, long rowsOut) {
+		_steps.add(step);
+		_stepRows.add(new long[] {rowsIn, rowsOut});
+	}
+
+	void setSearchNanos(long nanos) {
+		_searchNanos = nanos;
+	}
+
+	void setSort(long comparisons, long nanos) {
+		_sortComparisons = comparisons;
+		_sortNanos = nanos;
+	}
+
+	/**
+	 * Ends the trace.
+	 * @param resultRows - number of result rows
+	 */
+	void finish(int resultRows) {
+		_totalNanos = System.nanoTime() - _start;
+		long allocEnd = threadAllocatedBytes();
+		_allocatedBytes = (_allocStart < 0 || allocEnd < 0) ? -1 : allocEnd - _allocStart;
+		_resultRows = resultRows;
+	}
+
+	//bytes allocated so far by this thread, or -1 if the JVM cannot tell
+	private static long threadAllocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean) bean)
+					.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Accessor.
+	 * @return shape of the query
+	 */
+	public String shape() {
+		return _shape;
+	}
+
+	/**
+	 * Accessor.
+	 * @return the plan the query ran with, or null if it came from the cache
+	 */
+	public QueryPlan plan() {
+		return _plan;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if the result came from the query cache
+	 */
+	public boolean cacheHit() {
+		return _cacheHit;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of search steps
+	 */
+	public int steps() {
+		return _steps.size();
+	}
+
+	/**
+	 * Accessor.
+	 * @param step - index of a step, 0 to steps() - 1
+	 * @return description of the step, e.g. "FILTER rating in [7.0, 10.0]"
+	 */
+	public String step(int step) {
+		return _steps.get(step);
+	}
+
+	/**
+	 * Accessor.
+	 * @param step - index of a step
+	 * @return rows the step examined
+	 */
+	public long rowsIn(int step) {
+		return _stepRows.get(step)[0];
+	}
+
+	/**
+	 * Accessor.
+	 * @param step - index of a step
+	 * @return rows the step kept
+	 */
+	public long rowsOut(int step) {
+		return _stepRows.get(step)[1];
+	}
+
+	/**
+	 * Accessor.
+	 * @return comparisons made by the sort, or -1 if its strategy doesn't
+	 * count them (a single VOTES or AWARDS sort parameter)
+	 */
+	public long sortComparisons() {
+		return _sortComparisons;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time spent planning, in nanoseconds
+	 */
+	public long planNanos() {
+		return _planNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time spent finding the matching rows, in nanoseconds
+	 */
+	public long searchNanos() {
+		return _searchNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time spent sorting, in nanoseconds
+	 */
+	public long sortNanos() {
+		return _sortNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return time of the whole query, in nanoseconds
+	 */
+	public long totalNanos() {
+		return _totalNanos;
+	}
+
+	/**
+	 * Accessor.
+	 * @return bytes allocated by the query thread, or -1 if the JVM can't
+	 * measure it
+	 */
+	public long allocatedBytes() {
+		return _allocatedBytes;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of result rows
+	 */
+	public int resultRows() {
+		return _resultRows;
+	}
+
+	/**
+	 * Accessor.
+	 * @return a report with one line per step and phase
+	 */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(_shape);
+		if (_cacheHit) {
+			sb.append("\nCACHE HIT");
+		}
+		for (int i = 0; i < _steps.size(); i++) {
+			sb.append('\n').append(_steps.get(i)).append(": ").append(rowsIn(i))
+					.append(" -> ").append(rowsOut(i)).append(" rows");
+		}
+		sb.append(String.format("%nplan %.3fms, search %.3fms, sort %.3fms (%s comparisons), total %.3fms", 
+				_planNanos / 1e6, _searchNanos / 1e6, _sortNanos / 1e6, 
+				(_sortComparisons < 0) ? "uncounted" : Long.toString(_sortComparisons), 
+				_totalNanos / 1e6));
+		sb.append("\n").append(_resultRows).append(" result rows, ")
+				.append(_allocatedBytes < 0 ? "n/a" : Long.toString(_allocatedBytes))
+				.append(" bytes allocated");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,19 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Output formats of MovieFinder.selectTo().
+ */
+public enum ResultFormat {
+
+	/**
+	 * RFC 4180 CSV with a header line and CRLF line ends; titles are quoted
+	 * when they contain a comma, quote or line break.
+	 */
+	CSV,
+
+	/**
+	 * A JSON array with one object per movie. Ratings that are not finite
+	 * numbers are written as null.
+	 */
+	JSON
+}
@@ -0,0 +1,253 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Serializes query results as CSV or JSON into a Writer. Rows are written
+ * field by field into a fixed char buffer that is handed to the Writer
+ * when full, and ints and most ratings are formatted into that buffer
+ * directly, so a row costs no allocation beyond decoding its title.
+ */
+final class ResultWriter {
+
+	static final int TITLE = 3;
+
+	private static final String[] NAMES = {"rating", "votes", "awards", "title"};
+	private static final int BUFFER_SIZE = 8192;
+
+	private final Writer _out;
+	private final ResultFormat _format;
+	private final int[] _columns;
+	private final char[] _buf = new char[BUFFER_SIZE];
+	private int _length;
+	private int _rows;
+
+	/**
+	 * Constructor
+	 * @param out - where to write
+	 * @param format - CSV or JSON
+	 * @param selectParams - fields to write, in order; RATING, VOTES, AWARDS
+	 * and TITLE are written, anything else is skipped
+	 */
+	ResultWriter(Writer out, ResultFormat format, String[] selectParams) {
+		if (format == null) {
+			throw new IllegalArgumentException("Format is null.");
+		}
+		_out = out;
+		_format = format;
+		int[] columns = new int[selectParams.length];
+		int numColumns = 0;
+		for (int i = 0; i < selectParams.length; i++) {
+			int field = MovieQuery.TITLE.equals(selectParams[i]) ? TITLE : MovieSorter.fieldOf(selectParams[i]);
+			if (field >= 0) {
+				columns[numColumns++] = field;
+			}
+		}
+		_columns = new int[numColumns];
+		System.arraycopy(columns, 0, _columns, 0, numColumns);
+	}
+
+	/**
+	 * Writes what comes before the first row.
+	 * @throws IOException
+	 */
+	void begin() throws IOException {
+		if (_format == ResultFormat.JSON) {
+			append('[');
+			return;
+		}
+		for (int i = 0; i < _columns.length; i++) {
+			if (i > 0) {
+				append(',');
+			}
+			append(NAMES[_columns[i]]);
+		}
+		append('\r');
+		append('\n');
+	}
+
+	/**
+	 * Writes one row.
+	 * @param store - store holding the row
+	 * @param row - row id
+	 * @throws IOException
+	 */
+	void write(MovieStore store, int row) throws IOException {
+		boolean json = _format == ResultFormat.JSON;
+		if (json) {
+			append(_rows == 0 ? "\n{" : ",\n{");
+		}
+		for (int i = 0; i < _columns.length; i++) {
+			if (i > 0) {
+				append(',');
+			}
+			if (json) {
+				append('"');
+				append(NAMES[_columns[i]]);
+				append("\":");
+			}
+			switch (_columns[i]) {
+			case MovieSorter.RATING:
+				appendDouble(store.rating(row), json);
+				break;
+			case MovieSorter.VOTES:
+				appendInt(store.votes(row));
+				break;
+			case MovieSorter.AWARDS:
+				appendInt(store.awards(row));
+				break;
+			default:
+				if (json) {
+					appendJsonString(store.title(row));
+				}
+				else {
+					appendCsvField(store.title(row));
+				}
+				break;
+			}
+		}
+		if (json) {
+			append('}');
+		}
+		else {
+			append('\r');
+			append('\n');
+		}
+		_rows++;
+	}
+
+	/**
+	 * Writes what comes after the last row and flushes the buffer to the
+	 * Writer (without flushing or closing the Writer itself).
+	 * @throws IOException
+	 */
+	void end() throws IOException {
+		if (_format == ResultFormat.JSON) {
+			append(_rows == 0 ? "]\n" : "\n]\n");
+		}
+		flush();
+	}
+
+	private void appendInt(int value) throws IOException {
+		if (_length + 11 > _buf.length) {
+			flush();
+		}
+		long v = value;
+		if (v < 0) {
+			_buf[_length++] = '-';
+			v = -v;
+		}
+		int end = _length + digits(v);
+		for (int i = end - 1; i >= _length; i--) {
+			_buf[i] = (char) ('0' + v % 10);
+			v /= 10;
+		}
+		_length = end;
+	}
+
+	//ratings with one decimal digit, the common case, are written directly;
+	//they print the same as Double.toString(), which is used for the rest
+	private void appendDouble(double value, boolean json) throws IOException {
+		if (json && (Double.isNaN(value) || Double.isInfinite(value))) {
+			append("null");
+			return;
+		}
+		long tenths = Math.round(value * 10);
+		if (value != 0.0 && Math.abs(value) < 1e7 && tenths / 10.0 == value) {
+			if (tenths < 0) {
+				append('-');
+				tenths = -tenths;
+			}
+			if (_length + 22 > _buf.length) {
+				flush();
+			}
+			long whole = tenths / 10;
+			int end = _length + digits(whole);
+			for (int i = end - 1; i >= _length; i--) {
+				_buf[i] = (char) ('0' + whole % 10);
+				whole /= 10;
+			}
+			_length = end;
+			_buf[_length++] = '.';
+			_buf[_length++] = (char) ('0' + tenths % 10);
+			return;
+		}
+		append(Double.toString(value));
+	}
+
+	private static int digits(long v) {
+		int n = 1;
+		while (v >= 10) {
+			v /= 10;
+			n++;
+		}
+		return n;
+	}
+
+	private void appendCsvField(String s) throws IOException {
+		boolean quote = false;
+		for (int i = 0; i < s.length() && !quote; i++) {
+			char c = s.charAt(i);
+			quote = c == ',' || c == '"' || c == '\r' || c == '\n';
+		}
+		if (!quote) {
+			append(s);
+			return;
+		}
+		append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"') {
+				append('"');
+			}
+			append(c);
+		}
+		append('"');
+	}
+
+	private void appendJsonString(String s) throws IOException {
+		append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				append('\\');
+				append(c);
+			}
+			else if (c == '\n') {
+				append("\\n");
+			}
+			else if (c == '\r') {
+				append("\\r");
+			}
+			else if (c == '\t') {
+				append("\\t");
+			}
+			else if (c < 0x20) {
+				append(String.format("\\u%04x", (int) c));
+			}
+			else {
+				append(c);
+			}
+		}
+		append('"');
+	}
+
+	private void append(char c) throws IOException {
+		if (_length == _buf.length) {
+			flush();
+		}
+		_buf[_length++] = c;
+	}
+
+	private void append(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++) {
+			append(s.charAt(i));
+		}
+	}
+
+	private void flush() throws IOException {
+		_out.write(_buf, 0, _length);
+		_length = 0;
+	}
+}
@@ -0,0 +1,37 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Per-thread scratch buffer for row ids. A query needs room for one id per
+ * row of the store while it filters and sorts; reusing the same array keeps
+ * repeated queries from allocating (and the collector from clearing) a
+ * buffer the size of the catalog each time. The buffer only grows, so each
+ * querying thread keeps one int per row of the largest store it has queried.
+ *
+ * The contents are only valid until the next call to get() on the same
+ * thread, so results must be copied out before the query returns.
+ */
+final class RowBuffer {
+
+	private static final ThreadLocal<int[]> BUFFER = new ThreadLocal<int[]>() {
+		protected int[] initialValue() {
+			return new int[0];
+		}
+	};
+
+	private RowBuffer() {
+	}
+
+	/**
+	 * Returns this thread's buffer, grown to at least size entries.
+	 * @param size - number of entries needed
+	 * @return the buffer; its contents are undefined
+	 */
+	static int[] get(int size) {
+		int[] buffer = BUFFER.get();
+		if (buffer.length < size) {
+			buffer = new int[Math.max(size, buffer.length + (buffer.length >> 1))];
+			BUFFER.set(buffer);
+		}
+		return buffer;
+	}
+}
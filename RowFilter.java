@@ -0,0 +1,386 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Compiled form of the search parameters of a query. Since the parameters
+ * are combined with AND, all predicates on one field collapse into a single
+ * closed interval [lo, hi] (EQUAL_TO v is [v, v]), so a row is tested with
+ * at most two comparisons per field in one pass over the columns, and the
+ * matching row ids are written straight into an int buffer.
+ *
+ * Scans over large stores are split into contiguous partitions that run on
+ * the WorkerPool; each partition writes into its own slice of the output
+ * buffer, and the slices are compacted afterwards, so the result keeps the
+ * store order.
+ *
+ * Encoded rows (see EncodedColumns) are tested on their packed codes: each
+ * interval is translated once into an interval of codes, so no row is
+ * decoded.
+ */
+final class RowFilter {
+
+	//minimum number of rows before a scan is partitioned
+	static final int PARALLEL_THRESHOLD = 1 << 16;
+
+	private final boolean _hasRating;
+	private final boolean _hasVotes;
+	private final boolean _hasAwards;
+	private final double _ratingLo;
+	private final double _ratingHi;
+	private final double _votesLo;
+	private final double _votesHi;
+	private final double _awardsLo;
+	private final double _awardsHi;
+	private final boolean _empty;
+
+	/**
+	 * Constructor
+	 * @param predicates - predicates that must all hold
+	 */
+	RowFilter(Predicate[] predicates) {
+		double[] lo = {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY};
+		double[] hi = {Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY};
+		boolean[] has = new boolean[3];
+		boolean empty = false;
+		for (int i = 0; i < predicates.length; i++) {
+			Predicate p = predicates[i];
+			has[p._field] = true;
+			if (Double.isNaN(p._value)) {
+				//no value compares true against NaN
+				empty = true;
+			}
+			if (p._operator != Predicate.AT_MOST) {
+				lo[p._field] = Math.max(lo[p._field], p._value);
+			}
+			if (p._operator != Predicate.AT_LEAST) {
+				hi[p._field] = Math.min(hi[p._field], p._value);
+			}
+		}
+		for (int f = 0; f < 3; f++) {
+			if (lo[f] > hi[f]) {
+				empty = true;
+			}
+		}
+		_hasRating = has[MovieSorter.RATING];
+		_hasVotes = has[MovieSorter.VOTES];
+		_hasAwards = has[MovieSorter.AWARDS];
+		_ratingLo = lo[MovieSorter.RATING];
+		_ratingHi = hi[MovieSorter.RATING];
+		_votesLo = lo[MovieSorter.VOTES];
+		_votesHi = hi[MovieSorter.VOTES];
+		_awardsLo = lo[MovieSorter.AWARDS];
+		_awardsHi = hi[MovieSorter.AWARDS];
+		_empty = empty;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if the predicates contradict each other, so no row matches
+	 */
+	boolean isEmpty() {
+		return _empty;
+	}
+
+	/**
+	 * Accessor.
+	 * @return true if there are no predicates, so every row matches
+	 */
+	boolean isTrivial() {
+		return !_hasRating && !_hasVotes && !_hasAwards;
+	}
+
+	/**
+	 * Filters a list of row ids in place.
+	 * @param store - the store the rows belong to
+	 * @param rows - row ids; the matching ones are moved to the front
+	 * @param numRows - number of row ids
+	 * @return number of matching rows
+	 */
+	int filter(MovieStore store, int[] rows, int numRows) {
+		if (_empty) {
+			return 0;
+		}
+		if (isTrivial()) {
+			return numRows;
+		}
+		if (store.isEncoded()) {
+			return filterEncoded(store, rows, numRows);
+		}
+		double[] rating = store.ratingColumn();
+		int[] votes = store.votesColumn();
+		int[] awards = store.awardsColumn();
+		boolean hasRating = _hasRating;
+		boolean hasVotes = _hasVotes;
+		boolean hasAwards = _hasAwards;
+		double ratingLo = _ratingLo;
+		double ratingHi = _ratingHi;
+		double votesLo = _votesLo;
+		double votesHi = _votesHi;
+		double awardsLo = _awardsLo;
+		double awardsHi = _awardsHi;
+		int numMatches = 0;
+		for (int i = 0; i < numRows; i++) {
+			int row = rows[i];
+			if (hasRating && !(rating[row] >= ratingLo && rating[row] <= ratingHi)) {
+				continue;
+			}
+			if (hasVotes && !(votes[row] >= votesLo && votes[row] <= votesHi)) {
+				continue;
+			}
+			if (hasAwards && !(awards[row] >= awardsLo && awards[row] <= awardsHi)) {
+				continue;
+			}
+			rows[numMatches++] = row;
+		}
+		return numMatches;
+	}
+
+	/**
+	 * Counts, for query traces, how many rows pass the test of each field,
+	 * out of those that passed the tests before it. The fields are tested
+	 * in the order of filter(): rating, votes, awards.
+	 * @param store - the store the rows belong to
+	 * @param rows - row ids, or null for all rows of the store
+	 * @param numRows - number of row ids
+	 * @return rows passing each field's test, indexed by field; -1 for
+	 * fields without predicates
+	 */
+	long[] countPassed(MovieStore store, int[] rows, int numRows) {
+		long[] passed = new long[3];
+		long rating = 0;
+		long votes = 0;
+		long awards = 0;
+		for (int i = 0; i < numRows && !_empty; i++) {
+			int row = (rows == null) ? i : rows[i];
+			if (_hasRating) {
+				if (!(store.rating(row) >= _ratingLo && store.rating(row) <= _ratingHi)) {
+					continue;
+				}
+				rating++;
+			}
+			if (_hasVotes) {
+				if (!(store.votes(row) >= _votesLo && store.votes(row) <= _votesHi)) {
+					continue;
+				}
+				votes++;
+			}
+			if (_hasAwards) {
+				if (!(store.awards(row) >= _awardsLo && store.awards(row) <= _awardsHi)) {
+					continue;
+				}
+				awards++;
+			}
+		}
+		passed[MovieSorter.RATING] = _hasRating ? rating : -1;
+		passed[MovieSorter.VOTES] = _hasVotes ? votes : -1;
+		passed[MovieSorter.AWARDS] = _hasAwards ? awards : -1;
+		return passed;
+	}
+
+	/**
+	 * Describes the fused test of a field for query traces.
+	 * @param field - MovieSorter.RATING, VOTES or AWARDS
+	 * @return e.g. "rating in [7.0, Infinity]"
+	 */
+	String describe(int field) {
+		switch (field) {
+		case MovieSorter.RATING:
+			return "rating in [" + _ratingLo + ", " + _ratingHi + "]";
+		case MovieSorter.VOTES:
+			return "votes in [" + _votesLo + ", " + _votesHi + "]";
+		default:
+			return "awards in [" + _awardsLo + ", " + _awardsHi + "]";
+		}
+	}
+
+	/**
+	 * Writes the ids of all matching rows of a store to out, in store order.
+	 * @param store - the store to scan
+	 * @param out - output buffer of at least store.size() entries
+	 * @return number of matching rows
+	 */
+	int scan(final MovieStore store, final int[] out) {
+		final int n = store.size();
+		if (_empty) {
+			return 0;
+		}
+		int partitions = Math.min(WorkerPool.parallelism(), n / (PARALLEL_THRESHOLD / 2));
+		if (n < PARALLEL_THRESHOLD || partitions < 2) {
+			return scan(store, 0, n, out, 0);
+		}
+		List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>(partitions);
+		final int[] starts = new int[partitions + 1];
+		for (int p = 0; p <= partitions; p++) {
+			starts[p] = (int) ((long) n * p / partitions);
+		}
+		for (int p = 0; p < partitions; p++) {
+			final int from = starts[p];
+			final int to = starts[p + 1];
+			tasks.add(new Callable<Integer>() {
+				public Integer call() {
+					return scan(store, from, to, out, from);
+				}
+			});
+		}
+		List<Integer> counts = WorkerPool.invokeAll(tasks);
+		
+		//slide each partition's matches down next to the previous ones
+		int numMatches = counts.get(0);
+		for (int p = 1; p < partitions; p++) {
+			int count = counts.get(p);
+			System.arraycopy(out, starts[p], out, numMatches, count);
+			numMatches += count;
+		}
+		return numMatches;
+	}
+
+	/**
+	 * Writes the ids of the matching rows of a range of a store to out.
+	 * @param store - the store to scan
+	 * @param from - first row
+	 * @param to - row after the last one
+	 * @param out - output buffer
+	 * @param outPos - position in out of the first match
+	 * @return number of matching rows
+	 */
+	int scan(MovieStore store, int from, int to, int[] out, int outPos) {
+		if (isTrivial()) {
+			for (int row = from; row < to; row++) {
+				out[outPos++] = row;
+			}
+			return to - from;
+		}
+		if (store.isEncoded()) {
+			return scanEncoded(store, from, to, out, outPos);
+		}
+		double[] rating = store.ratingColumn();
+		int[] votes = store.votesColumn();
+		int[] awards = store.awardsColumn();
+		boolean hasRating = _hasRating;
+		boolean hasVotes = _hasVotes;
+		boolean hasAwards = _hasAwards;
+		double ratingLo = _ratingLo;
+		double ratingHi = _ratingHi;
+		double votesLo = _votesLo;
+		double votesHi = _votesHi;
+		double awardsLo = _awardsLo;
+		double awardsHi = _awardsHi;
+		int numMatches = 0;
+		for (int row = from; row < to; row++) {
+			if (hasRating && !(rating[row] >= ratingLo && rating[row] <= ratingHi)) {
+				continue;
+			}
+			if (hasVotes && !(votes[row] >= votesLo && votes[row] <= votesHi)) {
+				continue;
+			}
+			if (hasAwards && !(awards[row] >= awardsLo && awards[row] <= awardsHi)) {
+				continue;
+			}
+			out[outPos + numMatches++] = row;
+		}
+		return numMatches;
+	}
+
+	private int filterEncoded(MovieStore store, int[] rows, int numRows) {
+		EncodedColumns encoded = store.encoded();
+		long[] bounds = codeBounds(encoded);
+		PackedInts rating = encoded.ratingCodes();
+		PackedInts votes = encoded.votesCodes();
+		PackedInts awards = encoded.awardsCodes();
+		int base = store.encodedRows();
+		int numMatches = 0;
+		for (int i = 0; i < numRows; i++) {
+			int row = rows[i];
+			if (row < base ? matches(rating, votes, awards, bounds, row) : matches(store, row)) {
+				rows[numMatches++] = row;
+			}
+		}
+		return numMatches;
+	}
+
+	private int scanEncoded(MovieStore store, int from, int to, int[] out, int outPos) {
+		EncodedColumns encoded = store.encoded();
+		int base = Math.min(to, store.encodedRows());
+		int numMatches = 0;
+		if (from < base) {
+			long[] bounds = codeBounds(encoded);
+			PackedInts rating = encoded.ratingCodes();
+			PackedInts votes = encoded.votesCodes();
+			PackedInts awards = encoded.awardsCodes();
+			for (int row = from; row < base; row++) {
+				if (matches(rating, votes, awards, bounds, row)) {
+					out[outPos + numMatches++] = row;
+				}
+			}
+		}
+		for (int row = Math.max(from, base); row < to; row++) {
+			if (matches(store, row)) {
+				out[outPos + numMatches++] = row;
+			}
+		}
+		return numMatches;
+	}
+
+	//code intervals of the fields, lo and hi of field f at 2f and 2f + 1;
+	//fields without predicates accept every code
+	private long[] codeBounds(EncodedColumns encoded) {
+		long[] bounds = {0, Long.MAX_VALUE, 0, Long.MAX_VALUE, 0, Long.MAX_VALUE};
+		if (_hasRating) {
+			long[] range = encoded.codeRange(MovieSorter.RATING, _ratingLo, _ratingHi);
+			bounds[2 * MovieSorter.RATING] = range[0];
+			bounds[2 * MovieSorter.RATING + 1] = range[1];
+		}
+		if (_hasVotes) {
+			long[] range = encoded.codeRange(MovieSorter.VOTES, _votesLo, _votesHi);
+			bounds[2 * MovieSorter.VOTES] = range[0];
+			bounds[2 * MovieSorter.VOTES + 1] = range[1];
+		}
+		if (_hasAwards) {
+			long[] range = encoded.codeRange(MovieSorter.AWARDS, _awardsLo, _awardsHi);
+			bounds[2 * MovieSorter.AWARDS] = range[0];
+			bounds[2 * MovieSorter.AWARDS + 1] = range[1];
+		}
+		return bounds;
+	}
+
+	//tests an encoded row on its codes
+	private boolean matches(PackedInts rating, PackedInts votes, PackedInts awards, 
+			long[] bounds, int row) {
+		if (_hasRating) {
+			long code = rating.get(row);
+			if (code < bounds[2 * MovieSorter.RATING] || code > bounds[2 * MovieSorter.RATING + 1]) {
+				return false;
+			}
+		}
+		if (_hasVotes) {
+			long code = votes.get(row);
+			if (code < bounds[2 * MovieSorter.VOTES] || code > bounds[2 * MovieSorter.VOTES + 1]) {
+				return false;
+			}
+		}
+		if (_hasAwards) {
+			long code = awards.get(row);
+			if (code < bounds[2 * MovieSorter.AWARDS] || code > bounds[2 * MovieSorter.AWARDS + 1]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//tests a row through the accessors of the store
+	private boolean matches(MovieStore store, int row) {
+		if (_hasRating && !(store.rating(row) >= _ratingLo && store.rating(row) <= _ratingHi)) {
+			return false;
+		}
+		if (_hasVotes && !(store.votes(row) >= _votesLo && store.votes(row) <= _votesHi)) {
+			return false;
+		}
+		if (_hasAwards && !(store.awards(row) >= _awardsLo && store.awards(row) <= _awardsHi)) {
+			return false;
+		}
+		return true;
+	}
+}
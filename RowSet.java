@@ -0,0 +1,20 @@
+package edu.upenn.cis.cis121.hw5;
+
+/**
+ * Row ids produced by the search step of a query: the first size entries
+ * of rows, in ascending row id order until they are sorted. The array may
+ * be the caller's RowBuffer, so it is only valid until the next query on
+ * the same thread.
+ */
+final class RowSet {
+
+	static final RowSet EMPTY = new RowSet(new int[0], 0);
+
+	final int[] _rows;
+	final int _size;
+
+	RowSet(int[] rows, int size) {
+		_rows = rows;
+		_size = size;
+	}
+}
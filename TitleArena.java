@@ -0,0 +1,56 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Read-only titles stored as one block of UTF-8 bytes plus an offsets
+ * array: title i is bytes offsets[i] to offsets[i + 1]. Both usually are
+ * views of a mapped snapshot file, so the titles stay off the heap and a
+ * String is only created when a title is asked for.
+ */
+final class TitleArena {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final IntBuffer _offsets;
+	private final ByteBuffer _bytes;
+	private final int _size;
+
+	/**
+	 * Constructor
+	 * @param offsets - size + 1 ascending offsets into bytes
+	 * @param bytes - the UTF-8 encoded titles
+	 * @param size - number of titles
+	 */
+	TitleArena(IntBuffer offsets, ByteBuffer bytes, int size) {
+		_offsets = offsets;
+		_bytes = bytes;
+		_size = size;
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of titles
+	 */
+	int size() {
+		return _size;
+	}
+
+	/**
+	 * Decodes one title.
+	 * @param row - index of the title
+	 * @return the title
+	 */
+	String title(int row) {
+		int start = _offsets.get(row);
+		int length = _offsets.get(row + 1) - start;
+		byte[] utf8 = new byte[length];
+		//absolute bulk get on a duplicate, so concurrent readers don't share a position
+		ByteBuffer view = _bytes.duplicate();
+		view.position(start);
+		view.get(utf8);
+		return new String(utf8, UTF8);
+	}
+}
@@ -0,0 +1,620 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Index over the lowercased titles of a MovieStore snapshot, answering
+ * TitlePredicates without looking at every title:
+ * - prefixes by binary search over the row ids sorted by title,
+ * - substrings and words through a trigram inverted index: every three
+ *   consecutive chars of a title are a trigram, and a title can only contain
+ *   a text if it contains all of the text's trigrams. The candidates from
+ *   intersecting those posting lists are then checked against the real
+ *   predicate.
+ * Posting lists hold ascending row ids as varint-coded gaps, all in one
+ * byte array, so most ids take a single byte. Texts shorter than three
+ * chars have no trigrams and fall back to checking every title.
+ *
+ * The encoded rows of a compressed store (see EncodedColumns) are indexed
+ * by title code instead: each distinct title is lowercased and split into
+ * trigrams once, posting lists and the prefix order hold codes, and a
+ * packed table lists the rows of each code. Candidates are checked by
+ * decoding their title from the dictionary, so no lowercased copy of the
+ * titles is kept. Only the plain rows after the encoded ones are indexed
+ * row by row.
+ *
+ * append() extends an index to rows added to its store since it was built.
+ * The new rows go into a small delta index covering only the rows after the
+ * main one, which lookups search as well; only the new titles are sorted
+ * and split into trigrams, and since their row ids are larger than all old
+ * ones, their postings go at the end of the delta's lists. Once the delta
+ * holds more than MAX_DELTA_FRACTION as many rows as come before it, it is
+ * merged into the main index, so appending costs time proportional to the
+ * new rows plus the delta, and a merge of everything only every so often.
+ * If the store was compressed again in the meantime, the index is rebuilt.
+ */
+final class TitleIndex {
+
+	//largest size of the delta index relative to the rows before it
+	private static final double MAX_DELTA_FRACTION = 0.125;
+
+	//index of the encoded rows of the store, or null if there are none
+	private final CodeSegment _codes;
+	//index of the rows after the encoded ones
+	private final Segment _base;
+	//the delta index, over the rows after those of _base
+	private final Segment _delta;
+
+	private TitleIndex(CodeSegment codes, Segment base, Segment delta) {
+		_codes = codes;
+		_base = base;
+		_delta = delta;
+	}
+
+	/**
+	 * Builds the index of a store.
+	 * @param store - a read-only store
+	 * @return the index
+	 */
+	static TitleIndex build(MovieStore store) {
+		CodeSegment codes = store.isEncoded() ? new CodeSegment(store.encoded()) : null;
+		return new TitleIndex(codes, new Segment(store.encodedRows()).append(store),
+				new Segment(store.size()));
+	}
+
+	/**
+	 * Extends the index to the rows added to its store since it was built.
+	 * @param store - the store the index was built from, or a later snapshot
+	 * of it
+	 * @return index of all rows of store
+	 */
+	TitleIndex append(MovieStore store) {
+		if (store.encoded() != ((_codes == null) ? null : _codes._encoded)) {
+			return build(store);
+		}
+		Segment delta = _delta.append(store);
+		if (delta == _delta) {
+			return this;
+		}
+		if (delta.size() <= MAX_DELTA_FRACTION * delta._from) {
+			return new TitleIndex(_codes, _base, delta);
+		}
+		return new TitleIndex(_codes, _base.append(store), new Segment(store.size()));
+	}
+
+	/**
+	 * Looks up the rows matching a title predicate.
+	 * @param predicate - the predicate
+	 * @return ids of the matching rows in ascending order
+	 */
+	int[] rows(TitlePredicate predicate) {
+		int[] codeRows = (_codes == null) ? new int[0] : _codes.rows(predicate);
+		int[] rows = _base.rows(predicate);
+		int[] deltaRows = _delta.rows(predicate);
+		if (codeRows.length == 0 && deltaRows.length == 0) {
+			return rows;
+		}
+		//the rows of each part all come after those of the part before
+		int[] all = new int[codeRows.length + rows.length + deltaRows.length];
+		System.arraycopy(codeRows, 0, all, 0, codeRows.length);
+		System.arraycopy(rows, 0, all, codeRows.length, rows.length);
+		System.arraycopy(deltaRows, 0, all, codeRows.length + rows.length, deltaRows.length);
+		return all;
+	}
+
+	//writes the trigrams of s to out in ascending order, returns how many
+	private static int trigrams(String s, long[] out) {
+		int n = Math.max(0, s.length() - 2);
+		for (int i = 0; i < n; i++) {
+			out[i] = ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+		}
+		Arrays.sort(out, 0, n);
+		return n;
+	}
+
+	//stable merge sort of ids by title, the title of id r being
+	//titles[r - first]
+	private static void sortByTitle(int[] rows, int[] tmp, int from, int to, String[] titles,
+			int first) {
+		if (to - from < 2) {
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		sortByTitle(rows, tmp, from, mid, titles, first);
+		sortByTitle(rows, tmp, mid, to, titles, first);
+		if (titles[rows[mid - 1] - first].compareTo(titles[rows[mid] - first]) <= 0) {
+			return;
+		}
+		System.arraycopy(rows, from, tmp, from, to - from);
+		int i = from;
+		int j = mid;
+		for (int k = from; k < to; k++) {
+			if (j >= to || (i < mid
+					&& titles[tmp[i] - first].compareTo(titles[tmp[j] - first]) <= 0)) {
+				rows[k] = tmp[i++];
+			}
+			else {
+				rows[k] = tmp[j++];
+			}
+		}
+	}
+
+	//candidate ids of a predicate from a trigram index: null if its texts
+	//have no trigrams, else a superset of the matching ids
+	private static int[] candidates(Trigrams trigrams, TitlePredicate predicate) {
+		if (predicate._kind == TitlePredicate.CONTAINS) {
+			return trigrams.candidates(predicate._text, null);
+		}
+		int[] candidates = null;
+		for (int i = 0; i < predicate._tokens.length; i++) {
+			candidates = trigrams.candidates(predicate._tokens[i], candidates);
+		}
+		return candidates;
+	}
+
+	//index over the titles of the rows from _from on
+	private static final class Segment {
+
+		private final int _from;
+		//lowercased title of each row, row r at r - _from
+		private final String[] _lower;
+		private final int[] _byTitle;
+		private final Trigrams _trigrams;
+
+		//empty segment starting at row from
+		Segment(int from) {
+			this(from, new String[0], new int[0], new Trigrams());
+		}
+
+		private Segment(int from, String[] lower, int[] byTitle, Trigrams trigrams) {
+			_from = from;
+			_lower = lower;
+			_byTitle = byTitle;
+			_trigrams = trigrams;
+		}
+
+		int size() {
+			return _lower.length;
+		}
+
+		//extends the segment to the rows of store after its own
+		Segment append(MovieStore store) {
+			int old = _from + _lower.length;
+			int n = store.size();
+			if (n == old) {
+				return this;
+			}
+			String[] lower = Arrays.copyOf(_lower, n - _from);
+			int[] newRows = new int[n - old];
+			Map<Long, Postings> lists = new HashMap<Long, Postings>();
+			long[] seen = new long[16];
+			for (int row = old; row < n; row++) {
+				lower[row - _from] = TitlePredicate.lower(store.title(row));
+				newRows[row - old] = row;
+				seen = _trigrams.collect(lower[row - _from], row, lists, seen);
+			}
+
+			//merge the new rows into the title order, old rows first among
+			//equal titles since their ids are smaller
+			sortByTitle(newRows, new int[newRows.length], 0, newRows.length, lower, _from);
+			int[] byTitle = new int[lower.length];
+			int i = 0;
+			int j = 0;
+			for (int k = 0; k < byTitle.length; k++) {
+				if (j >= newRows.length || (i < _byTitle.length
+						&& lower[_byTitle[i] - _from].compareTo(lower[newRows[j] - _from]) <= 0)) {
+					byTitle[k] = _byTitle[i++];
+				}
+				else {
+					byTitle[k] = newRows[j++];
+				}
+			}
+			return new Segment(_from, lower, byTitle, _trigrams.add(lists));
+		}
+
+		//rows of the segment matching a predicate, in ascending order
+		int[] rows(TitlePredicate predicate) {
+			if (predicate._kind == TitlePredicate.PREFIX) {
+				return prefixRows(predicate._text);
+			}
+			int[] candidates = candidates(_trigrams, predicate);
+			if (candidates == null) {
+				//no trigrams to go by
+				candidates = new int[_lower.length];
+				for (int i = 0; i < candidates.length; i++) {
+					candidates[i] = _from + i;
+				}
+			}
+			int numCandidates = 0;
+			for (int i = 0; i < candidates.length; i++) {
+				if (predicate.matchesLower(_lower[candidates[i] - _from])) {
+					candidates[numCandidates++] = candidates[i];
+				}
+			}
+			return Arrays.copyOf(candidates, numCandidates);
+		}
+
+		private int[] prefixRows(String prefix) {
+			//first title >= prefix; the titles starting with prefix follow it
+			int lo = 0;
+			int hi = _byTitle.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (_lower[_byTitle[mid] - _from].compareTo(prefix) < 0) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			int start = lo;
+			hi = _byTitle.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (_lower[_byTitle[mid] - _from].startsWith(prefix)) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			int[] rows = Arrays.copyOfRange(_byTitle, start, lo);
+			Arrays.sort(rows);
+			return rows;
+		}
+	}
+
+	//index over the encoded rows of a store by title code
+	private static final class CodeSegment {
+
+		private final EncodedColumns _encoded;
+		private final Trigrams _trigrams;
+		//title codes ordered by lowercased title
+		private final PackedInts _byTitle;
+		//encoded rows ordered by title code, those of code c from
+		//_rowStarts[c] to _rowStarts[c + 1]
+		private final PackedInts _rowStarts;
+		private final PackedInts _rows;
+
+		CodeSegment(EncodedColumns encoded) {
+			_encoded = encoded;
+			String[] lower = encoded.titles();
+			int numTitles = lower.length;
+			int[] byTitle = new int[numTitles];
+			Map<Long, Postings> lists = new HashMap<Long, Postings>();
+			long[] seen = new long[16];
+			Trigrams empty = new Trigrams();
+			for (int code = 0; code < numTitles; code++) {
+				lower[code] = TitlePredicate.lower(lower[code]);
+				byTitle[code] = code;
+				seen = empty.collect(lower[code], code, lists, seen);
+			}
+			_trigrams = empty.add(lists);
+			lists = null;
+			sortByTitle(byTitle, new int[numTitles], 0, numTitles, lower, 0);
+			lower = null;
+			_byTitle = new PackedInts(numTitles, PackedInts.bitsFor(Math.max(0, numTitles - 1)));
+			for (int i = 0; i < numTitles; i++) {
+				_byTitle.set(i, byTitle[i]);
+			}
+
+			//counting sort of the rows by code, null titles having code
+			//numTitles
+			PackedInts codes = encoded.titleCodes();
+			int n = encoded.size();
+			int[] starts = new int[numTitles + 2];
+			for (int row = 0; row < n; row++) {
+				starts[(int) codes.get(row) + 1]++;
+			}
+			for (int code = 1; code < starts.length; code++) {
+				starts[code] += starts[code - 1];
+			}
+			_rowStarts = new PackedInts(starts.length, PackedInts.bitsFor(n));
+			for (int code = 0; code < starts.length; code++) {
+				_rowStarts.set(code, starts[code]);
+			}
+			_rows = new PackedInts(n, PackedInts.bitsFor(Math.max(0, n - 1)));
+			for (int row = 0; row < n; row++) {
+				_rows.set(starts[(int) codes.get(row)]++, row);
+			}
+		}
+
+		//encoded rows matching a predicate, in ascending order
+		int[] rows(TitlePredicate predicate) {
+			int[] codes;
+			int numCodes = 0;
+			if (predicate._kind == TitlePredicate.PREFIX) {
+				codes = prefixCodes(predicate._text);
+				numCodes = codes.length;
+			}
+			else {
+				codes = candidates(_trigrams, predicate);
+				if (codes == null) {
+					//no trigrams to go by: test every distinct title
+					boolean[] matches = _encoded.matchTitles(predicate);
+					codes = new int[matches.length];
+					for (int code = 0; code < matches.length; code++) {
+						if (matches[code]) {
+							codes[numCodes++] = code;
+						}
+					}
+				}
+				else {
+					for (int i = 0; i < codes.length; i++) {
+						if (predicate.matches(_encoded.titleOf(codes[i]))) {
+							codes[numCodes++] = codes[i];
+						}
+					}
+				}
+			}
+
+			int numRows = 0;
+			for (int i = 0; i < numCodes; i++) {
+				numRows += (int) (_rowStarts.get(codes[i] + 1) - _rowStarts.get(codes[i]));
+			}
+			int[] rows = new int[numRows];
+			numRows = 0;
+			for (int i = 0; i < numCodes; i++) {
+				int end = (int) _rowStarts.get(codes[i] + 1);
+				for (int j = (int) _rowStarts.get(codes[i]); j < end; j++) {
+					rows[numRows++] = (int) _rows.get(j);
+				}
+			}
+			if (numCodes > 1) {
+				Arrays.sort(rows);
+			}
+			return rows;
+		}
+
+		//codes of the titles starting with prefix
+		private int[] prefixCodes(String prefix) {
+			//first title >= prefix; the titles starting with prefix follow it
+			int lo = 0;
+			int hi = _byTitle.size();
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (lower(mid).compareTo(prefix) < 0) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			int start = lo;
+			hi = _byTitle.size();
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (lower(mid).startsWith(prefix)) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			int[] codes = new int[lo - start];
+			for (int i = 0; i < codes.length; i++) {
+				codes[i] = (int) _byTitle.get(start + i);
+			}
+			return codes;
+		}
+
+		//lowercased title at a position of the title order
+		private String lower(int i) {
+			return TitlePredicate.lower(_encoded.titleOf((int) _byTitle.get(i)));
+		}
+	}
+
+	//trigram inverted index from trigrams to ascending ids, which are row
+	//ids or title codes
+	private static final class Trigrams {
+
+		//trigram keys in ascending order, with the start of their posting list
+		//in _postings and its number of ids
+		private final long[] _keys;
+		private final int[] _starts;
+		private final int[] _counts;
+		//last id of each posting list, which the next gap is relative to
+		private final int[] _lasts;
+		private final byte[] _postings;
+
+		Trigrams() {
+			this(new long[0], new int[0], new int[0], new int[0], new byte[0]);
+		}
+
+		private Trigrams(long[] keys, int[] starts, int[] counts, int[] lasts, byte[] postings) {
+			_keys = keys;
+			_starts = starts;
+			_counts = counts;
+			_lasts = lasts;
+			_postings = postings;
+		}
+
+		//adds id to the new posting lists of the distinct trigrams of title;
+		//id must be larger than all ids added before. seen is a buffer for
+		//the trigrams, returned grown if it was too small
+		long[] collect(String title, int id, Map<Long, Postings> lists, long[] seen) {
+			if (seen.length < title.length()) {
+				seen = new long[title.length()];
+			}
+			int numTrigrams = trigrams(title, seen);
+			for (int i = 0; i < numTrigrams; i++) {
+				if (i > 0 && seen[i] == seen[i - 1]) {
+					continue;
+				}
+				Long key = seen[i];
+				Postings list = lists.get(key);
+				if (list == null) {
+					//continue the gaps of the old list
+					int oldList = Arrays.binarySearch(_keys, seen[i]);
+					list = new Postings((oldList < 0) ? -1 : _lasts[oldList]);
+					lists.put(key, list);
+				}
+				list.add(id);
+			}
+			return seen;
+		}
+
+		//the union of the old and new trigrams, each list being its old
+		//bytes followed by its new ones
+		Trigrams add(Map<Long, Postings> lists) {
+			long[] newKeys = new long[lists.size()];
+			int k = 0;
+			int size = _postings.length;
+			for (Map.Entry<Long, Postings> entry : lists.entrySet()) {
+				newKeys[k++] = entry.getKey();
+				size += entry.getValue()._length;
+			}
+			Arrays.sort(newKeys);
+			long[] keys = new long[_keys.length + newKeys.length];
+			int[] starts = new int[keys.length];
+			int[] counts = new int[keys.length];
+			int[] lasts = new int[keys.length];
+			byte[] postings = new byte[size];
+			int pos = 0;
+			int numKeys = 0;
+			int i = 0;
+			int j = 0;
+			while (i < _keys.length || j < newKeys.length) {
+				long key = (j >= newKeys.length || (i < _keys.length && _keys[i] <= newKeys[j]))
+						? _keys[i] : newKeys[j];
+				keys[numKeys] = key;
+				starts[numKeys] = pos;
+				if (i < _keys.length && _keys[i] == key) {
+					int length = ((i + 1 < _keys.length) ? _starts[i + 1] : _postings.length) - _starts[i];
+					System.arraycopy(_postings, _starts[i], postings, pos, length);
+					pos += length;
+					counts[numKeys] = _counts[i];
+					lasts[numKeys] = _lasts[i];
+					i++;
+				}
+				if (j < newKeys.length && newKeys[j] == key) {
+					Postings list = lists.get(key);
+					System.arraycopy(list._bytes, 0, postings, pos, list._length);
+					pos += list._length;
+					counts[numKeys] += list._count;
+					lasts[numKeys] = list._last;
+					j++;
+				}
+				numKeys++;
+			}
+			return new Trigrams(Arrays.copyOf(keys, numKeys), Arrays.copyOf(starts, numKeys),
+					Arrays.copyOf(counts, numKeys), Arrays.copyOf(lasts, numKeys), postings);
+		}
+
+		//ids containing every trigram of text, intersected with ids unless
+		//null; returns ids unchanged if text has no trigrams
+		int[] candidates(String text, int[] ids) {
+			long[] trigrams = new long[Math.max(1, text.length())];
+			int numTrigrams = trigrams(text, trigrams);
+			if (numTrigrams == 0) {
+				return ids;
+			}
+			//look up each distinct trigram, then intersect the shortest lists first
+			int[] lists = new int[numTrigrams];
+			int numLists = 0;
+			for (int i = 0; i < numTrigrams; i++) {
+				if (i > 0 && trigrams[i] == trigrams[i - 1]) {
+					continue;
+				}
+				int list = Arrays.binarySearch(_keys, trigrams[i]);
+				if (list < 0) {
+					return new int[0];
+				}
+				lists[numLists++] = list;
+			}
+			for (int i = 1; i < numLists; i++) {
+				int list = lists[i];
+				int j = i;
+				while (j > 0 && _counts[lists[j - 1]] > _counts[list]) {
+					lists[j] = lists[j - 1];
+					j--;
+				}
+				lists[j] = list;
+			}
+			int start = 0;
+			if (ids == null) {
+				ids = decode(lists[0]);
+				start = 1;
+			}
+			for (int i = start; i < numLists && ids.length > 0; i++) {
+				ids = intersect(ids, lists[i]);
+			}
+			return ids;
+		}
+
+		private int[] decode(int list) {
+			int[] ids = new int[_counts[list]];
+			int pos = _starts[list];
+			int id = -1;
+			for (int i = 0; i < ids.length; i++) {
+				int gap = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = _postings[pos++];
+					gap |= (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				id += gap;
+				ids[i] = id;
+			}
+			return ids;
+		}
+
+		//ids that also occur in a posting list, decoding it as a stream
+		private int[] intersect(int[] ids, int list) {
+			int count = _counts[list];
+			int pos = _starts[list];
+			int id = -1;
+			int numIds = 0;
+			int j = 0;
+			for (int i = 0; i < count && j < ids.length; i++) {
+				int gap = 0;
+				int shift = 0;
+				byte b;
+				do {
+					b = _postings[pos++];
+					gap |= (b & 0x7f) << shift;
+					shift += 7;
+				} while (b < 0);
+				id += gap;
+				while (j < ids.length && ids[j] < id) {
+					j++;
+				}
+				if (j < ids.length && ids[j] == id) {
+					ids[numIds++] = id;
+					j++;
+				}
+			}
+			return Arrays.copyOf(ids, numIds);
+		}
+	}
+
+	//posting list under construction: varint gaps between ascending ids
+	private static class Postings {
+		private byte[] _bytes = new byte[4];
+		private int _length;
+		private int _count;
+		private int _last;
+
+		Postings(int last) {
+			_last = last;
+		}
+
+		void add(int id) {
+			int gap = id - _last;
+			_last = id;
+			_count++;
+			if (_length + 5 > _bytes.length) {
+				_bytes = Arrays.copyOf(_bytes, 2 * _bytes.length + 5);
+			}
+			while (gap >= 0x80) {
+				_bytes[_length++] = (byte) (gap | 0x80);
+				gap >>>= 7;
+			}
+			_bytes[_length++] = (byte) gap;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.ArrayList;
+import java.util.Locale;
+
+/**
+ * A condition on movie titles, for MovieFinder.queryMovies(query, title).
+ * Matching ignores case. Three kinds exist:
+ * - prefix: the title starts with the text,
+ * - contains: the text occurs anywhere in the title,
+ * - tokens: every word of the text occurs as a whole word of the title,
+ *   where words are runs of letters and digits.
+ */
+public final class TitlePredicate {
+
+	static final int PREFIX = 0;
+	static final int CONTAINS = 1;
+	static final int TOKENS = 2;
+
+	private static final String[] KIND_NAMES = {"PREFIX", "CONTAINS", "TOKENS"};
+
+	final int _kind;
+	//lowercased text
+	final String _text;
+	//words of _text for TOKENS, else null
+	final String[] _tokens;
+
+	private TitlePredicate(int kind, String text) {
+		if (text == null) {
+			throw new IllegalArgumentException("Title text is null.");
+		}
+		_kind = kind;
+		_text = lower(text);
+		_tokens = (kind == TOKENS) ? words(_text) : null;
+	}
+
+	/**
+	 * Matches titles that start with text.
+	 * @param text - prefix to look for
+	 * @return the predicate
+	 */
+	public static TitlePredicate prefix(String text) {
+		return new TitlePredicate(PREFIX, text);
+	}
+
+	/**
+	 * Matches titles that contain text.
+	 * @param text - substring to look for
+	 * @return the predicate
+	 */
+	public static TitlePredicate contains(String text) {
+		return new TitlePredicate(CONTAINS, text);
+	}
+
+	/**
+	 * Matches titles that contain every word of text as a whole word, in any
+	 * order.
+	 * @param text - words to look for
+	 * @return the predicate
+	 */
+	public static TitlePredicate tokens(String text) {
+		return new TitlePredicate(TOKENS, text);
+	}
+
+	/**
+	 * Tests a title.
+	 * @param title - a title, not lowercased
+	 * @return true if title matches
+	 */
+	boolean matches(String title) {
+		return matchesLower(lower(title));
+	}
+
+	/**
+	 * Tests a lowercased title.
+	 * @param title - a title lowercased with lower()
+	 * @return true if title matches
+	 */
+	boolean matchesLower(String title) {
+		switch (_kind) {
+		case PREFIX:
+			return title.startsWith(_text);
+		case CONTAINS:
+			return title.contains(_text);
+		default:
+			String[] words = words(title);
+			for (int i = 0; i < _tokens.length; i++) {
+				boolean found = false;
+				for (int j = 0; j < words.length && !found; j++) {
+					found = _tokens[i].equals(words[j]);
+				}
+				if (!found) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	static String lower(String s) {
+		return s.toLowerCase(Locale.ROOT);
+	}
+
+	//runs of letters and digits
+	static String[] words(String s) {
+		ArrayList<String> tokens = new ArrayList<String>();
+		int start = -1;
+		for (int i = 0; i <= s.length(); i++) {
+			boolean word = i < s.length() && Character.isLetterOrDigit(s.charAt(i));
+			if (word && start < 0) {
+				start = i;
+			}
+			else if (!word && start >= 0) {
+				tokens.add(s.substring(start, i));
+				start = -1;
+			}
+		}
+		return tokens.toArray(new String[tokens.size()]);
+	}
+
+	/**
+	 * Accessor for query statistics.
+	 * @return e.g. "title CONTAINS ?"
+	 */
+	String shape() {
+		return "title " + KIND_NAMES[_kind] + " ?";
+	}
+
+	/**
+	 * Accessor for explain output.
+	 * @return e.g. "title CONTAINS 'star'"
+	 */
+	public String toString() {
+		return "title " + KIND_NAMES[_kind] + " '" + _text + "'";
+	}
+}
@@ -0,0 +1,89 @@
+package edu.upenn.cis.cis121.hw5;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Shared pool of daemon worker threads for the parallel parts of
+ * MovieFinder (sorting, scanning, loading). Tasks handed to the pool must
+ * not themselves wait on other pool tasks, otherwise the pool can run out of
+ * threads.
+ */
+final class WorkerPool {
+
+	//can be overridden with -Dedu.upenn.cis.cis121.hw5.parallelism=n
+	private static final int PARALLELISM = Math.max(1, Integer.getInteger(
+			"edu.upenn.cis.cis121.hw5.parallelism", Runtime.getRuntime().availableProcessors()));
+
+	private static ExecutorService _pool;
+
+	private WorkerPool() {
+	}
+
+	/**
+	 * Accessor.
+	 * @return number of worker threads
+	 */
+	static int parallelism() {
+		return PARALLELISM;
+	}
+
+	/**
+	 * Runs every task on the pool and waits for all of them.
+	 * @param tasks - tasks to run
+	 * @return results in the order of tasks
+	 * @throws RuntimeException wrapping the first failure of a task
+	 */
+	static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+		List<T> results = new ArrayList<T>(tasks.size());
+		if (tasks.size() == 1) {
+			try {
+				results.add(tasks.get(0).call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return results;
+		}
+		try {
+			List<Future<T>> futures = pool().invokeAll(tasks);
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for workers.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new RuntimeException(e.getCause());
+		}
+		return results;
+	}
+
+	private static synchronized ExecutorService pool() {
+		if (_pool == null) {
+			_pool = Executors.newFixedThreadPool(PARALLELISM, new ThreadFactory() {
+				private int _count;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "movie-worker-" + (_count++));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return _pool;
+	}
+}